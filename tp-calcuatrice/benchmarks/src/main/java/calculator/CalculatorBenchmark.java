@@ -0,0 +1,90 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scalar and bulk {@link Calculator} operations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+    private static final int BULK_SIZE = 1024;
+
+    // non-final so the JIT cannot constant-fold the operands
+    private double a = 12.5;
+    private double b = 3.25;
+    private String op = "div";
+    private byte code = OpCode.DIV;
+
+    private double[] xs;
+    private double[] ys;
+    private double[] out;
+
+    @Setup
+    public void setUp() {
+        xs = new double[BULK_SIZE];
+        ys = new double[BULK_SIZE];
+        out = new double[BULK_SIZE];
+        for (int i = 0; i < BULK_SIZE; i++) {
+            xs[i] = i * 1.5;
+            ys[i] = i + 1;
+        }
+    }
+
+    @Benchmark
+    public double add() {
+        return Calculator.add(a, b);
+    }
+
+    @Benchmark
+    public double sub() {
+        return Calculator.sub(a, b);
+    }
+
+    @Benchmark
+    public double mul() {
+        return Calculator.mul(a, b);
+    }
+
+    @Benchmark
+    public double div() {
+        return Calculator.div(a, b);
+    }
+
+    @Benchmark
+    public double applyByName() {
+        return Calculator.apply(op, a, b);
+    }
+
+    /** The op resolved once, as {@code Main.perform} does before computing. */
+    @Benchmark
+    public double applyByCode() {
+        return Calculator.apply(code, a, b);
+    }
+
+    @Benchmark
+    public double[] bulkAdd() {
+        Calculator.add(xs, ys, out);
+        return out;
+    }
+
+    @Benchmark
+    public int[] bulkDiv() {
+        return Calculator.div(xs, ys, out);
+    }
+}
@@ -0,0 +1,104 @@
+package calculator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to first result of a one-shot {@code add 2 3} in a fresh JVM: {@code java -jar} on the
+ * shaded jar against the {@code fast-start} launcher (trimmed runtime and AppCDS archive),
+ * with a history file or {@code --ephemeral}. Each invocation starts a process and stops the
+ * clock when its result line arrives.
+ *
+ * Both builds must exist: {@code mvn -f tp-calcuatrice/pom.xml -Pfast-start package}. Their
+ * directory is {@code -Dcalculator.target} (default {@code tp-calcuatrice/target}, relative
+ * to the repository root).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(1)
+public class ColdStartBenchmark {
+    @Param({"jar", "fast-start"})
+    public String launcher;
+
+    @Param({"false", "true"})
+    public boolean ephemeral;
+
+    private Path dir;
+    private List<String> command;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path target = Path.of(System.getProperty("calculator.target", "tp-calcuatrice/target")).toAbsolutePath();
+        dir = Files.createTempDirectory("calc-cold");
+        command = new ArrayList<>();
+        if ("jar".equals(launcher)) {
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-jar");
+            command.add(require(target.resolve("tp-calcuatrice-0.1.0-shaded.jar")).toString());
+        } else {
+            command.add(require(target.resolve("fast-start/bin/calc")).toString());
+        }
+        if (ephemeral) {
+            command.add("--ephemeral");
+        } else {
+            command.add("--history");
+            command.add(dir.resolve("history.json").toString());
+        }
+        command.addAll(Arrays.asList("add", "2", "3"));
+    }
+
+    private static Path require(Path path) {
+        if (!Files.exists(path)) {
+            throw new IllegalStateException(path + " is missing: run mvn -Pfast-start package first");
+        }
+        return path;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public String firstResult() throws IOException {
+        process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line = out.readLine();
+        if (!"5.0".equals(line)) {
+            throw new IllegalStateException("Unexpected output: " + line);
+        }
+        return line;
+    }
+
+    /** Process exit is not part of the measurement. */
+    @TearDown(Level.Invocation)
+    public void awaitExit() throws InterruptedException {
+        process.waitFor();
+    }
+}
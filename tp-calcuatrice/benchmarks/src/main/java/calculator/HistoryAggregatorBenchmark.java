@@ -0,0 +1,77 @@
+package calculator;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link HistoryAggregator} over {@code size} entries with {@code threads} fork-join workers
+ * (1 is a sequential scan); compare the scaling against the number of cores of the machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryAggregatorBenchmark {
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private HistoryStore store;
+    private HistoryAggregator.Source source;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        store = new HistoryStore();
+        String[] ops = {"add", "sub", "mul", "div"};
+        for (int i = 0; i < size; i++) {
+            double a = random.nextInt(1_000_000) / 100.0;
+            double b = random.nextInt(1_000) + 1;
+            String op = ops[i & 3];
+            store.add(new HistoryEntry(op, a, b, Calculator.apply(op, a, b), (long) i));
+        }
+        source = new HistoryAggregator.Source() {
+            @Override
+            public byte opCode(long i) {
+                return store.opCode((int) i);
+            }
+
+            @Override
+            public double result(long i) {
+                return store.result((int) i);
+            }
+        };
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public HistoryAggregator.Aggregate aggregate() {
+        int leaf = threads == 1 ? Integer.MAX_VALUE : HistoryAggregator.LEAF_SIZE;
+        return HistoryAggregator.aggregate(store.size(), source, pool, leaf);
+    }
+}
@@ -0,0 +1,56 @@
+package calculator;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link HistoryEntry} construction with the system and coarse clocks, lazy timestamp
+ * formatting, and the old eager {@code Instant.now().toString()} cost for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryEntryBenchmark {
+    private static final EpochClock COARSE = EpochClock.coarse();
+
+    private double a = 12.5;
+    private double b = 3.25;
+
+    @Benchmark
+    public HistoryEntry construct() {
+        return new HistoryEntry("add", a, b, a + b);
+    }
+
+    @Benchmark
+    public HistoryEntry constructCoarseClock() {
+        return new HistoryEntry("add", a, b, a + b, COARSE.epochNanos());
+    }
+
+    @Benchmark
+    public String constructAndFormat() {
+        return new HistoryEntry("add", a, b, a + b).when();
+    }
+
+    @Benchmark
+    public Instant instantNow() {
+        return Instant.now();
+    }
+
+    @Benchmark
+    public String instantNowToString() {
+        return Instant.now().toString();
+    }
+}
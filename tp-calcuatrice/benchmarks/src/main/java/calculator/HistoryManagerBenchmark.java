@@ -0,0 +1,86 @@
+package calculator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link HistoryManager#save(List)}, {@link HistoryManager#load()} and
+ * {@link HistoryManager#loadStore()} at several history sizes, with JSON and compressed
+ * snapshots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class HistoryManagerBenchmark {
+    private static final String[] OPS = {"add", "sub", "mul", "div"};
+
+    @Param({"1000", "100000", "10000000"})
+    public int entries;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    private Path dir;
+    private HistoryManager hm;
+    private List<HistoryEntry> history;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("calc-bench");
+        hm = new HistoryManager(dir.resolve("history.json").toString());
+        hm.setCompressedSnapshots(compressed);
+        history = generate(entries);
+        hm.save(history);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        hm.save(history);
+    }
+
+    @Benchmark
+    public List<HistoryEntry> load() throws IOException {
+        return hm.load();
+    }
+
+    @Benchmark
+    public HistoryStore loadStore() throws IOException {
+        return hm.loadStore();
+    }
+
+    static List<HistoryEntry> generate(int n) {
+        List<HistoryEntry> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double a = i * 0.5;
+            double b = (i % 97) + 1;
+            String op = OPS[i & 3];
+            list.add(new HistoryEntry(op, a, b, Calculator.apply(op, a, b)));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,141 @@
+package calculator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JSON save and load of {@code entries} entries in memory: the streaming
+ * {@link HistoryEntryAdapter} against reflective Gson binding of the same JSON shape
+ * through {@code TypeToken<List<...>>}, and journal records written by the reused
+ * {@link HistoryJournal.Encoder} against one {@code gson.toJson} per entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistorySerializationBenchmark {
+    private static final Type REFLECTIVE_LIST = new TypeToken<List<ReflectiveEntry>>() { }.getType();
+
+    @Param({"100000"})
+    public int entries;
+
+    private final Gson gson = new Gson();
+    private List<HistoryEntry> history;
+    private List<ReflectiveEntry> reflective;
+    private byte[] json;
+
+    /** Field-for-field copy of the JSON shape, bound by reflection. */
+    static final class ReflectiveEntry {
+        String op;
+        double a;
+        double b;
+        double result;
+        String when;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        history = HistoryManagerBenchmark.generate(entries);
+        reflective = new ArrayList<>(entries);
+        for (HistoryEntry e : history) {
+            ReflectiveEntry r = new ReflectiveEntry();
+            r.op = e.op;
+            r.a = e.a;
+            r.b = e.b;
+            r.result = e.result;
+            r.when = e.when();
+            reflective.add(r);
+        }
+        json = streamingSave().toByteArray();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream streamingSave() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(entries * 128);
+        JsonWriter w = HistoryEntryAdapter.newWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        w.beginArray();
+        for (HistoryEntry e : history) {
+            HistoryEntryAdapter.INSTANCE.write(w, e);
+        }
+        w.endArray();
+        w.flush();
+        return out;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream reflectiveSave() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(entries * 128);
+        Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        gson.toJson(reflective, REFLECTIVE_LIST, w);
+        w.flush();
+        return out;
+    }
+
+    @Benchmark
+    public List<HistoryEntry> streamingLoad() throws IOException {
+        JsonReader r = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+        r.setLenient(true);
+        List<HistoryEntry> list = new ArrayList<>();
+        r.beginArray();
+        while (r.hasNext()) {
+            list.add(HistoryEntryAdapter.readEntry(r));
+        }
+        r.endArray();
+        return list;
+    }
+
+    @Benchmark
+    public List<ReflectiveEntry> reflectiveLoad() {
+        return gson.fromJson(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8),
+                REFLECTIVE_LIST);
+    }
+
+    @Benchmark
+    public void journalEncoder() throws IOException {
+        HistoryJournal.Encoder encoder = new HistoryJournal.Encoder();
+        OutputStream out = OutputStream.nullOutputStream();
+        for (HistoryEntry e : history) {
+            encoder.write(out, e);
+        }
+    }
+
+    @Benchmark
+    public void journalToJson() throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] prefix = new byte[9];
+        OutputStream out = OutputStream.nullOutputStream();
+        for (HistoryEntry e : history) {
+            HistoryJournal.write(out, gson.toJson(e, HistoryEntry.class), crc, prefix);
+        }
+    }
+}
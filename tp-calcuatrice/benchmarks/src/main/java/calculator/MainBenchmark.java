@@ -0,0 +1,71 @@
+package calculator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end cost of one CLI calculation: compute, record and persist, with history
+ * written synchronously or through the background writer in each durability mode, with
+ * and without {@link Metrics} instrumentation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MainBenchmark {
+    @Param({"sync", "EACH_COMMIT", "PERIODIC", "NONE"})
+    public String writer;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private double a = 12.5;
+    private double b = 3.25;
+
+    private Path dir;
+    private HistoryManager hm;
+    private HistoryStore history;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("calc-bench");
+        hm = new HistoryManager(dir.resolve("history.json").toString());
+        history = new HistoryStore();
+        if (metrics) {
+            Metrics.enable();
+        }
+        if (!"sync".equals(writer)) {
+            hm.startAsync(AsyncHistoryWriter.Durability.valueOf(writer));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        hm.close();
+        Metrics.disable();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public double perform() throws IOException {
+        return Main.perform("add", a, b, history, hm);
+    }
+}
@@ -0,0 +1,50 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing one batch line: regex split plus {@link Double#parseDouble} against the in-place
+ * {@link LineTokenizer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final String line = "div 12345.678 -3.25e2";
+    private final char[] chars = line.toCharArray();
+    private final LineTokenizer tokenizer = new LineTokenizer();
+
+    @Benchmark
+    public double split() {
+        String[] parts = WHITESPACE.split(line);
+        return OpCode.of(parts[0]) + Double.parseDouble(parts[1]) + Double.parseDouble(parts[2]);
+    }
+
+    @Benchmark
+    public double tokenizer() {
+        LineTokenizer tok = tokenizer;
+        tok.reset(chars, 0, chars.length);
+        tok.next();
+        byte op = tok.opCode();
+        tok.next();
+        double a = tok.parseDouble();
+        tok.next();
+        return op + a + tok.parseDouble();
+    }
+}
@@ -0,0 +1,63 @@
+package calculator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ResultCache} lookups against direct computation, replaying {@code distinct}
+ * different {@code (op, a, b)} triples through a cache of 4096 entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultCacheBenchmark {
+    private static final int OPS = 1 << 16;
+
+    @Param({"1000", "100000"})
+    public int distinct;
+
+    private final byte[] ops = new byte[OPS];
+    private final double[] as = new double[OPS];
+    private final double[] bs = new double[OPS];
+    private ResultCache cache;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < OPS; i++) {
+            int k = random.nextInt(distinct);
+            ops[i] = (byte) (k & 3);
+            as[i] = k * 1.5;
+            bs[i] = (k >> 2) + 1;
+        }
+        cache = new ResultCache(4096);
+    }
+
+    @Benchmark
+    public double direct() {
+        int i = next++ & (OPS - 1);
+        return Calculator.apply(OpCode.name(ops[i]), as[i], bs[i]);
+    }
+
+    @Benchmark
+    public double cached() {
+        int i = next++ & (OPS - 1);
+        return cache.apply(ops[i], as[i], bs[i]);
+    }
+}
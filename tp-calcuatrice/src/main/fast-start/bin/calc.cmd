@@ -0,0 +1,6 @@
+@echo off
+rem Calculator on the trimmed runtime with its AppCDS archive, as built by
+rem "mvn -Pfast-start package". If the directory is moved the archive no longer
+rem matches the class path and is ignored (-Xshare:auto): rebuild to get it back.
+set DIR=%~dp0..
+"%DIR%\runtime\bin\java" -Xshare:auto -XX:SharedArchiveFile="%DIR%\calculator.jsa" %JAVA_OPTS% -cp "%DIR%\lib\@fast-start.jar@" calculator.Main %*
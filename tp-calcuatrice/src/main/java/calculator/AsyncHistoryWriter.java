@@ -0,0 +1,323 @@
+package calculator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer that group-commits history entries.
+ *
+ * Entries are queued by {@link #submit(HistoryEntry)}, from any number of threads, into a
+ * lock-free {@link MpscRingBuffer} (callers only wait when it is full) and a single writer
+ * thread drains it, committing entries in batches as soon as {@code maxBatch} are waiting
+ * or {@code maxDelayMillis} after the first one. The writer parks when the ring is empty
+ * and producers unpark it. When each commit is forced to disk depends on the
+ * {@link Durability} mode.
+ *
+ * The first failed commit, whether the sink throws an {@link IOException} or a runtime
+ * exception, is kept and rethrown by every later {@link #submit}, {@link #flush()} and
+ * {@link #close()}; should the writer thread die, waiting callers are released.
+ */
+public class AsyncHistoryWriter implements Closeable {
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_MAX_BATCH = 1024;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+    /** Busy-wait iterations before parking, on either side of the ring. */
+    private static final int SPINS = 64;
+    /** Producer back-off while the ring is full. */
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * When committed entries are forced to disk.
+     */
+    public enum Durability {
+        /** fsync after every group commit. */
+        EACH_COMMIT,
+        /** fsync at most once per sync interval, and on {@link #flush()}/{@link #close()}. */
+        PERIODIC,
+        /** never fsync; rely on the OS to write back. */
+        NONE
+    }
+
+    /**
+     * Destination of committed batches.
+     */
+    interface Sink {
+        /**
+         * Write {@code batch} (possibly empty) and, when {@code sync} is set, force it to disk.
+         */
+        void commit(List<HistoryEntry> batch, boolean sync) throws IOException;
+    }
+
+    private static final class Barrier {
+        final CountDownLatch done = new CountDownLatch(1);
+        final boolean stop;
+
+        Barrier(boolean stop) {
+            this.stop = stop;
+        }
+    }
+
+    private final Sink sink;
+    private final Durability durability;
+    private final MpscRingBuffer<Object> ring;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final long syncIntervalNanos;
+    private final Thread thread;
+
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private volatile boolean writerParked;
+    private volatile boolean stopped; // writer thread has exited
+
+    // writer thread state
+    private long lastSync = System.nanoTime();
+    private boolean unsynced;
+
+    AsyncHistoryWriter(Sink sink, Durability durability) {
+        this(sink, durability, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY_MILLIS,
+                DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    AsyncHistoryWriter(Sink sink, Durability durability, int capacity, int maxBatch,
+                       long maxDelayMillis, long syncIntervalMillis) {
+        this.sink = sink;
+        this.durability = durability;
+        this.ring = new MpscRingBuffer<>(capacity);
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.thread = new Thread(this::run, "history-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Queue an entry for the next group commit.
+     *
+     * @throws IOException if an earlier commit failed
+     */
+    public void submit(HistoryEntry entry) throws IOException {
+        checkOpen();
+        put(entry);
+    }
+
+    /**
+     * Wait until every entry submitted so far is committed and, unless the durability mode
+     * is {@link Durability#NONE}, forced to disk.
+     *
+     * @throws IOException if a commit failed
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        await(new Barrier(false));
+    }
+
+    /**
+     * Flush pending entries and stop the writer thread. Further submits are rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        await(new Barrier(true));
+    }
+
+    private void await(Barrier barrier) throws IOException {
+        put(barrier);
+        if (stopped) {
+            barrier.done.countDown(); // nobody left to reach it
+        }
+        try {
+            barrier.done.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing history");
+        }
+        IOException f = failure;
+        if (f != null) {
+            throw f;
+        }
+    }
+
+    private void put(Object item) throws IOException {
+        for (int spins = 0; !ring.offer(item); spins++) {
+            // full: let the writer drain
+            LockSupport.unpark(thread);
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while queueing history");
+            }
+            if (stopped) {
+                checkOpen();
+                throw new IOException("History writer has stopped");
+            }
+        }
+        if (writerParked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Next item from the ring, waiting at most {@code timeoutNanos} ({@code -1}: no limit).
+     * Returns null on timeout. Writer thread only.
+     */
+    private Object next(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        for (int spins = 0; ; spins++) {
+            Object item = ring.poll();
+            if (item != null) {
+                return item;
+            }
+            long left = timeoutNanos < 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+            if (left <= 0) {
+                return null;
+            }
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            writerParked = true;
+            // re-check after publishing the flag so a concurrent put cannot be missed
+            if (ring.isEmpty()) {
+                if (timeoutNanos < 0) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, left);
+                }
+            }
+            writerParked = false;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        IOException f = failure;
+        if (f != null) {
+            throw f;
+        }
+        if (closed) {
+            throw new IllegalStateException("History writer is closed");
+        }
+    }
+
+    private void run() {
+        List<HistoryEntry> batch = new ArrayList<>(maxBatch);
+        try {
+            while (true) {
+                Object item;
+                if (unsynced && durability == Durability.PERIODIC) {
+                    long wait = lastSync + syncIntervalNanos - System.nanoTime();
+                    item = wait > 0 ? next(wait) : null;
+                    if (item == null) {
+                        commit(batch, true); // idle: periodic fsync of what is already written
+                        continue;
+                    }
+                } else {
+                    item = next(-1);
+                }
+                Barrier barrier = collect(item, batch);
+                commit(batch, barrier != null);
+                batch.clear();
+                if (barrier != null) {
+                    barrier.done.countDown();
+                    if (barrier.stop) {
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            commit(batch, true);
+        } catch (RuntimeException | Error ex) {
+            fail(new IOException("History writer failed: " + ex, ex));
+            throw ex;
+        } finally {
+            stopped = true;
+            Object item;
+            while ((item = ring.poll()) != null) {
+                if (item instanceof Barrier) {
+                    ((Barrier) item).done.countDown();
+                }
+            }
+        }
+    }
+
+    private void fail(IOException ex) {
+        if (failure == null) {
+            failure = ex;
+        }
+    }
+
+    /**
+     * Gather entries into {@code batch} until it is full, the delay since the first entry
+     * has passed, or a barrier is reached (which is returned).
+     */
+    private Barrier collect(Object first, List<HistoryEntry> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        Object item = first;
+        while (true) {
+            if (item instanceof Barrier) {
+                return (Barrier) item;
+            }
+            batch.add((HistoryEntry) item);
+            if (batch.size() >= maxBatch) {
+                return null;
+            }
+            item = ring.poll();
+            if (item == null) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0 || (item = next(left)) == null) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    private void commit(List<HistoryEntry> batch, boolean forced) {
+        long now = System.nanoTime();
+        boolean sync;
+        switch (durability) {
+            case EACH_COMMIT: sync = true; break;
+            case PERIODIC: sync = forced || now - lastSync >= syncIntervalNanos; break;
+            default: sync = false;
+        }
+        if (batch.isEmpty() && !(sync && unsynced)) {
+            return;
+        }
+        try {
+            sink.commit(batch, sync);
+        } catch (IOException ex) {
+            fail(ex);
+            return;
+        } catch (RuntimeException ex) {
+            fail(new IOException("History write failed: " + ex, ex));
+            return;
+        }
+        if (sync) {
+            lastSync = now;
+            unsynced = false;
+        } else {
+            unsynced = true;
+        }
+    }
+}
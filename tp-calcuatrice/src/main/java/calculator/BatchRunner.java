@@ -0,0 +1,202 @@
+package calculator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates a stream of {@code <op> <a> <b>} lines, one result line per input line.
+ *
+ * Blank lines and lines starting with {@code #} are skipped. A line that cannot be
+ * evaluated produces {@code Error: <message>} and the batch goes on. History entries are
+ * collected and appended to the journal every {@code flushEvery} entries
+ * ({@link #DEFAULT_FLUSH_EVERY} on the command line), or once at the end of the batch when
+ * {@code flushEvery <= 0}, which keeps the whole batch in memory. Results come from a {@link ResultCache}
+ * when one is given, or from an exact {@link NumericBackend}; fixed point is computed
+ * and printed from the line buffer without allocating. Without a {@link HistoryManager}
+ * (ephemeral runs) results are only printed.
+ *
+ * Input is read in blocks into one reusable buffer and each line is tokenized in place by
+ * a {@link LineTokenizer}: no String is created per line or per operand to parse it. Only
+ * ephemeral fixed-point batches are allocation-free, though: recording a line in the
+ * history creates its {@link HistoryEntry} and, in fixed point, the decimal texts of its
+ * operands and result.
+ */
+public class BatchRunner {
+    /** Entries collected before each journal append, unless {@code --batch-flush} says otherwise. */
+    public static final int DEFAULT_FLUSH_EVERY = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final HistoryManager hm;
+    private final int flushEvery;
+    private final ResultCache cache;
+    private final NumericBackend backend;
+    private final FixedPointBackend fixed; // backend, when it is fixed point
+    private final LineTokenizer tokenizer = new LineTokenizer();
+    private final char[] number = new char[FixedPointBackend.MAX_CHARS];
+    private Metrics metrics; // for the current run, null when disabled
+
+    public BatchRunner(HistoryManager hm, int flushEvery) {
+        this(hm, flushEvery, null);
+    }
+
+    public BatchRunner(HistoryManager hm, int flushEvery, ResultCache cache) {
+        this(hm, flushEvery, cache, DoubleBackend.INSTANCE);
+    }
+
+    public BatchRunner(HistoryManager hm, int flushEvery, ResultCache cache, NumericBackend backend) {
+        this.hm = hm;
+        this.flushEvery = flushEvery;
+        this.cache = cache;
+        this.backend = backend;
+        this.fixed = backend instanceof FixedPointBackend ? (FixedPointBackend) backend : null;
+    }
+
+    /**
+     * Evaluate every line of {@code in}, writing results to {@code out}.
+     * The writer is not flushed; callers own it.
+     *
+     * @return number of lines that failed to evaluate
+     */
+    public long run(Reader in, Writer out) throws IOException {
+        List<HistoryEntry> pending = hm != null ? new ArrayList<>() : null;
+        metrics = Metrics.current();
+        char[] buf = new char[BUFFER_SIZE];
+        int start = 0; // first character of the current line
+        int scan = 0;  // where to look for its end
+        int limit = 0; // end of the data in buf
+        long failed = 0;
+        while (true) {
+            while (scan < limit && buf[scan] != '\n' && buf[scan] != '\r') {
+                scan++;
+            }
+            if (scan == limit) {
+                // no complete line left: move the partial one to the front and read more
+                if (start > 0) {
+                    System.arraycopy(buf, start, buf, 0, limit - start);
+                    limit -= start;
+                    scan -= start;
+                    start = 0;
+                }
+                if (limit == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                int n = in.read(buf, limit, buf.length - limit);
+                if (n >= 0) {
+                    limit += n;
+                    continue;
+                }
+                if (start == limit) {
+                    break;
+                }
+                // last line without a terminator
+            }
+            if (!evaluate(buf, start, scan, pending, out)) {
+                failed++;
+            }
+            start = ++scan;
+            if (flushEvery > 0 && pending != null && pending.size() >= flushEvery) {
+                appendAll(pending);
+                pending.clear();
+            }
+            if (start > limit) {
+                break;
+            }
+        }
+        if (pending != null) {
+            appendAll(pending);
+        }
+        return failed;
+    }
+
+    private void appendAll(List<HistoryEntry> pending) throws IOException {
+        Metrics m = metrics;
+        long start = m != null ? System.nanoTime() : 0;
+        hm.appendAll(pending);
+        if (m != null) {
+            m.persisted(start);
+        }
+    }
+
+    /**
+     * Evaluate one line; {@code \r\n} endings show up as an extra blank line, which is
+     * skipped.
+     *
+     * @return false if the line failed
+     */
+    private boolean evaluate(char[] buf, int from, int to, List<HistoryEntry> pending, Writer out) throws IOException {
+        LineTokenizer tok = tokenizer;
+        tok.reset(buf, from, to);
+        if (!tok.next() || tok.startsWith('#')) {
+            return true;
+        }
+        Metrics m = metrics;
+        long start = m != null ? System.nanoTime() : 0;
+        try {
+            byte op = tok.opCode();
+            int opStart = tok.start();
+            int opEnd = tok.end();
+            if (!tok.next()) {
+                throw new IllegalArgumentException("Usage: <op> <a> <b>");
+            }
+            int aStart = tok.start();
+            int aEnd = tok.end();
+            if (!tok.next()) {
+                throw new IllegalArgumentException("Usage: <op> <a> <b>");
+            }
+            if (fixed != null) {
+                long a = fixed.parse(buf, aStart, aEnd);
+                long b = fixed.parse(buf, tok.start(), tok.end());
+                checkOp(op, buf, opStart, opEnd);
+                long r = fixed.apply(op, a, b);
+                int len = fixed.format(r, number, 0);
+                out.write(number, 0, len);
+                out.write('\n');
+                if (pending != null) {
+                    pending.add(new HistoryEntry(OpCode.name(op), fixed.format(a), fixed.format(b), new String(number, 0, len)));
+                }
+            } else if (backend.isExact()) {
+                String a = new String(buf, aStart, aEnd - aStart);
+                String b = tok.token();
+                String r = backend.apply(checkOp(op, buf, opStart, opEnd), a, b); // parses the operands first
+                out.write(r);
+                out.write('\n');
+                if (pending != null) {
+                    pending.add(new HistoryEntry(OpCode.name(op), backend.normalize(a), backend.normalize(b), r));
+                }
+            } else {
+                double a = FastDoubleParser.parse(buf, aStart, aEnd);
+                double b = tok.parseDouble();
+                checkOp(op, buf, opStart, opEnd);
+                double r = cache != null ? cache.apply(op, a, b) : Calculator.apply(op, a, b);
+                if (pending != null) {
+                    pending.add(new HistoryEntry(OpCode.name(op), a, b, r));
+                }
+                out.write(Double.toString(r));
+                out.write('\n');
+            }
+            if (m != null) {
+                m.computed(op, start);
+            }
+            return true;
+        } catch (NumberFormatException ex) {
+            out.write("Error: Invalid number\n");
+        } catch (ArithmeticException | IllegalArgumentException ex) {
+            out.write("Error: " + ex.getMessage() + "\n");
+        }
+        if (m != null) {
+            m.countError();
+        }
+        return false;
+    }
+
+    private static byte checkOp(byte op, char[] buf, int from, int to) {
+        if (op < 0) {
+            throw new IllegalArgumentException("Unknown op: " + new String(buf, from, to - from));
+        }
+        return op;
+    }
+}
@@ -0,0 +1,487 @@
+package calculator;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary history file with fixed-width records: the format of the {@code export} command,
+ * read back by {@code aggregate <file>}, and a snapshot format of {@link HistoryManager}
+ * (see {@link HistoryManager#setBinarySnapshots(boolean)}).
+ *
+ * Layout: a header (magic {@code CALH}, format version, header length, then the table of
+ * operation names, a count and each name as a length-prefixed UTF-8 string) followed by
+ * {@link #RECORD_SIZE}-byte records:
+ * <pre>
+ * op (byte, index in the name table) | a (double) | b (double) | result (double) | when (long, epoch nanos)
+ * </pre>
+ * The table makes files independent of the installed plugins, whose {@link OpCode}s change
+ * with the plugin set: readers translate the file's codes to the current registry, and
+ * operations it does not know read as {@link OpCode#UNKNOWN} with their recorded name.
+ * Appending an operation missing from the table rewrites the file with a longer header.
+ *
+ * Records are appended through a {@link FileChannel} and read back through memory-mapped
+ * buffers, so a {@link Reader} gives random access to any entry without loading the file
+ * on the heap. {@link Records} reads them in order through a small buffer instead, for a
+ * snapshot that is renamed over while the history is in use (a live mapping would keep the
+ * old file from being replaced on some platforms).
+ */
+public class BinaryHistoryFile {
+    public static final int MAGIC = 0x43414c48; // "CALH"
+    public static final int VERSION = 1;
+    /** Size of the fixed part of the header, before the name table. */
+    public static final int HEADER_SIZE = 14;
+    /** Most operation names a file can hold, one per record code. */
+    public static final int MAX_OPS = 256;
+    public static final int RECORD_SIZE = 1 + 8 + 8 + 8 + 8;
+
+    private static final int OFF_A = 1;
+    private static final int OFF_B = 9;
+    private static final int OFF_RESULT = 17;
+    private static final int OFF_WHEN = 25;
+    private static final int WRITE_BATCH = 1024;
+
+    private final Path path;
+
+    public BinaryHistoryFile(String path) {
+        this.path = Paths.get(path);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Replace the file with one holding exactly {@code entries}. The new file is written
+     * next to it and renamed into place, so readers see either the old or the new one.
+     */
+    public void write(List<HistoryEntry> entries) throws IOException {
+        write(entries, entries.size());
+    }
+
+    /**
+     * Replace the file with one holding every entry of a {@link HistoryStore}.
+     */
+    public void write(HistoryStore store) throws IOException {
+        write(store, store.size());
+    }
+
+    /**
+     * Whether {@code entries} fit the format: plain doubles only (exact decimal text has no
+     * field in a record) and at most {@link #MAX_OPS} operation names.
+     */
+    static boolean canHold(Iterable<HistoryEntry> entries) {
+        Set<String> names = new HashSet<>(OpCode.names());
+        for (HistoryEntry e : entries) {
+            if (e.isExact() || (names.add(e.op) && names.size() > MAX_OPS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether {@code file} starts with the magic of this format.
+     */
+    static boolean isBinary(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException ex) {
+            return false;
+        }
+    }
+
+    void write(Iterable<HistoryEntry> entries, int count) throws IOException {
+        BinaryHistoryFile temp = new BinaryHistoryFile(path + ".tmp");
+        Files.deleteIfExists(temp.path);
+        temp.appendAll(entries, count);
+        try (FileChannel ch = FileChannel.open(temp.path, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        HistoryManager.replace(temp.path.toFile(), path.toFile());
+    }
+
+    public void append(HistoryEntry entry) throws IOException {
+        appendAll(Collections.singletonList(entry));
+    }
+
+    /**
+     * Append entries at the end of the file, creating it (with its header) if needed.
+     * A torn trailing record left by an interrupted write is dropped first.
+     */
+    public void appendAll(List<HistoryEntry> entries) throws IOException {
+        appendAll(entries, entries.size());
+    }
+
+    /**
+     * Append every entry of a {@link HistoryStore}.
+     */
+    public void appendAll(HistoryStore store) throws IOException {
+        appendAll(store, store.size());
+    }
+
+    private void appendAll(Iterable<HistoryEntry> entries, int count) throws IOException {
+        Header header = Files.exists(path) ? readHeader() : null;
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> names = new ArrayList<>(header != null ? Arrays.asList(header.names) : OpCode.names());
+        for (String name : names) {
+            codes.put(name, codes.size());
+        }
+        for (HistoryEntry e : entries) {
+            if (!codes.containsKey(e.op)) {
+                codes.put(e.op, codes.size());
+                names.add(e.op);
+            }
+        }
+        if (names.size() > MAX_OPS) {
+            throw new IOException("Too many operations for a binary history file (at most " + MAX_OPS + "): " + path);
+        }
+        if (header != null && names.size() > header.names.length) {
+            extendTable(header, names);
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            if (size == 0) {
+                ByteBuffer buf = encodeHeader(names);
+                size = writeFully(ch, buf, 0);
+            } else {
+                long start = checkHeader(ch).length;
+                long aligned = start + (size - start) / RECORD_SIZE * RECORD_SIZE;
+                if (aligned != size) {
+                    ch.truncate(aligned);
+                    size = aligned;
+                }
+            }
+            ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE * Math.min(Math.max(count, 1), WRITE_BATCH));
+            long pos = size;
+            for (HistoryEntry e : entries) {
+                if (buf.remaining() < RECORD_SIZE) {
+                    buf.flip();
+                    pos += writeFully(ch, buf, pos);
+                    buf.clear();
+                }
+                buf.put((byte) (int) codes.get(e.op))
+                        .putDouble(e.a)
+                        .putDouble(e.b)
+                        .putDouble(e.result)
+                        .putLong(e.epochNanos());
+            }
+            buf.flip();
+            writeFully(ch, buf, pos);
+        }
+    }
+
+    /**
+     * Rewrite the file with the longer name table {@code names}, which starts with the
+     * current one so that existing records keep their meaning, and replace it atomically.
+     */
+    private void extendTable(Header header, List<String> names) throws IOException {
+        Path temp = Paths.get(path + ".tmp");
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.position(writeFully(out, encodeHeader(names), 0));
+            long records = in.size() - header.length;
+            for (long done = 0; done < records; ) {
+                done += in.transferTo(header.length + done, records - done, out);
+            }
+            out.force(true);
+        }
+        HistoryManager.replace(temp.toFile(), path.toFile());
+    }
+
+    /**
+     * Map the file for reading. A missing file opens as an empty history.
+     */
+    public Reader open() throws IOException {
+        if (!Files.exists(path)) {
+            return new Reader(null, new MappedByteBuffer[0], 0, new String[0]);
+        }
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            if (size == 0) {
+                return new Reader(ch, new MappedByteBuffer[0], 0, new String[0]);
+            }
+            Header header = checkHeader(ch);
+            long count = (size - header.length) / RECORD_SIZE;
+            int segmentCount = (int) ((count + Reader.RECORDS_PER_SEGMENT - 1) / Reader.RECORDS_PER_SEGMENT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                long first = (long) s * Reader.RECORDS_PER_SEGMENT;
+                long records = Math.min(Reader.RECORDS_PER_SEGMENT, count - first);
+                segments[s] = ch.map(FileChannel.MapMode.READ_ONLY,
+                        header.length + first * RECORD_SIZE, records * RECORD_SIZE);
+            }
+            return new Reader(ch, segments, count, header.names);
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Open the file for reading its records in order. A missing or empty file has none.
+     */
+    public Records records() throws IOException {
+        if (!Files.exists(path)) {
+            return new Records(null, 0, 0, new String[0]);
+        }
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            if (size == 0) {
+                return new Records(ch, 0, 0, new String[0]);
+            }
+            Header header = checkHeader(ch);
+            long end = header.length + (size - header.length) / RECORD_SIZE * RECORD_SIZE;
+            return new Records(ch, header.length, end, header.names);
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Names by file code: the table, then placeholders for codes past its end, which only a
+     * damaged record can hold.
+     */
+    private static String[] namesByCode(String[] table) {
+        String[] names = new String[MAX_OPS];
+        for (int i = 0; i < MAX_OPS; i++) {
+            names[i] = i < table.length ? table[i] : "unknown" + i;
+        }
+        return names;
+    }
+
+    /**
+     * Length and name table of a file header.
+     */
+    private static final class Header {
+        final long length;
+        final String[] names;
+
+        Header(long length, String[] names) {
+            this.length = length;
+            this.names = names;
+        }
+    }
+
+    private Header readHeader() throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return ch.size() == 0 ? null : checkHeader(ch);
+        }
+    }
+
+    private Header checkHeader(FileChannel ch) throws IOException {
+        ByteBuffer fixed = readFully(ch, 0, HEADER_SIZE);
+        if (fixed.remaining() < 8 || fixed.getInt() != MAGIC) {
+            throw new IOException("Not a binary history file: " + path);
+        }
+        int version = fixed.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported history format version " + version + ": " + path);
+        }
+        try {
+            int length = fixed.getInt();
+            int count = fixed.getShort() & 0xffff;
+            if (length < HEADER_SIZE || count > MAX_OPS) {
+                throw new IOException("Damaged binary history header: " + path);
+            }
+            ByteBuffer table = readFully(ch, HEADER_SIZE, length - HEADER_SIZE);
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                byte[] utf8 = new byte[table.getShort() & 0xffff];
+                table.get(utf8);
+                names[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+            return new Header(length, names);
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Damaged binary history header: " + path, ex);
+        }
+    }
+
+    private static ByteBuffer encodeHeader(List<String> names) {
+        byte[][] utf8 = new byte[names.size()][];
+        int length = HEADER_SIZE;
+        for (int i = 0; i < utf8.length; i++) {
+            utf8[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+            length += 2 + utf8[i].length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(length).putInt(MAGIC).putInt(VERSION).putInt(length)
+                .putShort((short) names.size());
+        for (byte[] name : utf8) {
+            buf.putShort((short) name.length).put(name);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Up to {@code length} bytes from {@code pos}, fewer at the end of the file.
+     */
+    private static ByteBuffer readFully(FileChannel ch, long pos, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining() && ch.read(buf, pos + buf.position()) >= 0) {
+            // keep reading until the buffer is full or EOF
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static int writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        int written = 0;
+        while (buf.hasRemaining()) {
+            written += ch.write(buf, pos + written);
+        }
+        return written;
+    }
+
+    /**
+     * Random-access view over a mapped history file. Accessors read straight from the
+     * mapping; only {@link #entry(long)} allocates.
+     */
+    public static final class Reader implements Closeable {
+        static final int RECORDS_PER_SEGMENT = Integer.MAX_VALUE / RECORD_SIZE;
+
+        private final FileChannel channel;
+        private final MappedByteBuffer[] segments;
+        private final long size;
+        private final String[] names; // by file code
+        private final byte[] codes = new byte[MAX_OPS]; // file code to registry code
+
+        private Reader(FileChannel channel, MappedByteBuffer[] segments, long size, String[] table) {
+            this.channel = channel;
+            this.segments = segments;
+            this.size = size;
+            this.names = namesByCode(table);
+            for (int i = 0; i < MAX_OPS; i++) {
+                byte code = OpCode.find(names[i]);
+                codes[i] = code >= 0 ? code : OpCode.UNKNOWN;
+            }
+        }
+
+        public long size() {
+            return size;
+        }
+
+        /**
+         * Registry code of record {@code i}'s operation, {@link OpCode#UNKNOWN} if it is not
+         * installed.
+         */
+        public byte opCode(long i) {
+            return codes[segment(i).get(offset(i)) & 0xff];
+        }
+
+        public String op(long i) {
+            return names[segment(i).get(offset(i)) & 0xff];
+        }
+
+        public double a(long i) {
+            return segment(i).getDouble(offset(i) + OFF_A);
+        }
+
+        public double b(long i) {
+            return segment(i).getDouble(offset(i) + OFF_B);
+        }
+
+        public double result(long i) {
+            return segment(i).getDouble(offset(i) + OFF_RESULT);
+        }
+
+        public long epochNanos(long i) {
+            return segment(i).getLong(offset(i) + OFF_WHEN);
+        }
+
+        public HistoryEntry entry(long i) {
+            return new HistoryEntry(op(i), a(i), b(i), result(i), epochNanos(i));
+        }
+
+        private ByteBuffer segment(long i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+            }
+            return segments[(int) (i / RECORDS_PER_SEGMENT)];
+        }
+
+        private static int offset(long i) {
+            return (int) (i % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Sequential reader over the records, {@link #WRITE_BATCH} at a time. A torn trailing
+     * record is not read.
+     */
+    public static final class Records implements Closeable {
+        private final FileChannel channel;
+        private final long end;
+        private final String[] names; // by file code
+        private final ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE * WRITE_BATCH);
+        private long pos;
+
+        private Records(FileChannel channel, long start, long end, String[] table) {
+            this.channel = channel;
+            this.pos = start;
+            this.end = end;
+            this.names = namesByCode(table);
+            buf.limit(0);
+        }
+
+        /**
+         * The next entry, or {@code null} after the last one.
+         */
+        public HistoryEntry next() throws IOException {
+            if (!buf.hasRemaining()) {
+                if (pos >= end) {
+                    return null;
+                }
+                buf.clear().limit((int) Math.min(buf.capacity(), end - pos));
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, pos + buf.position()) < 0) {
+                        throw new EOFException("Binary history file truncated while reading");
+                    }
+                }
+                pos += buf.position();
+                buf.flip();
+            }
+            String op = names[buf.get() & 0xff];
+            return new HistoryEntry(op, buf.getDouble(), buf.getDouble(), buf.getDouble(), buf.getLong());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
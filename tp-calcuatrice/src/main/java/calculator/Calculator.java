@@ -1,5 +1,8 @@
 package calculator;
 
+import java.util.Arrays;
+import java.util.Objects;
+
 /**
  * Simple calculator with basic arithmetic operations.
  *
@@ -10,8 +13,13 @@ package calculator;
  * Calculator.mul(3, 4); // returns 12.0
  * Calculator.div(10, 2); // returns 5.0
  * </pre>
+ *
+ * Each operation also has a bulk form over arrays, e.g.
+ * {@code Calculator.add(a, b, out)} sets {@code out[i] = a[i] + b[i]}.
+ * The bulk loops are kept branch-free so the JIT can compile them to SIMD instructions.
  */
 public class Calculator {
+    private static final int[] NO_INDEXES = new int[0];
 
     /**
      * Add two numbers.
@@ -60,4 +68,143 @@ public class Calculator {
         }
         return a / b;
     }
+
+    /**
+     * Element-wise {@code out[i] = a[i] + b[i]}. All arrays must have the same length.
+     */
+    public static void add(double[] a, double[] b, double[] out) {
+        add(a, 0, b, 0, out, 0, sameLength(a, b, out));
+    }
+
+    /**
+     * Element-wise sum of {@code length} elements starting at the given offsets.
+     */
+    public static void add(double[] a, int aOffset, double[] b, int bOffset, double[] out, int outOffset, int length) {
+        checkRanges(a, aOffset, b, bOffset, out, outOffset, length);
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = a[aOffset + i] + b[bOffset + i];
+        }
+    }
+
+    /**
+     * Element-wise {@code out[i] = a[i] - b[i]}. All arrays must have the same length.
+     */
+    public static void sub(double[] a, double[] b, double[] out) {
+        sub(a, 0, b, 0, out, 0, sameLength(a, b, out));
+    }
+
+    /**
+     * Element-wise difference of {@code length} elements starting at the given offsets.
+     */
+    public static void sub(double[] a, int aOffset, double[] b, int bOffset, double[] out, int outOffset, int length) {
+        checkRanges(a, aOffset, b, bOffset, out, outOffset, length);
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = a[aOffset + i] - b[bOffset + i];
+        }
+    }
+
+    /**
+     * Element-wise {@code out[i] = a[i] * b[i]}. All arrays must have the same length.
+     */
+    public static void mul(double[] a, double[] b, double[] out) {
+        mul(a, 0, b, 0, out, 0, sameLength(a, b, out));
+    }
+
+    /**
+     * Element-wise product of {@code length} elements starting at the given offsets.
+     */
+    public static void mul(double[] a, int aOffset, double[] b, int bOffset, double[] out, int outOffset, int length) {
+        checkRanges(a, aOffset, b, bOffset, out, outOffset, length);
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = a[aOffset + i] * b[bOffset + i];
+        }
+    }
+
+    /**
+     * Element-wise {@code out[i] = a[i] / b[i]}. All arrays must have the same length.
+     *
+     * @return indexes where {@code b[i]} is zero (empty when there are none)
+     * @see #div(double[], int, double[], int, double[], int, int)
+     */
+    public static int[] div(double[] a, double[] b, double[] out) {
+        return div(a, 0, b, 0, out, 0, sameLength(a, b, out));
+    }
+
+    /**
+     * Element-wise quotient of {@code length} elements starting at the given offsets.
+     * Unlike {@link #div(double, double)} this does not throw on a zero divisor: every
+     * offending element is set to {@code NaN} and its index, relative to the start of the
+     * range, is returned.
+     *
+     * @return indexes where the divisor is zero, in ascending order (empty when there are none)
+     */
+    public static int[] div(double[] a, int aOffset, double[] b, int bOffset, double[] out, int outOffset, int length) {
+        checkRanges(a, aOffset, b, bOffset, out, outOffset, length);
+        // zeros are recorded as they are met: out may be a or b, so b cannot be read again
+        int[] indexes = NO_INDEXES;
+        int zeros = 0;
+        for (int i = 0; i < length; i++) {
+            double d = b[bOffset + i];
+            if (d == 0.0) {
+                if (zeros == indexes.length) {
+                    indexes = Arrays.copyOf(indexes, Math.max(4, zeros * 2));
+                }
+                indexes[zeros++] = i;
+            }
+            out[outOffset + i] = a[aOffset + i] / d;
+        }
+        for (int k = 0; k < zeros; k++) {
+            out[outOffset + indexes[k]] = Double.NaN;
+        }
+        return zeros == indexes.length ? indexes : Arrays.copyOf(indexes, zeros);
+    }
+
+    private static int sameLength(double[] a, double[] b, double[] out) {
+        if (a.length != b.length || a.length != out.length) {
+            throw new IllegalArgumentException("Array lengths differ: " + a.length + ", " + b.length + ", " + out.length);
+        }
+        return a.length;
+    }
+
+    private static void checkRanges(double[] a, int aOffset, double[] b, int bOffset, double[] out, int outOffset, int length) {
+        Objects.checkFromIndexSize(aOffset, length, a.length);
+        Objects.checkFromIndexSize(bOffset, length, b.length);
+        Objects.checkFromIndexSize(outOffset, length, out.length);
+    }
+
+    /**
+     * Apply an operation by name: {@code add}, {@code sub}, {@code mul}, {@code div} or a
+     * plugged-in {@link Operation}.
+     *
+     * @param op operation name
+     * @param a first operand
+     * @param b second operand
+     * @return the operation result
+     * @throws IllegalArgumentException for an unknown operation
+     * @throws ArithmeticException when dividing by zero
+     */
+    public static double apply(String op, double a, double b) {
+        return apply(OpCode.of(op), a, b);
+    }
+
+    /**
+     * Apply an operation by {@link OpCode}. The built-in operations are called directly;
+     * plugged-in ones through their cached {@link OpCode#operator}.
+     *
+     * @param op operation code
+     * @param a first operand
+     * @param b second operand
+     * @return the operation result
+     * @throws IllegalArgumentException for an unknown code
+     * @throws ArithmeticException when dividing by zero
+     */
+    public static double apply(byte op, double a, double b) {
+        switch (op) {
+            case OpCode.ADD: return add(a, b);
+            case OpCode.SUB: return sub(a, b);
+            case OpCode.MUL: return mul(a, b);
+            case OpCode.DIV: return div(a, b);
+            default: return OpCode.operator(op).applyAsDouble(a, b);
+        }
+    }
 }
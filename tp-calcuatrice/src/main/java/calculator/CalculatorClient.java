@@ -0,0 +1,41 @@
+package calculator;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Thin client for {@link CalculatorServer}: sends one request line and returns the
+ * response line.
+ */
+public class CalculatorClient {
+    private CalculatorClient() {
+    }
+
+    /**
+     * Send {@code request} to the server on the loopback {@code port}.
+     *
+     * @return the response, {@code <status> <result or message>}
+     * @throws IOException if the server cannot be reached or closes without answering
+     */
+    public static String call(int port, String request) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            out.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            socket.shutdownOutput();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String response = in.readLine();
+            if (response == null) {
+                throw new EOFException("Server closed the connection without answering");
+            }
+            return response;
+        }
+    }
+}
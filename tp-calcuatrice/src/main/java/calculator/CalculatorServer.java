@@ -0,0 +1,222 @@
+package calculator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Long-running calculator listening on a loopback TCP port, so that clients do not pay
+ * JVM startup or a history load for each calculation.
+ *
+ * Line protocol (UTF-8), any number of requests per connection:
+ * <pre>
+ * request:  &lt;op&gt; &lt;a&gt; &lt;b&gt;  |  eval &lt;expression&gt;  |  ping
+ * response: &lt;status&gt; &lt;result or message&gt;
+ * </pre>
+ * The status is the exit code the CLI would use: {@code 0} success, {@code 2} bad request
+ * (usage, invalid number), {@code 3} calculation error, {@code 4} history I/O error.
+ * Calculations are appended to the history through the given {@link HistoryManager}, if
+ * any; the history itself is never loaded. Each connection is served by a pooled thread. With an
+ * exact {@link NumericBackend} operations are computed in it, while {@code eval} stays in
+ * double.
+ */
+public class CalculatorServer implements Closeable {
+    public static final int DEFAULT_PORT = 7878;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final ServerSocket serverSocket;
+    private final HistoryManager hm;
+    private final ResultCache cache;
+    private final NumericBackend backend;
+    private final ExpressionCompiler compiler = new ExpressionCompiler();
+    private final ExecutorService pool;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    /**
+     * Bind {@code port} on the loopback interface ({@code 0} picks a free port) and start
+     * accepting connections.
+     *
+     * @param hm where calculations are recorded, or null to keep no history
+     * @param cache result cache shared by all connections, or null
+     */
+    public CalculatorServer(int port, HistoryManager hm, ResultCache cache) throws IOException {
+        this(port, hm, cache, DoubleBackend.INSTANCE);
+    }
+
+    /**
+     * Same, computing operations with {@code backend}; the cache is only used in double.
+     */
+    public CalculatorServer(int port, HistoryManager hm, ResultCache cache, NumericBackend backend)
+            throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.hm = hm;
+        this.cache = cache;
+        this.backend = backend;
+        AtomicInteger ids = new AtomicInteger();
+        this.pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "calc-conn-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.acceptor = new Thread(this::acceptLoop, "calc-server");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Block until the server is closed.
+     */
+    public void await() throws InterruptedException {
+        acceptor.join();
+    }
+
+    /**
+     * Stop accepting, close open connections and wait for their handlers. History is
+     * left to the caller's {@link HistoryManager}.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket s : clients) {
+            s.close();
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException ex) {
+                return; // closed
+            }
+            clients.add(socket);
+            pool.execute(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                out.write(handle(line));
+                out.write('\n');
+                if (!in.ready()) {
+                    out.flush(); // pipelined requests are answered in one write
+                }
+            }
+            out.flush();
+        } catch (SocketException ex) {
+            // client went away or server closed
+        } catch (IOException ex) {
+            System.err.println("Connection error: " + ex.getMessage());
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    /**
+     * Answer one request line.
+     */
+    String handle(String line) {
+        String[] parts = WHITESPACE.split(line);
+        String cmd = parts[0].toLowerCase();
+        try {
+            if ("ping".equals(cmd)) {
+                return "0 pong";
+            }
+            if ("eval".equals(cmd)) {
+                if (parts.length < 2) {
+                    return "2 Usage: eval expression";
+                }
+                CompiledExpression ce = compiler.compile(line.substring(parts[0].length()).trim());
+                if (!ce.variables().isEmpty()) {
+                    return "3 Undefined variable: " + ce.variables().get(0);
+                }
+                return "0 " + ce.evaluate();
+            }
+            if (parts.length < 3) {
+                return "2 Usage: <op> <a> <b>";
+            }
+            Metrics m = Metrics.current();
+            long start = m != null ? System.nanoTime() : 0;
+            if (backend.isExact()) {
+                String a = backend.normalize(parts[1]);
+                String b = backend.normalize(parts[2]);
+                byte code = OpCode.of(cmd);
+                String r = backend.apply(code, a, b);
+                HistoryEntry e = new HistoryEntry(OpCode.name(code), a, b, r);
+                start = m != null ? m.computed(code, start) : 0;
+                record(e, m, start);
+                return "0 " + r;
+            }
+            double a = Double.parseDouble(parts[1]);
+            double b = Double.parseDouble(parts[2]);
+            byte code = OpCode.of(cmd);
+            double r;
+            if (cache != null) {
+                synchronized (cache) {
+                    r = cache.apply(code, a, b);
+                }
+            } else {
+                r = Calculator.apply(code, a, b);
+            }
+            HistoryEntry e = new HistoryEntry(OpCode.name(code), a, b, r);
+            start = m != null ? m.computed(code, start) : 0;
+            record(e, m, start);
+            return "0 " + r;
+        } catch (NumberFormatException ex) {
+            Metrics.error();
+            return "2 Invalid number";
+        } catch (ArithmeticException | IllegalArgumentException ex) {
+            Metrics.error();
+            return "3 " + ex.getMessage();
+        } catch (IOException ex) {
+            return "4 I/O error saving history: " + ex.getMessage();
+        }
+    }
+
+    /** Append {@code e} to the history, if there is one. */
+    private void record(HistoryEntry e, Metrics m, long start) throws IOException {
+        if (hm == null) {
+            return;
+        }
+        hm.append(e);
+        if (m != null) {
+            m.persisted(start);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package calculator;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An expression compiled by {@link ExpressionCompiler} into a {@link MethodHandle} chain.
+ * Variables are passed positionally, in the order given by {@link #variables()}.
+ */
+public final class CompiledExpression {
+    private final String source;
+    private final List<String> variables;
+    private final MethodHandle handle; // (double[])double
+
+    CompiledExpression(String source, List<String> variables, MethodHandle handle) {
+        this.source = source;
+        this.variables = Collections.unmodifiableList(variables);
+        this.handle = handle;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    /**
+     * Variable names, in the order their values must be passed to {@link #evaluate(double...)}.
+     */
+    public List<String> variables() {
+        return variables;
+    }
+
+    /**
+     * Evaluate the expression.
+     *
+     * @param values one value per entry of {@link #variables()}
+     * @throws IllegalArgumentException when the number of values does not match
+     * @throws ArithmeticException when dividing by zero
+     */
+    public double evaluate(double... values) {
+        if (values.length != variables.size()) {
+            throw new IllegalArgumentException("Expected " + variables.size() + " values for " + variables
+                    + ", got " + values.length);
+        }
+        try {
+            return (double) handle.invokeExact(values);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,543 @@
+package calculator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compressed history snapshot, an alternative to the JSON array written by
+ * {@link HistoryManager} (see {@link HistoryManager#setCompressedSnapshots(boolean)}).
+ *
+ * Layout: an 8-byte header (magic {@code CALZ}, format version) followed by blocks of up
+ * to {@link #BLOCK_SIZE} entries, each {@code count (int) | payload length (int) | payload}.
+ * The payload is a bit stream holding each column in turn:
+ * <ul>
+ *   <li>ops: the distinct op names of the block, then one dictionary index per entry in
+ *       as few bits as the dictionary needs (none when the block has a single op). Names
+ *       rather than {@link OpCode}s, whose plugin codes depend on the installed plugins;</li>
+ *   <li>timestamps: the first in full, then delta-of-delta, zig-zag encoded in a
+ *       variable-width bucket ({@code 0} alone for a regular interval);</li>
+ *   <li>a, b and result: Gorilla XOR encoding against the previous value of the column,
+ *       so repeated values cost one bit and close values only their differing bits (the
+ *       previous bit window is reused only when that is cheaper than a new one);</li>
+ *   <li>exact text: one flag, then, if any entry of the block is exact, one bit per entry
+ *       and the UTF-8 text of the exact ones.</li>
+ * </ul>
+ * Blocks are self-contained, so a {@link Reader} decodes them one at a time in constant
+ * memory.
+ */
+final class CompressedHistoryFile {
+    static final int MAGIC = 0x43414c5a; // "CALZ"
+    static final int VERSION = 1;
+    static final int BLOCK_SIZE = 1024;
+
+    private CompressedHistoryFile() {
+    }
+
+    /**
+     * Whether {@code file} starts with the compressed snapshot magic.
+     */
+    static boolean isCompressed(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException ex) {
+            return false;
+        }
+    }
+
+    static void write(File file, Iterable<HistoryEntry> entries) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(out, entries);
+        }
+    }
+
+    /**
+     * Encode {@code entries} to {@code out}, which is flushed but not closed.
+     */
+    static void write(OutputStream out, Iterable<HistoryEntry> entries) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        Block block = new Block();
+        BitWriter bits = new BitWriter();
+        for (HistoryEntry e : entries) {
+            block.add(e);
+            if (block.size == BLOCK_SIZE) {
+                writeBlock(data, block, bits);
+            }
+        }
+        if (block.size > 0) {
+            writeBlock(data, block, bits);
+        }
+        data.flush();
+    }
+
+    private static void writeBlock(DataOutputStream data, Block block, BitWriter bits) throws IOException {
+        bits.reset();
+        block.encode(bits);
+        int length = bits.length();
+        data.writeInt(block.size);
+        data.writeInt(length);
+        data.write(bits.bytes(), 0, length);
+        block.size = 0;
+    }
+
+    /**
+     * Sequential decoder: {@link #nextBlock()} decodes the next block, whose entries are
+     * then read by index until the following call.
+     */
+    static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final Block block = new Block();
+        private final BitReader bits = new BitReader();
+
+        /**
+         * @throws IOException if the stream does not start with a compressed snapshot header
+         */
+        Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+            try {
+                if (this.in.readInt() != MAGIC) {
+                    throw new IOException("Not a compressed history snapshot");
+                }
+                int version = this.in.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported compressed history version " + version);
+                }
+            } catch (IOException ex) {
+                this.in.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Decode the next block.
+         *
+         * @return its number of entries, or {@code -1} at the end of the snapshot
+         * @throws IOException if the block is truncated or corrupt
+         */
+        int nextBlock() throws IOException {
+            int count;
+            try {
+                count = in.readInt();
+            } catch (EOFException ex) {
+                block.size = 0;
+                return -1;
+            }
+            try {
+                int length = in.readInt();
+                if (count <= 0 || count > BLOCK_SIZE || length < 0) {
+                    throw new IOException("Corrupt compressed history block");
+                }
+                bits.reset(in, length);
+                block.decode(bits, count);
+            } catch (EOFException ex) {
+                throw new IOException("Truncated compressed history block", ex);
+            }
+            return count;
+        }
+
+        /**
+         * Op code of entry {@code i}, {@link OpCode#UNKNOWN} if the registry does not know it.
+         */
+        byte opCode(int i) {
+            return block.ops[i];
+        }
+
+        double a(int i) {
+            return block.as[i];
+        }
+
+        double b(int i) {
+            return block.bs[i];
+        }
+
+        double result(int i) {
+            return block.results[i];
+        }
+
+        long epochNanos(int i) {
+            return block.times[i];
+        }
+
+        HistoryEntry entry(int i) {
+            HistoryEntry e = new HistoryEntry(block.names[i], block.as[i], block.bs[i],
+                    block.results[i], block.times[i]);
+            if (block.hasTexts && block.texts[i * 3 + 2] != null) {
+                e.setTexts(block.texts[i * 3], block.texts[i * 3 + 1], block.texts[i * 3 + 2]);
+            }
+            return e;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * One block of entries in columns, reused for every block of a file.
+     */
+    private static final class Block {
+        final byte[] ops = new byte[BLOCK_SIZE];
+        final String[] names = new String[BLOCK_SIZE];
+        final long[] times = new long[BLOCK_SIZE];
+        final double[] as = new double[BLOCK_SIZE];
+        final double[] bs = new double[BLOCK_SIZE];
+        final double[] results = new double[BLOCK_SIZE];
+        final String[] texts = new String[BLOCK_SIZE * 3];
+        final String[] dictionary = new String[BLOCK_SIZE];
+        final int[] index = new int[BLOCK_SIZE];
+        final Map<String, Integer> dictionaryIndex = new HashMap<>();
+        boolean hasTexts;
+        int size;
+
+        void add(HistoryEntry e) {
+            int i = size++;
+            names[i] = e.op;
+            times[i] = e.epochNanos();
+            as[i] = e.a;
+            bs[i] = e.b;
+            results[i] = e.result;
+            boolean exact = e.isExact();
+            texts[i * 3] = exact ? e.aText() : null;
+            texts[i * 3 + 1] = exact ? e.bText() : null;
+            texts[i * 3 + 2] = exact ? e.resultText() : null;
+        }
+
+        void encode(BitWriter w) {
+            // ops: dictionary of the distinct names, then an index per entry
+            dictionaryIndex.clear();
+            for (int i = 0; i < size; i++) {
+                Integer d = dictionaryIndex.get(names[i]);
+                if (d == null) {
+                    d = dictionaryIndex.size();
+                    dictionaryIndex.put(names[i], d);
+                    dictionary[d] = names[i];
+                }
+                index[i] = d;
+            }
+            int distinct = dictionaryIndex.size();
+            writeVarLong(w, distinct - 1);
+            for (int d = 0; d < distinct; d++) {
+                writeText(w, dictionary[d]);
+            }
+            int width = bitsFor(distinct - 1);
+            for (int i = 0; i < size; i++) {
+                w.write(index[i], width);
+            }
+            // timestamps: delta of delta
+            w.write(times[0], 64);
+            long prevDelta = 0;
+            for (int i = 1; i < size; i++) {
+                long delta = times[i] - times[i - 1];
+                writeVarLong(w, zigZag(delta - prevDelta));
+                prevDelta = delta;
+            }
+            writeDoubles(w, as, size);
+            writeDoubles(w, bs, size);
+            writeDoubles(w, results, size);
+            // exact text
+            boolean any = false;
+            for (int i = 0; i < size && !any; i++) {
+                any = texts[i * 3 + 2] != null;
+            }
+            w.write(any ? 1 : 0, 1);
+            if (any) {
+                for (int i = 0; i < size; i++) {
+                    w.write(texts[i * 3 + 2] != null ? 1 : 0, 1);
+                }
+                for (int t = 0; t < size * 3; t++) {
+                    if (texts[t] != null) {
+                        writeText(w, texts[t]);
+                    }
+                }
+            }
+        }
+
+        void decode(BitReader r, int count) throws IOException {
+            size = count;
+            int distinct = (int) Math.min(readVarLong(r) + 1, Integer.MAX_VALUE);
+            if (distinct > count) {
+                throw new IOException("Corrupt compressed history block");
+            }
+            for (int d = 0; d < distinct; d++) {
+                dictionary[d] = readText(r);
+                index[d] = OpCode.find(dictionary[d]);
+            }
+            int width = bitsFor(distinct - 1);
+            for (int i = 0; i < count; i++) {
+                int d = (int) r.read(width);
+                if (d >= distinct) {
+                    throw new IOException("Corrupt compressed history block");
+                }
+                names[i] = dictionary[d];
+                ops[i] = index[d] >= 0 ? (byte) index[d] : OpCode.UNKNOWN;
+            }
+            times[0] = r.read(64);
+            long prevDelta = 0;
+            for (int i = 1; i < count; i++) {
+                long delta = prevDelta + unZigZag(readVarLong(r));
+                times[i] = times[i - 1] + delta;
+                prevDelta = delta;
+            }
+            readDoubles(r, as, count);
+            readDoubles(r, bs, count);
+            readDoubles(r, results, count);
+            hasTexts = r.read(1) != 0;
+            if (hasTexts) {
+                Arrays.fill(texts, 0, count * 3, null);
+                for (int i = 0; i < count; i++) {
+                    if (r.read(1) != 0) {
+                        texts[i * 3 + 2] = ""; // marker, replaced below
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    if (texts[i * 3 + 2] != null) {
+                        texts[i * 3] = readText(r);
+                        texts[i * 3 + 1] = readText(r);
+                        texts[i * 3 + 2] = readText(r);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int bitsFor(int maxValue) {
+        return 32 - Integer.numberOfLeadingZeros(maxValue);
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Unsigned value in a bucket: {@code 0}, {@code 10}+14 bits, {@code 110}+24 bits,
+     * {@code 1110}+40 bits or {@code 1111}+64 bits.
+     */
+    private static void writeVarLong(BitWriter w, long v) {
+        if (v == 0) {
+            w.write(0, 1);
+        } else if (v >>> 14 == 0) {
+            w.write(0b10, 2);
+            w.write(v, 14);
+        } else if (v >>> 24 == 0) {
+            w.write(0b110, 3);
+            w.write(v, 24);
+        } else if (v >>> 40 == 0) {
+            w.write(0b1110, 4);
+            w.write(v, 40);
+        } else {
+            w.write(0b1111, 4);
+            w.write(v, 64);
+        }
+    }
+
+    private static long readVarLong(BitReader r) throws IOException {
+        if (r.read(1) == 0) return 0;
+        if (r.read(1) == 0) return r.read(14);
+        if (r.read(1) == 0) return r.read(24);
+        if (r.read(1) == 0) return r.read(40);
+        return r.read(64);
+    }
+
+    private static void writeText(BitWriter w, String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(w, utf8.length);
+        for (byte c : utf8) {
+            w.write(c & 0xff, 8);
+        }
+    }
+
+    private static String readText(BitReader r) throws IOException {
+        long length = readVarLong(r);
+        if (length > r.remainingBits() / 8) {
+            throw new IOException("Corrupt compressed history block");
+        }
+        byte[] utf8 = new byte[(int) length];
+        for (int i = 0; i < utf8.length; i++) {
+            utf8[i] = (byte) r.read(8);
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gorilla encoding: {@code 0} for the previous value; otherwise {@code 1} then either
+     * {@code 0} and the XOR bits inside the previous leading/trailing-zero window, or
+     * {@code 1}, 5 bits of leading zeros, 6 bits of length - 1 and the XOR bits.
+     */
+    private static void writeDoubles(BitWriter w, double[] values, int count) {
+        long prev = Double.doubleToRawLongBits(values[0]);
+        w.write(prev, 64);
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ prev;
+            prev = bits;
+            if (xor == 0) {
+                w.write(0, 1);
+                continue;
+            }
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            int length = 64 - leading - trailing;
+            // reuse the previous window unless a new one (11 bits of header) is cheaper
+            if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing
+                    && 64 - prevLeading - prevTrailing <= length + 11) {
+                w.write(0b10, 2);
+                w.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+            } else {
+                w.write(0b11, 2);
+                w.write(leading, 5);
+                w.write(length - 1, 6);
+                w.write(xor >>> trailing, length);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+    }
+
+    private static void readDoubles(BitReader r, double[] values, int count) throws IOException {
+        long prev = r.read(64);
+        values[0] = Double.longBitsToDouble(prev);
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (r.read(1) != 0) {
+                if (r.read(1) == 0) {
+                    if (prevLeading < 0) {
+                        throw new IOException("Corrupt compressed history block");
+                    }
+                    prev ^= r.read(64 - prevLeading - prevTrailing) << prevTrailing;
+                } else {
+                    int leading = (int) r.read(5);
+                    int length = (int) r.read(6) + 1;
+                    int trailing = 64 - leading - length;
+                    if (trailing < 0) {
+                        throw new IOException("Corrupt compressed history block");
+                    }
+                    prev ^= r.read(length) << trailing;
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+            values[i] = Double.longBitsToDouble(prev);
+        }
+    }
+
+    /**
+     * Most-significant-bit-first bit stream into a growable byte array.
+     */
+    private static final class BitWriter {
+        private byte[] buf = new byte[1 << 12];
+        private int pos; // bytes completed
+        private int cur; // partial byte
+        private int used; // bits used in cur
+
+        void reset() {
+            pos = 0;
+            cur = 0;
+            used = 0;
+        }
+
+        /**
+         * Write the low {@code n} bits of {@code v}, {@code 0 <= n <= 64}.
+         */
+        void write(long v, int n) {
+            while (n > 0) {
+                int take = Math.min(8 - used, n);
+                int chunk = (int) (v >>> (n - take)) & ((1 << take) - 1);
+                cur |= chunk << (8 - used - take);
+                used += take;
+                n -= take;
+                if (used == 8) {
+                    put((byte) cur);
+                    cur = 0;
+                    used = 0;
+                }
+            }
+        }
+
+        private void put(byte b) {
+            if (pos == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[pos++] = b;
+        }
+
+        /** Length in bytes, padding the last byte with zeros. */
+        int length() {
+            if (used > 0) {
+                put((byte) cur);
+                cur = 0;
+                used = 0;
+            }
+            return pos;
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    private static final class BitReader {
+        private byte[] buf = new byte[1 << 12];
+        private int limit;
+        private int pos;
+        private int cur;
+        private int left; // unread bits in cur
+
+        void reset(DataInputStream in, int length) throws IOException {
+            if (buf.length < length) {
+                buf = new byte[Math.max(length, buf.length * 2)];
+            }
+            in.readFully(buf, 0, length);
+            limit = length;
+            pos = 0;
+            left = 0;
+        }
+
+        long remainingBits() {
+            return (long) (limit - pos) * 8 + left;
+        }
+
+        /**
+         * Read {@code n} bits, {@code 0 <= n <= 64}, most significant first.
+         */
+        long read(int n) throws IOException {
+            long v = 0;
+            while (n > 0) {
+                if (left == 0) {
+                    if (pos == limit) {
+                        throw new IOException("Corrupt compressed history block");
+                    }
+                    cur = buf[pos++] & 0xff;
+                    left = 8;
+                }
+                int take = Math.min(left, n);
+                v = (v << take) | ((cur >>> (left - take)) & ((1 << take) - 1));
+                left -= take;
+                n -= take;
+            }
+            return v;
+        }
+    }
+}
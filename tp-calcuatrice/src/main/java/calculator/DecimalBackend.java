@@ -0,0 +1,57 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Arbitrary-precision decimal arithmetic: every result is rounded to the
+ * {@link MathContext} precision (so {@code 0.1 + 0.2} is exactly {@code 0.3}).
+ */
+final class DecimalBackend implements NumericBackend {
+    private final MathContext mc;
+
+    DecimalBackend(MathContext mc) {
+        this.mc = mc;
+    }
+
+    @Override
+    public String name() {
+        return "decimal:" + mc.getPrecision();
+    }
+
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    @Override
+    public String normalize(String value) {
+        return parse(value).toString();
+    }
+
+    @Override
+    public String apply(byte op, String a, String b) {
+        return apply(op, parse(a), parse(b)).toString();
+    }
+
+    BigDecimal apply(byte op, BigDecimal a, BigDecimal b) {
+        switch (op) {
+            case OpCode.ADD: return a.add(b, mc);
+            case OpCode.SUB: return a.subtract(b, mc);
+            case OpCode.MUL: return a.multiply(b, mc);
+            case OpCode.DIV:
+                if (b.signum() == 0) {
+                    throw new ArithmeticException("Division by zero");
+                }
+                return a.divide(b, mc);
+            default: throw new IllegalArgumentException("Not supported in exact mode: " + OpCode.name(op));
+        }
+    }
+
+    /**
+     * Operands are taken as written; only results are rounded.
+     */
+    private static BigDecimal parse(String value) {
+        return new BigDecimal(value); // NumberFormatException for NaN, Infinity, garbage
+    }
+}
@@ -0,0 +1,32 @@
+package calculator;
+
+/**
+ * The default {@code double} arithmetic of {@link Calculator}, behind the
+ * {@link NumericBackend} interface.
+ */
+final class DoubleBackend implements NumericBackend {
+    static final DoubleBackend INSTANCE = new DoubleBackend();
+
+    private DoubleBackend() {
+    }
+
+    @Override
+    public String name() {
+        return "double";
+    }
+
+    @Override
+    public boolean isExact() {
+        return false;
+    }
+
+    @Override
+    public String normalize(String value) {
+        return Double.toString(Double.parseDouble(value));
+    }
+
+    @Override
+    public String apply(byte op, String a, String b) {
+        return Double.toString(Calculator.apply(op, Double.parseDouble(a), Double.parseDouble(b)));
+    }
+}
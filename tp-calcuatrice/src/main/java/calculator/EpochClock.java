@@ -0,0 +1,52 @@
+package calculator;
+
+import java.time.Instant;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Source of wall-clock timestamps in nanoseconds since the epoch, used to stamp
+ * {@link HistoryEntry} objects.
+ *
+ * {@link #SYSTEM} reads the system clock on every call. {@link #coarse()} returns a
+ * shared clock refreshed about once per millisecond by a background thread, so reading it
+ * is a single volatile load; use it when stamping entries at a very high rate.
+ */
+public interface EpochClock {
+
+    EpochClock SYSTEM = () -> toEpochNanos(Instant.now());
+
+    long epochNanos();
+
+    static EpochClock coarse() {
+        return CoarseClock.INSTANCE;
+    }
+
+    static long toEpochNanos(Instant t) {
+        return Math.addExact(Math.multiplyExact(t.getEpochSecond(), 1_000_000_000L), t.getNano());
+    }
+
+    /**
+     * Clock cached in a volatile field and refreshed by a daemon thread.
+     */
+    final class CoarseClock implements EpochClock {
+        static final CoarseClock INSTANCE = new CoarseClock(1_000_000L);
+
+        private volatile long now = SYSTEM.epochNanos();
+
+        private CoarseClock(long tickNanos) {
+            Thread ticker = new Thread(() -> {
+                while (true) {
+                    LockSupport.parkNanos(tickNanos);
+                    now = SYSTEM.epochNanos();
+                }
+            }, "coarse-clock");
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+
+        @Override
+        public long epochNanos() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package calculator;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Abstract syntax tree of an infix arithmetic expression, built by {@link ExpressionParser}.
+ *
+ * Nodes can be evaluated directly with {@link #evaluate(Map)}, or turned into a
+ * {@link CompiledExpression} by {@link ExpressionCompiler} for repeated evaluation.
+ */
+public abstract class Expression {
+
+    private Expression() {
+    }
+
+    /**
+     * Interpret the expression.
+     *
+     * @param variables values of the variables used by the expression
+     * @throws IllegalArgumentException when a variable has no value
+     * @throws ArithmeticException when dividing by zero
+     */
+    public abstract double evaluate(Map<String, Double> variables);
+
+    /**
+     * Add the names of the variables used by this expression to {@code into},
+     * in order of first appearance and without duplicates.
+     */
+    abstract void collectVariables(List<String> into);
+
+    /** A numeric literal. */
+    public static final class Number extends Expression {
+        public final double value;
+
+        Number(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(Map<String, Double> variables) {
+            return value;
+        }
+
+        @Override
+        void collectVariables(List<String> into) {
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(value);
+        }
+    }
+
+    /** A named variable. */
+    public static final class Variable extends Expression {
+        public final String name;
+
+        Variable(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public double evaluate(Map<String, Double> variables) {
+            Double v = variables.get(name);
+            if (v == null) {
+                throw new IllegalArgumentException("Undefined variable: " + name);
+            }
+            return v;
+        }
+
+        @Override
+        void collectVariables(List<String> into) {
+            if (!into.contains(name)) {
+                into.add(name);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /** Unary minus. */
+    public static final class Negate extends Expression {
+        public final Expression operand;
+
+        Negate(Expression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public double evaluate(Map<String, Double> variables) {
+            return -operand.evaluate(variables);
+        }
+
+        @Override
+        void collectVariables(List<String> into) {
+            operand.collectVariables(into);
+        }
+
+        @Override
+        public String toString() {
+            return "(-" + operand + ")";
+        }
+    }
+
+    /** A binary operation, {@code op} being one of the {@link Calculator} operation names. */
+    public static final class Binary extends Expression {
+        public final String op;
+        public final Expression left;
+        public final Expression right;
+
+        Binary(String op, Expression left, Expression right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluate(Map<String, Double> variables) {
+            return Calculator.apply(op, left.evaluate(variables), right.evaluate(variables));
+        }
+
+        @Override
+        void collectVariables(List<String> into) {
+            left.collectVariables(into);
+            right.collectVariables(into);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + op + " " + left + " " + right + ")";
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package calculator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles {@link Expression} trees into {@link MethodHandle} chains that call the
+ * {@link Calculator} primitives directly, so a formula is parsed once and then evaluated
+ * without walking the tree. Sub-expressions made only of constants are folded.
+ *
+ * {@link #compile(String)} keeps the most recently used compiled expressions in a small
+ * LRU cache keyed by source text.
+ */
+public class ExpressionCompiler {
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static final MethodType EVAL = MethodType.methodType(double.class, double[].class);
+    private static final MethodType BINARY = MethodType.methodType(double.class, double.class, double.class);
+    private static final MethodHandle ADD;
+    private static final MethodHandle SUB;
+    private static final MethodHandle MUL;
+    private static final MethodHandle DIV;
+    private static final MethodHandle NEGATE;
+    private static final MethodHandle ELEMENT = MethodHandles.arrayElementGetter(double[].class);
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ADD = lookup.findStatic(Calculator.class, "add", BINARY);
+            SUB = lookup.findStatic(Calculator.class, "sub", BINARY);
+            MUL = lookup.findStatic(Calculator.class, "mul", BINARY);
+            DIV = lookup.findStatic(Calculator.class, "div", BINARY);
+            NEGATE = lookup.findStatic(ExpressionCompiler.class, "negate",
+                    MethodType.methodType(double.class, double.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final Map<String, CompiledExpression> cache;
+
+    public ExpressionCompiler() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public ExpressionCompiler(int cacheSize) {
+        this.cache = new LinkedHashMap<String, CompiledExpression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Parse and compile {@code source}, reusing a cached result when the same text was
+     * compiled recently.
+     *
+     * @throws IllegalArgumentException on a syntax error
+     */
+    public synchronized CompiledExpression compile(String source) {
+        CompiledExpression ce = cache.get(source);
+        if (ce == null) {
+            ce = compile(source, ExpressionParser.parse(source));
+            cache.put(source, ce);
+        }
+        return ce;
+    }
+
+    /**
+     * Compile an already parsed expression.
+     */
+    public static CompiledExpression compile(String source, Expression expr) {
+        List<String> variables = new ArrayList<>();
+        expr.collectVariables(variables);
+        return new CompiledExpression(source, variables, toHandle(expr, variables));
+    }
+
+    private static MethodHandle toHandle(Expression e, List<String> variables) {
+        if (e instanceof Expression.Number) {
+            return constant(((Expression.Number) e).value);
+        }
+        if (isConstant(e)) {
+            try {
+                return constant(e.evaluate(Map.of()));
+            } catch (ArithmeticException ex) {
+                // keep division by zero as a runtime error
+            }
+        }
+        if (e instanceof Expression.Variable) {
+            int index = variables.indexOf(((Expression.Variable) e).name);
+            return MethodHandles.insertArguments(ELEMENT, 1, index);
+        }
+        if (e instanceof Expression.Negate) {
+            Expression operand = ((Expression.Negate) e).operand;
+            return MethodHandles.filterReturnValue(toHandle(operand, variables), NEGATE);
+        }
+        Expression.Binary bin = (Expression.Binary) e;
+        MethodHandle op = operator(bin.op);
+        // (double[], double[])double, then feed the same array to both sides
+        MethodHandle both = MethodHandles.filterArguments(op, 0,
+                toHandle(bin.left, variables), toHandle(bin.right, variables));
+        return MethodHandles.permuteArguments(both, EVAL, 0, 0);
+    }
+
+    private static boolean isConstant(Expression e) {
+        if (e instanceof Expression.Variable) {
+            return false;
+        }
+        if (e instanceof Expression.Negate) {
+            return isConstant(((Expression.Negate) e).operand);
+        }
+        if (e instanceof Expression.Binary) {
+            return isConstant(((Expression.Binary) e).left) && isConstant(((Expression.Binary) e).right);
+        }
+        return true;
+    }
+
+    private static MethodHandle operator(String op) {
+        switch (op) {
+            case "add": return ADD;
+            case "sub": return SUB;
+            case "mul": return MUL;
+            case "div": return DIV;
+            default: throw new IllegalArgumentException("Unknown op: " + op);
+        }
+    }
+
+    private static MethodHandle constant(double value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0, double[].class);
+    }
+
+    private static double negate(double x) {
+        return -x;
+    }
+}
@@ -0,0 +1,180 @@
+package calculator;
+
+import java.util.function.Supplier;
+
+/**
+ * Recursive-descent parser for infix arithmetic expressions such as {@code (2+3)*4/x}.
+ *
+ * Grammar:
+ * <pre>
+ * expr    := term (('+' | '-') term)*
+ * term    := unary (('*' | '/') unary)*
+ * unary   := ('-' | '+') unary | primary
+ * primary := number | identifier | '(' expr ')'
+ * </pre>
+ * Errors are reported as {@link IllegalArgumentException} with the offending position.
+ * Expressions nested deeper than {@link #MAX_DEPTH} levels (parentheses, signs, or the
+ * operators of a chain such as {@code 1+1+...}) are rejected the same way, before the parser
+ * or the compiler can run out of stack.
+ */
+public class ExpressionParser {
+    public static final int MAX_DEPTH = 1000;
+
+    private final String src;
+    private int pos;
+    private int depth;  // current nesting of unary() calls, one per sign or parenthesis
+    private int height; // height of the tree last returned by a parsing method
+
+    private ExpressionParser(String src) {
+        this.src = src;
+    }
+
+    public static Expression parse(String source) {
+        ExpressionParser p = new ExpressionParser(source);
+        Expression e = p.expr();
+        p.skipSpaces();
+        if (p.pos < source.length()) {
+            throw p.error("Unexpected '" + source.charAt(p.pos) + "'");
+        }
+        return e;
+    }
+
+    private Expression expr() {
+        Expression e = term();
+        while (true) {
+            if (accept('+')) {
+                e = binary("add", e, this::term);
+            } else if (accept('-')) {
+                e = binary("sub", e, this::term);
+            } else {
+                return e;
+            }
+        }
+    }
+
+    private Expression term() {
+        Expression e = unary();
+        while (true) {
+            if (accept('*')) {
+                e = binary("mul", e, this::unary);
+            } else if (accept('/')) {
+                e = binary("div", e, this::unary);
+            } else {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * {@code left op right}, {@code right} being parsed by {@code operand}.
+     */
+    private Expression binary(String op, Expression left, Supplier<Expression> operand) {
+        int leftHeight = height;
+        Expression right = operand.get();
+        setHeight(Math.max(leftHeight, height) + 1);
+        return new Expression.Binary(op, left, right);
+    }
+
+    private Expression unary() {
+        enter();
+        try {
+            if (accept('-')) {
+                Expression operand = unary();
+                setHeight(height + 1);
+                return new Expression.Negate(operand);
+            }
+            if (accept('+')) {
+                return unary();
+            }
+            return primary();
+        } finally {
+            depth--;
+        }
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw error("Expression nested too deeply (at most " + MAX_DEPTH + " levels)");
+        }
+    }
+
+    private void setHeight(int h) {
+        height = h;
+        if (h > MAX_DEPTH) {
+            throw error("Expression nested too deeply (at most " + MAX_DEPTH + " levels)");
+        }
+    }
+
+    private Expression primary() {
+        skipSpaces();
+        if (pos >= src.length()) {
+            throw error("Unexpected end of expression");
+        }
+        char c = src.charAt(pos);
+        if (accept('(')) {
+            Expression e = expr();
+            if (!accept(')')) {
+                throw error("Expected ')'");
+            }
+            return e;
+        }
+        if (Character.isDigit(c) || c == '.') {
+            height = 1;
+            return number();
+        }
+        if (Character.isLetter(c) || c == '_') {
+            int start = pos;
+            while (pos < src.length() && (Character.isLetterOrDigit(src.charAt(pos)) || src.charAt(pos) == '_')) {
+                pos++;
+            }
+            height = 1;
+            return new Expression.Variable(src.substring(start, pos));
+        }
+        throw error("Unexpected '" + c + "'");
+    }
+
+    private Expression number() {
+        int start = pos;
+        while (pos < src.length() && (Character.isDigit(src.charAt(pos)) || src.charAt(pos) == '.')) {
+            pos++;
+        }
+        if (pos < src.length() && (src.charAt(pos) == 'e' || src.charAt(pos) == 'E')) {
+            int mark = pos++;
+            if (pos < src.length() && (src.charAt(pos) == '+' || src.charAt(pos) == '-')) {
+                pos++;
+            }
+            if (pos < src.length() && Character.isDigit(src.charAt(pos))) {
+                while (pos < src.length() && Character.isDigit(src.charAt(pos))) {
+                    pos++;
+                }
+            } else {
+                pos = mark; // not an exponent, e.g. "2e" -> let the caller reject 'e'
+            }
+        }
+        try {
+            return new Expression.Number(Double.parseDouble(src.substring(start, pos)));
+        } catch (NumberFormatException ex) {
+            pos = start;
+            throw error("Invalid number");
+        }
+    }
+
+    private boolean accept(char c) {
+        skipSpaces();
+        if (pos < src.length() && src.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpaces() {
+        while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + (pos + 1));
+    }
+}
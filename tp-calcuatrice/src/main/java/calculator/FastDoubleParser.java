@@ -0,0 +1,99 @@
+package calculator;
+
+/**
+ * Decimal-to-double conversion straight from a character range, without building a String.
+ *
+ * Plain decimal numbers ({@code [+-]digits[.digits][(e|E)[+-]digits]}) with at most 18
+ * significant digits whose value is an exact double times an exact power of ten up to
+ * 10<sup>22</sup> are converted with a single multiplication or division, which is
+ * correctly rounded (Clinger's fast path). That covers typical calculator input such as
+ * {@code 12.5} or {@code -3e4}. Anything else (more digits, large exponents, {@code NaN},
+ * {@code Infinity}, hexadecimal, {@code d}/{@code f} suffixes) falls back to
+ * {@link Double#parseDouble(String)}, so results are always identical to it.
+ */
+final class FastDoubleParser {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+    private static final long MAX_EXACT = 1L << 53;
+    private static final int MAX_DIGITS = 18; // 19 digits can overflow the long mantissa
+    private static final int MAX_EXPONENT = 100_000;
+
+    private FastDoubleParser() {
+    }
+
+    /**
+     * Parse {@code chars[from, to)}, which must not contain surrounding whitespace.
+     *
+     * @throws NumberFormatException if the characters are not a number
+     */
+    static double parse(char[] chars, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0; // significant digits kept in mantissa
+        int exponent = 0;
+        boolean anyDigit = false;
+        for (; i < to && isDigit(chars[i]); i++) {
+            anyDigit = true;
+            if (mantissa == 0 && chars[i] == '0') continue; // leading zero
+            if (++digits > MAX_DIGITS) return fallback(chars, from, to);
+            mantissa = mantissa * 10 + (chars[i] - '0');
+        }
+        if (i < to && chars[i] == '.') {
+            for (i++; i < to && isDigit(chars[i]); i++) {
+                anyDigit = true;
+                exponent--;
+                if (mantissa == 0 && chars[i] == '0') continue;
+                if (++digits > MAX_DIGITS) return fallback(chars, from, to);
+                mantissa = mantissa * 10 + (chars[i] - '0');
+            }
+        }
+        if (!anyDigit) {
+            return fallback(chars, from, to); // NaN, Infinity or invalid
+        }
+        if (i < to && (chars[i] == 'e' || chars[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (chars[i] == '-' || chars[i] == '+')) {
+                negativeExponent = chars[i] == '-';
+                i++;
+            }
+            if (i == to || !isDigit(chars[i])) {
+                return fallback(chars, from, to);
+            }
+            int e = 0;
+            for (; i < to && isDigit(chars[i]); i++) {
+                if (e < MAX_EXPONENT) {
+                    e = e * 10 + (chars[i] - '0');
+                }
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != to) {
+            return fallback(chars, from, to); // suffix, hexadecimal or garbage
+        }
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (mantissa <= MAX_EXACT && exponent >= -22 && exponent <= 22) {
+            value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return fallback(chars, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static double fallback(char[] chars, int from, int to) {
+        return Double.parseDouble(new String(chars, from, to - from));
+    }
+}
@@ -0,0 +1,225 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Decimal fixed point: a value is a {@code long} counting units of 10<sup>-scale</sup>, so
+ * sums of decimal amounts are exact and results print with exactly {@code scale}
+ * fractional digits. Operands with more digits, products and quotients are rounded half
+ * to even; results outside the {@code long} range throw {@link ArithmeticException}.
+ *
+ * {@link #parse(char[], int, int)}, {@link #apply(byte, long, long)} and
+ * {@link #format(long, char[], int)} work on primitives and caller-owned buffers and do
+ * not allocate, except for products or quotients whose intermediate value needs more than
+ * 64 bits, which are finished with {@link BigDecimal}.
+ */
+final class FixedPointBackend implements NumericBackend {
+    static final int MAX_SCALE = 18;
+    /** Longest text {@link #format} can produce: sign, 19 digits, point and a leading 0. */
+    static final int MAX_CHARS = 22;
+
+    private final int scale;
+    private final long one; // 10^scale
+
+    FixedPointBackend(int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Fixed-point scale must be between 0 and " + MAX_SCALE + ": " + scale);
+        }
+        this.scale = scale;
+        long o = 1;
+        for (int i = 0; i < scale; i++) {
+            o *= 10;
+        }
+        this.one = o;
+    }
+
+    int scale() {
+        return scale;
+    }
+
+    @Override
+    public String name() {
+        return "fixed:" + scale;
+    }
+
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    @Override
+    public String normalize(String value) {
+        return format(parse(value.toCharArray(), 0, value.length()));
+    }
+
+    @Override
+    public String apply(byte op, String a, String b) {
+        return format(apply(op, parse(a.toCharArray(), 0, a.length()), parse(b.toCharArray(), 0, b.length())));
+    }
+
+    /**
+     * Apply {@code op} to two fixed-point values.
+     *
+     * @throws ArithmeticException on division by zero or overflow
+     */
+    long apply(byte op, long a, long b) {
+        switch (op) {
+            case OpCode.ADD: {
+                long r = a + b;
+                if (((a ^ r) & (b ^ r)) < 0) throw overflow();
+                return r;
+            }
+            case OpCode.SUB: {
+                long r = a - b;
+                if (((a ^ b) & (a ^ r)) < 0) throw overflow();
+                return r;
+            }
+            case OpCode.MUL: {
+                long lo = a * b;
+                if (Math.multiplyHigh(a, b) == (lo >> 63)) {
+                    return divideRounded(lo, one); // product fits in 64 bits
+                }
+                return slow(BigDecimal.valueOf(a).multiply(BigDecimal.valueOf(b))
+                        .divide(BigDecimal.valueOf(one), 0, RoundingMode.HALF_EVEN));
+            }
+            case OpCode.DIV: {
+                if (b == 0) {
+                    throw new ArithmeticException("Division by zero");
+                }
+                long lo = a * one;
+                if (Math.multiplyHigh(a, one) == (lo >> 63) && b != Long.MIN_VALUE) {
+                    return divideRounded(lo, b);
+                }
+                return slow(BigDecimal.valueOf(a).multiply(BigDecimal.valueOf(one))
+                        .divide(BigDecimal.valueOf(b), 0, RoundingMode.HALF_EVEN));
+            }
+            default: throw new IllegalArgumentException("Not supported in exact mode: " + OpCode.name(op));
+        }
+    }
+
+    /**
+     * {@code n / d} rounded half to even; {@code d} must not be 0 or {@code Long.MIN_VALUE}.
+     */
+    private static long divideRounded(long n, long d) {
+        long q = n / d;
+        long r = n % d;
+        if (r != 0) {
+            long absR = Math.abs(r);
+            long rest = Math.abs(d) - absR; // distance to the next multiple
+            if (absR > rest || (absR == rest && (q & 1) != 0)) {
+                q += (n ^ d) < 0 ? -1 : 1;
+            }
+        }
+        return q;
+    }
+
+    private static long slow(BigDecimal unscaled) {
+        try {
+            return unscaled.longValueExact();
+        } catch (ArithmeticException ex) {
+            throw overflow();
+        }
+    }
+
+    private static ArithmeticException overflow() {
+        return new ArithmeticException("Fixed-point overflow");
+    }
+
+    /**
+     * Parse {@code [+-]digits[.digits]} in {@code chars[from, to)}, rounding extra
+     * fractional digits half to even.
+     *
+     * @throws NumberFormatException if the characters are not a plain decimal number
+     * @throws ArithmeticException if the value does not fit
+     */
+    long parse(char[] chars, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        long v = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        int fractionDigits = 0;
+        int roundDigit = -1; // first digit beyond the scale
+        boolean sticky = false; // any non-zero digit after it
+        for (; i < to; i++) {
+            char c = chars[i];
+            if (c == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            anyDigit = true;
+            int d = c - '0';
+            if (fraction && fractionDigits == scale) {
+                if (roundDigit < 0) {
+                    roundDigit = d;
+                } else if (d != 0) {
+                    sticky = true;
+                }
+                continue;
+            }
+            v = times10Plus(v, d);
+            if (fraction) {
+                fractionDigits++;
+            }
+        }
+        if (!anyDigit || i != to) {
+            throw new NumberFormatException("Not a plain decimal number");
+        }
+        for (; fractionDigits < scale; fractionDigits++) {
+            v = times10Plus(v, 0);
+        }
+        if (roundDigit > 5 || (roundDigit == 5 && (sticky || (v & 1) != 0))) {
+            if (v == Long.MAX_VALUE) throw overflow();
+            v++;
+        }
+        return negative ? -v : v;
+    }
+
+    private static long times10Plus(long v, int d) {
+        if (v > (Long.MAX_VALUE - d) / 10) {
+            throw overflow();
+        }
+        return v * 10 + d;
+    }
+
+    /**
+     * Write {@code v} as decimal text with exactly {@code scale} fractional digits into
+     * {@code out} (at least {@link #MAX_CHARS} free from {@code off}).
+     *
+     * @return the offset after the last character written
+     */
+    int format(long v, char[] out, int off) {
+        long n = v < 0 ? v : -v; // negative, so that Long.MIN_VALUE works too
+        int digits = 1;
+        for (long m = n / 10; m != 0; m /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, scale + 1);
+        int end = off + (v < 0 ? 1 : 0) + digits + (scale > 0 ? 1 : 0);
+        int pos = end;
+        for (int d = 0; d < digits; d++) {
+            if (d == scale && scale > 0) {
+                out[--pos] = '.';
+            }
+            out[--pos] = (char) ('0' - n % 10);
+            n /= 10;
+        }
+        if (v < 0) {
+            out[--pos] = '-';
+        }
+        return end;
+    }
+
+    String format(long v) {
+        char[] buf = new char[MAX_CHARS];
+        return new String(buf, 0, format(v, buf, 0));
+    }
+}
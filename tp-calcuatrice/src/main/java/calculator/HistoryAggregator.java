@@ -0,0 +1,246 @@
+package calculator;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Summary statistics of history results per operation: count, sum, min, max, mean,
+ * standard deviation and quantiles.
+ *
+ * The columns are split into ranges of {@value #LEAF_SIZE} entries summarised in parallel
+ * on a {@link ForkJoinPool}; partial summaries are merged pairwise (Chan et al. for the
+ * variance, {@link QuantileSketch} for the quantiles), so memory stays bounded by the
+ * sketch size whatever the history length. Works over a {@link HistoryStore} or a memory
+ * mapped {@link BinaryHistoryFile} without materialising entries.
+ */
+public final class HistoryAggregator {
+    static final int LEAF_SIZE = 1 << 16;
+
+    /** Column access shared by the in-memory and mapped representations. */
+    interface Source {
+        byte opCode(long i);
+
+        double result(long i);
+    }
+
+    private HistoryAggregator() {
+    }
+
+    public static Aggregate aggregate(HistoryStore store) {
+        return aggregate(store.size(), new Source() {
+            @Override
+            public byte opCode(long i) {
+                return store.opCode((int) i);
+            }
+
+            @Override
+            public double result(long i) {
+                return store.result((int) i);
+            }
+        }, ForkJoinPool.commonPool(), LEAF_SIZE);
+    }
+
+    public static Aggregate aggregate(BinaryHistoryFile.Reader reader) {
+        return aggregate(reader.size(), new Source() {
+            @Override
+            public byte opCode(long i) {
+                return reader.opCode(i);
+            }
+
+            @Override
+            public double result(long i) {
+                return reader.result(i);
+            }
+        }, ForkJoinPool.commonPool(), LEAF_SIZE);
+    }
+
+    static Aggregate aggregate(long size, Source source, ForkJoinPool pool, int leafSize) {
+        return pool.invoke(new Task(source, 0, size, leafSize));
+    }
+
+    private static final class Task extends RecursiveTask<Aggregate> {
+        private static final long serialVersionUID = 1L;
+
+        private final Source source;
+        private final long from;
+        private final long to;
+        private final int leafSize;
+
+        Task(Source source, long from, long to, int leafSize) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Aggregate compute() {
+            if (to - from <= leafSize) {
+                Aggregate partial = new Aggregate();
+                for (long i = from; i < to; i++) {
+                    partial.byOp[Aggregate.slot(source.opCode(i))].add(source.result(i));
+                }
+                return partial;
+            }
+            long mid = (from + to) >>> 1;
+            Task left = new Task(source, from, mid, leafSize);
+            left.fork();
+            Aggregate right = new Task(source, mid, to, leafSize).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Statistics per operation code, and over all of them. Operations the registry does not
+     * know ({@link OpCode#UNKNOWN}) are counted together as {@code other}.
+     */
+    public static final class Aggregate {
+        private final Stats[] byOp = new Stats[OpCode.COUNT + 1]; // last for UNKNOWN
+
+        Aggregate() {
+            for (int i = 0; i < byOp.length; i++) {
+                byOp[i] = new Stats();
+            }
+        }
+
+        Aggregate merge(Aggregate other) {
+            for (int i = 0; i < byOp.length; i++) {
+                byOp[i].merge(other.byOp[i]);
+            }
+            return this;
+        }
+
+        public Stats forOp(byte code) {
+            return byOp[slot(code)];
+        }
+
+        static int slot(byte code) {
+            return code >= 0 && code < OpCode.COUNT ? code : OpCode.COUNT;
+        }
+
+        public Stats total() {
+            Stats all = new Stats();
+            for (Stats s : byOp) {
+                all.merge(s);
+            }
+            return all;
+        }
+
+        /**
+         * One line per operation that occurs, then the total.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                    "%-5s %10s %12s %12s %12s %12s %12s %12s %12s %12s%n",
+                    "op", "count", "sum", "min", "max", "mean", "stddev", "p50", "p90", "p99"));
+            for (int i = 0; i < byOp.length; i++) {
+                if (byOp[i].count() > 0) {
+                    byOp[i].appendRow(sb, i < OpCode.COUNT ? OpCode.name((byte) i) : "other");
+                }
+            }
+            total().appendRow(sb, "all");
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Mergeable summary of a set of results. NaN results are skipped.
+     */
+    public static final class Stats {
+        private long count;
+        private double sum;
+        private double compensation; // Neumaier summation error
+        private double mean;
+        private double m2; // sum of squared deviations from the mean
+        private final QuantileSketch sketch = new QuantileSketch();
+        private double min = Double.NaN;
+        private double max = Double.NaN;
+
+        void add(double v) {
+            if (Double.isNaN(v)) {
+                return;
+            }
+            count++;
+            addToSum(v);
+            double delta = v - mean;
+            mean += delta / count;
+            m2 += delta * (v - mean);
+            sketch.add(v);
+            min = count == 1 ? v : Math.min(min, v);
+            max = count == 1 ? v : Math.max(max, v);
+        }
+
+        void merge(Stats other) {
+            if (other.count == 0) {
+                return;
+            }
+            if (count == 0) {
+                min = other.min;
+                max = other.max;
+            } else {
+                min = Math.min(min, other.min);
+                max = Math.max(max, other.max);
+            }
+            long n = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / n;
+            m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+            count = n;
+            addToSum(other.sum);
+            addToSum(other.compensation);
+            sketch.merge(other.sketch);
+        }
+
+        private void addToSum(double v) {
+            double t = sum + v;
+            if (Double.isInfinite(t)) {
+                compensation = 0; // overflowed: the sum stays infinite (or NaN for inf - inf)
+            } else if (Math.abs(sum) >= Math.abs(v)) {
+                compensation += (sum - t) + v;
+            } else {
+                compensation += (v - t) + sum;
+            }
+            sum = t;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public double sum() {
+            return Double.isFinite(sum) ? sum + compensation : sum;
+        }
+
+        /** NaN when empty, like {@link #mean()}, {@link #stddev()} and {@link #max()}. */
+        public double min() {
+            return min;
+        }
+
+        public double max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? Double.NaN : mean;
+        }
+
+        /** Population standard deviation. */
+        public double stddev() {
+            return count == 0 ? Double.NaN : Math.sqrt(m2 / count);
+        }
+
+        /**
+         * Estimated result at quantile {@code q} (0 to 1), within 1% of a result of that rank.
+         */
+        public double quantile(double q) {
+            return sketch.quantile(q);
+        }
+
+        private void appendRow(StringBuilder sb, String label) {
+            sb.append(String.format(Locale.ROOT, "%-5s %10d %12.6g %12.6g %12.6g %12.6g %12.6g %12.6g %12.6g %12.6g%n",
+                    label, count, sum(), min, max, mean(), stddev(), quantile(0.5), quantile(0.9), quantile(0.99)));
+        }
+    }
+}
@@ -1,22 +1,153 @@
 package calculator;
 
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import com.google.gson.annotations.JsonAdapter;
 
 /**
  * A record of one calculation.
+ *
+ * The time of the calculation is kept in whichever form it was created with (nanoseconds
+ * since the epoch for new calculations, an ISO-8601 string for entries read back from JSON)
+ * and converted to the other form only when {@link #when()} or {@link #epochNanos()} first
+ * asks for it.
+ *
+ * Entries computed by an exact {@link NumericBackend} also keep the operands and result as
+ * decimal text ({@link #aText()}, ...), which is what gets persisted; the double fields
+ * then hold the nearest doubles.
  */
+@JsonAdapter(HistoryEntryAdapter.class)
 public class HistoryEntry {
+    private static final long UNSET = Long.MIN_VALUE;
+    private static volatile EpochClock clock = EpochClock.SYSTEM;
+
     public String op;
     public double a;
     public double b;
     public double result;
-    public String when; // ISO-8601 string
+    private long epochNanos;
+    private String when; // ISO-8601 string, formatted on demand
+    // exact decimal text, all null for plain double entries
+    private String aText;
+    private String bText;
+    private String resultText;
 
     public HistoryEntry(String op, double a, double b, double result) {
+        this(op, a, b, result, clock.epochNanos());
+    }
+
+    public HistoryEntry(String op, double a, double b, double result, long epochNanos) {
         this.op = op;
         this.a = a;
         this.b = b;
         this.result = result;
-        this.when = Instant.now().toString();
+        this.epochNanos = epochNanos;
+    }
+
+    public HistoryEntry(String op, double a, double b, double result, String when) {
+        this(op, a, b, result, UNSET);
+        this.when = when;
+    }
+
+    /**
+     * An exact entry: operands and result as decimal text, stamped now.
+     *
+     * @throws NumberFormatException if a value is not a number
+     */
+    public HistoryEntry(String op, String a, String b, String result) {
+        this(op, Double.parseDouble(a), Double.parseDouble(b), Double.parseDouble(result));
+        setTexts(a, b, result);
+    }
+
+    /**
+     * Overwrite every field; used by {@link HistoryStore} to recycle a flyweight entry.
+     */
+    void set(String op, double a, double b, double result, long epochNanos) {
+        this.op = op;
+        this.a = a;
+        this.b = b;
+        this.result = result;
+        this.epochNanos = epochNanos;
+        this.when = null;
+        setTexts(null, null, null);
+    }
+
+    /**
+     * Attach exact decimal text (or clear it with nulls). The double fields are not changed.
+     */
+    void setTexts(String a, String b, String result) {
+        this.aText = a;
+        this.bText = b;
+        this.resultText = result;
+    }
+
+    /**
+     * Whether the entry carries exact decimal text.
+     */
+    public boolean isExact() {
+        return resultText != null;
+    }
+
+    /** First operand as exact text if known, else as the double. */
+    public String aText() {
+        return aText != null ? aText : Double.toString(a);
+    }
+
+    /** Second operand as exact text if known, else as the double. */
+    public String bText() {
+        return bText != null ? bText : Double.toString(b);
+    }
+
+    /** Result as exact text if known, else as the double. */
+    public String resultText() {
+        return resultText != null ? resultText : Double.toString(result);
+    }
+
+    /**
+     * Clock used to stamp new entries, {@link EpochClock#SYSTEM} by default.
+     */
+    public static void setClock(EpochClock clock) {
+        HistoryEntry.clock = clock;
+    }
+
+    /**
+     * Time of the calculation as an ISO-8601 string.
+     */
+    public String when() {
+        String w = when;
+        if (w == null) {
+            w = format(epochNanos);
+            when = w;
+        }
+        return w;
+    }
+
+    /**
+     * Time of the calculation in nanoseconds since the epoch. A {@code when} string that is
+     * not an ISO-8601 instant counts as {@code 0}, like a missing one in
+     * {@link HistoryEntryAdapter}, so that a damaged time never fails a load or compaction;
+     * {@link #when()} still returns the string.
+     */
+    public long epochNanos() {
+        long t = epochNanos;
+        if (t == UNSET) {
+            try {
+                t = toEpochNanos(when);
+            } catch (DateTimeParseException ex) {
+                t = 0L;
+            }
+            epochNanos = t;
+        }
+        return t;
+    }
+
+    static long toEpochNanos(String when) {
+        return EpochClock.toEpochNanos(Instant.parse(when));
+    }
+
+    static String format(long epochNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochNanos, 1_000_000_000L),
+                Math.floorMod(epochNanos, 1_000_000_000L)).toString();
     }
 }
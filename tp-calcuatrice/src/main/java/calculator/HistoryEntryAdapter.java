@@ -0,0 +1,162 @@
+package calculator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Gson mapping of {@link HistoryEntry}, keeping the historical JSON shape
+ * ({@code op}, {@code a}, {@code b}, {@code result}, ISO-8601 {@code when}) while the
+ * entry itself stores its time as epoch nanoseconds.
+ *
+ * Exact entries are marked with {@code "exact": true} and their numbers are written with
+ * the exact decimal digits (e.g. {@code 0.3}, not {@code 0.30000000000000004}), which are
+ * read back as text so nothing is lost.
+ *
+ * The mapping is hand-written rather than reflective: doubles are read and written as
+ * primitives, and {@code when} is kept as the string found in the file. It is attached to
+ * {@link HistoryEntry} with {@code @JsonAdapter}, so any {@code Gson} instance uses it.
+ * Special values (NaN, infinities) are only accepted by lenient readers and writers, as
+ * {@link #newWriter} and {@link #parse} create.
+ */
+class HistoryEntryAdapter extends TypeAdapter<HistoryEntry> {
+    static final HistoryEntryAdapter INSTANCE = new HistoryEntryAdapter();
+
+    /**
+     * Lenient writer over {@code out}; lenient writers also accept several top-level
+     * values, so one writer can serialise entry after entry.
+     */
+    static JsonWriter newWriter(Writer out) {
+        JsonWriter w = new JsonWriter(out);
+        w.setLenient(true);
+        return w;
+    }
+
+    /**
+     * Parse one JSON object, reporting malformed input as {@link JsonSyntaxException}
+     * like {@code Gson.fromJson} does.
+     */
+    static HistoryEntry parse(String json) {
+        JsonReader in = new JsonReader(new StringReader(json));
+        in.setLenient(true);
+        try {
+            return readEntry(in);
+        } catch (IOException ex) {
+            throw new JsonSyntaxException(ex); // nothing else can fail on a string
+        }
+    }
+
+    /**
+     * Read the next entry of {@code in}, reporting malformed input as
+     * {@link JsonSyntaxException} and only I/O failures as {@link IOException}.
+     */
+    static HistoryEntry readEntry(JsonReader in) throws IOException {
+        try {
+            return INSTANCE.read(in);
+        } catch (MalformedJsonException | EOFException | IllegalStateException ex) {
+            throw new JsonSyntaxException(ex);
+        }
+    }
+
+    @Override
+    public void write(JsonWriter out, HistoryEntry e) throws IOException {
+        if (e == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("op").value(e.op);
+        if (e.isExact()) {
+            out.name("exact").value(true);
+            out.name("a").jsonValue(e.aText());
+            out.name("b").jsonValue(e.bText());
+            out.name("result").jsonValue(e.resultText());
+        } else {
+            out.name("a").value(e.a);
+            out.name("b").value(e.b);
+            out.name("result").value(e.result);
+        }
+        out.name("when").value(e.when());
+        out.endObject();
+    }
+
+    @Override
+    public HistoryEntry read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String op = null;
+        // written before the numbers, so they are read as doubles unless the entry is exact
+        boolean exact = false;
+        double a = 0;
+        double b = 0;
+        double result = 0;
+        String aText = null;
+        String bText = null;
+        String resultText = null;
+        String when = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "op": op = in.nextString(); break;
+                case "exact": exact = in.nextBoolean(); break;
+                case "a":
+                    if (exact) {
+                        aText = in.nextString();
+                        a = toDouble(aText);
+                    } else {
+                        a = in.nextDouble();
+                    }
+                    break;
+                case "b":
+                    if (exact) {
+                        bText = in.nextString();
+                        b = toDouble(bText);
+                    } else {
+                        b = in.nextDouble();
+                    }
+                    break;
+                case "result":
+                    if (exact) {
+                        resultText = in.nextString();
+                        result = toDouble(resultText);
+                    } else {
+                        result = in.nextDouble();
+                    }
+                    break;
+                case "when": when = in.nextString(); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        HistoryEntry e = when != null
+                ? new HistoryEntry(op, a, b, result, when)
+                : new HistoryEntry(op, a, b, result, 0L);
+        if (exact && aText != null && bText != null && resultText != null) {
+            e.setTexts(aText, bText, resultText);
+        }
+        return e;
+    }
+
+    private static double toDouble(String number) {
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException ex) {
+            throw new JsonSyntaxException("Not a number: " + number, ex);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package calculator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock shared by every process using the same history files.
+ *
+ * Within the JVM, one reentrant lock per lock file (so several {@link HistoryManager}s on
+ * the same path also exclude each other); across processes, a {@link FileLock} on the
+ * lock file, taken by the outermost {@link #lock(boolean)} and released by the matching
+ * {@link #unlock()}. Readers take it shared and writers exclusive; a thread holding it
+ * shared cannot upgrade to exclusive.
+ */
+final class HistoryFileLock {
+    private static final ConcurrentMap<String, HistoryFileLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final ReentrantLock local = new ReentrantLock();
+    // guarded by local
+    private FileChannel channel;
+    private boolean shared;
+
+    private HistoryFileLock(File file) {
+        this.file = file;
+    }
+
+    static HistoryFileLock forFile(File file) {
+        return LOCKS.computeIfAbsent(file.getAbsoluteFile().toPath().normalize().toString(),
+                k -> new HistoryFileLock(new File(k)));
+    }
+
+    /**
+     * Acquire the lock, blocking until other processes release it.
+     */
+    void lock(boolean shared) throws IOException {
+        local.lock();
+        if (local.getHoldCount() > 1) {
+            if (!shared && this.shared) {
+                local.unlock();
+                throw new IllegalStateException("Cannot upgrade a shared history lock");
+            }
+            return;
+        }
+        this.shared = shared;
+        File dir = file.getParentFile();
+        if (shared && dir != null && !dir.isDirectory()) {
+            return; // nothing to read, and nowhere to put the lock file
+        }
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.lock(0, Long.MAX_VALUE, shared);
+        } catch (IOException | RuntimeException ex) {
+            closeChannel();
+            local.unlock();
+            throw ex;
+        }
+    }
+
+    void unlock() throws IOException {
+        try {
+            if (local.getHoldCount() == 1) {
+                closeChannel(); // releases the file lock
+            }
+        } finally {
+            local.unlock();
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        FileChannel ch = channel;
+        channel = null;
+        if (ch != null) {
+            ch.close();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package calculator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Secondary indexes over a {@link HistoryStore}, identified by position in the store:
+ * <ul>
+ *   <li>one posting list per op code (and one for {@link OpCode#UNKNOWN}), positions in
+ *       ascending order;</li>
+ *   <li>positions sorted by time;</li>
+ *   <li>positions sorted by result.</li>
+ * </ul>
+ * {@link #update(HistoryStore)} indexes entries added since the last call by sorting only
+ * the new positions and merging them in. The index only speeds up filtering of a store
+ * already in memory; it does not locate entries on disk. Indexes are saved with
+ * {@link #write(File)}, so that the sorts are not redone at each start, and
+ * reused by {@link #read(File, HistoryStore)} as long as they still describe the store and
+ * were written for the same operations: the file lists the op names behind its codes, and
+ * is rebuilt when plugins (see {@link OpCode}) have been added, removed or renamed.
+ */
+public class HistoryIndex {
+    private static final int MAGIC = 0x43414c49; // "CALI"
+    private static final int VERSION = 1;
+    private static final int OP_CODES = OpCode.COUNT + 1; // last for OpCode.UNKNOWN
+
+    private final int[][] postings = new int[OP_CODES][];
+    private final int[] postingSizes = new int[OP_CODES];
+    private int[] byTime = new int[0];
+    private int[] byResult = new int[0];
+    private int size;
+    private long lastEpochNanos;
+
+    public HistoryIndex() {
+        for (int op = 0; op < OP_CODES; op++) {
+            postings[op] = new int[16];
+        }
+    }
+
+    /**
+     * Number of store entries covered by the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Index the entries appended to {@code store} since the last update. If the store no
+     * longer matches what was indexed (e.g. it was replaced), the index is rebuilt.
+     */
+    public void update(HistoryStore store) {
+        if (!describes(store, Math.min(size, store.size()))) {
+            clear();
+        }
+        int from = size;
+        int to = store.size();
+        if (from == to) {
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            int op = slot(store.opCode(i));
+            if (postingSizes[op] == postings[op].length) {
+                postings[op] = Arrays.copyOf(postings[op], postings[op].length * 2);
+            }
+            postings[op][postingSizes[op]++] = i;
+        }
+        byTime = merge(byTime, sortedRange(from, to, i -> store.epochNanos(i)), i -> store.epochNanos(i));
+        byResult = merge(byResult, sortedRange(from, to, i -> sortable(store.result(i))),
+                i -> sortable(store.result(i)));
+        size = to;
+        lastEpochNanos = store.epochNanos(to - 1);
+    }
+
+    /**
+     * Positions of entries with op code {@code op}, ascending; only the first
+     * {@link #postingCount(byte)} are valid. The array must not be modified.
+     */
+    int[] postings(byte op) {
+        return postings[slot(op)];
+    }
+
+    int postingCount(byte op) {
+        return postingSizes[slot(op)];
+    }
+
+    private static int slot(byte op) {
+        return op >= 0 && op < OpCode.COUNT ? op : OpCode.COUNT;
+    }
+
+    /**
+     * Positions sorted by time, and the range {@code [out[0], out[1])} of those whose time is
+     * within {@code [fromNanos, toNanos]}.
+     */
+    int[] timeRange(HistoryStore store, long fromNanos, long toNanos, int[] out) {
+        out[0] = lowerBound(byTime, i -> store.epochNanos(i), fromNanos);
+        out[1] = upperBound(byTime, i -> store.epochNanos(i), toNanos);
+        return byTime;
+    }
+
+    /**
+     * Positions sorted by result, and the range {@code [out[0], out[1])} of those whose
+     * result is within {@code [min, max]}.
+     */
+    int[] resultRange(HistoryStore store, double min, double max, int[] out) {
+        out[0] = lowerBound(byResult, i -> sortable(store.result(i)), sortable(min));
+        out[1] = upperBound(byResult, i -> sortable(store.result(i)), sortable(max));
+        return byResult;
+    }
+
+    /**
+     * Save the index. The file is rewritten entirely.
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            List<String> names = OpCode.names();
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            out.writeInt(size);
+            out.writeLong(lastEpochNanos);
+            for (int op = 0; op < OP_CODES; op++) {
+                writeInts(out, postings[op], postingSizes[op]);
+            }
+            writeInts(out, byTime, size);
+            writeInts(out, byResult, size);
+        }
+    }
+
+    /**
+     * Read a saved index and bring it up to date with {@code store}. A missing, unreadable or
+     * stale file yields an index rebuilt from the store.
+     */
+    public static HistoryIndex read(File file, HistoryStore store) {
+        HistoryIndex index = new HistoryIndex();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION && readNames(in).equals(OpCode.names())) {
+                    index.size = in.readInt();
+                    index.lastEpochNanos = in.readLong();
+                    for (int op = 0; op < OP_CODES; op++) {
+                        index.postings[op] = readInts(in);
+                        index.postingSizes[op] = index.postings[op].length;
+                        if (index.postings[op].length == 0) {
+                            index.postings[op] = new int[16];
+                        }
+                    }
+                    index.byTime = readInts(in);
+                    index.byResult = readInts(in);
+                }
+            } catch (EOFException ex) {
+                index = new HistoryIndex(); // truncated file: rebuild
+            } catch (IOException ex) {
+                index = new HistoryIndex();
+            }
+            if (index.byTime.length != index.size || index.byResult.length != index.size) {
+                index = new HistoryIndex();
+            }
+        }
+        index.update(store);
+        return index;
+    }
+
+    private boolean describes(HistoryStore store, int count) {
+        return count == size && (size == 0 || store.epochNanos(size - 1) == lastEpochNanos);
+    }
+
+    private void clear() {
+        Arrays.fill(postingSizes, 0);
+        byTime = new int[0];
+        byResult = new int[0];
+        size = 0;
+        lastEpochNanos = 0;
+    }
+
+    private static List<String> readNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > Byte.MAX_VALUE + 1) {
+            return Collections.emptyList(); // not written by this version: rebuild
+        }
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Map a double to a long with the same ordering as {@code <}: {@code -0.0} and
+     * {@code 0.0} map to the same key, NaN sorts last.
+     */
+    static long sortable(double d) {
+        long bits = Double.doubleToLongBits(d + 0.0); // -0.0 + 0.0 == 0.0
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static int[] sortedRange(int from, int to, Key key) {
+        int[] idx = new int[to - from];
+        for (int i = 0; i < idx.length; i++) {
+            idx[i] = from + i;
+        }
+        mergeSort(idx, new int[idx.length], 0, idx.length, key);
+        return idx;
+    }
+
+    private static void mergeSort(int[] a, int[] tmp, int lo, int hi, Key key) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(a, tmp, lo, mid, key);
+        mergeSort(a, tmp, mid, hi, key);
+        if (key.of(a[mid - 1]) <= key.of(a[mid])) {
+            return; // already ordered, the common case for time
+        }
+        System.arraycopy(a, lo, tmp, lo, hi - lo);
+        for (int i = lo, l = lo, r = mid; i < hi; i++) {
+            a[i] = r >= hi || (l < mid && key.of(tmp[l]) <= key.of(tmp[r])) ? tmp[l++] : tmp[r++];
+        }
+    }
+
+    private static int[] merge(int[] left, int[] right, Key key) {
+        if (left.length == 0) {
+            return right;
+        }
+        int[] out = new int[left.length + right.length];
+        for (int i = 0, l = 0, r = 0; i < out.length; i++) {
+            out[i] = r >= right.length || (l < left.length && key.of(left[l]) <= key.of(right[r])) ? left[l++] : right[r++];
+        }
+        return out;
+    }
+
+    private static int lowerBound(int[] sorted, Key key, long value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.of(sorted[mid]) < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int upperBound(int[] sorted, Key key, long value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.of(sorted[mid]) <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Sort key of a store position. */
+    private interface Key {
+        long of(int position);
+    }
+}
@@ -0,0 +1,261 @@
+package calculator;
+
+import java.io.CharArrayWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Record framing of the history journal: one line per entry,
+ * <pre>
+ * &lt;CRC32C of the JSON, 8 hex digits&gt; &lt;JSON&gt;\n
+ * </pre>
+ * A {@link Reader} returns records up to the first one that is torn (no final newline)
+ * or fails its checksum, and reports where the valid prefix ends so that
+ * {@link #recover(FileChannel)} can cut the rest. A line without a checksum is damaged.
+ */
+final class HistoryJournal {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int PREFIX = 9; // 8 hex digits and a space
+
+    private HistoryJournal() {
+    }
+
+    /**
+     * Write one record. The JSON must not contain a newline.
+     */
+    static void write(OutputStream out, String json, CRC32C crc, byte[] prefix) throws IOException {
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        write(out, utf8, utf8.length, crc, prefix);
+    }
+
+    private static void write(OutputStream out, byte[] utf8, int length, CRC32C crc, byte[] prefix)
+            throws IOException {
+        crc.reset();
+        crc.update(utf8, 0, length);
+        int value = (int) crc.getValue();
+        for (int i = 0; i < 8; i++) {
+            prefix[i] = HEX[(value >>> (28 - 4 * i)) & 0xf];
+        }
+        prefix[8] = ' ';
+        out.write(prefix, 0, PREFIX);
+        out.write(utf8, 0, length);
+        out.write('\n');
+    }
+
+    /**
+     * Writes entries as records through one {@link JsonWriter}, character buffer and UTF-8
+     * buffer reused from record to record, so that journaling an entry allocates nothing
+     * but its number and timestamp text. Not thread-safe.
+     */
+    static final class Encoder {
+        private final Chars chars = new Chars();
+        private final JsonWriter json = HistoryEntryAdapter.newWriter(chars);
+        private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder();
+        private ByteBuffer bytes = ByteBuffer.allocate(256);
+        private final CRC32C crc = new CRC32C();
+        private final byte[] prefix = new byte[PREFIX];
+
+        void write(OutputStream out, HistoryEntry entry) throws IOException {
+            chars.reset();
+            HistoryEntryAdapter.INSTANCE.write(json, entry);
+            json.flush();
+            CharBuffer in = CharBuffer.wrap(chars.array(), 0, chars.size());
+            bytes.clear();
+            utf8.reset();
+            while (true) {
+                CoderResult r = utf8.encode(in, bytes, true);
+                if (r.isUnderflow()) {
+                    r = utf8.flush(bytes);
+                }
+                if (r.isUnderflow()) {
+                    break;
+                }
+                if (r.isOverflow()) {
+                    ByteBuffer grown = ByteBuffer.allocate(bytes.capacity() * 2);
+                    bytes.flip();
+                    bytes = grown.put(bytes);
+                } else {
+                    r.throwException();
+                }
+            }
+            HistoryJournal.write(out, bytes.array(), bytes.position(), crc, prefix);
+        }
+    }
+
+    /** {@link CharArrayWriter} exposing its buffer instead of copying it. */
+    private static final class Chars extends CharArrayWriter {
+        char[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * Truncate the journal open on {@code ch} after its last valid record.
+     *
+     * @return the new length
+     */
+    static long recover(FileChannel ch) throws IOException {
+        ch.position(0);
+        Reader r = new Reader(Channels.newInputStream(ch)); // not closed: that would close ch
+        while (r.next() != null) {
+            // scan to the end of the valid prefix
+        }
+        long valid = r.validLength();
+        if (valid < ch.size()) {
+            ch.truncate(valid);
+        }
+        return valid;
+    }
+
+    /**
+     * Whether the journal open on {@code ch} is empty or ends with a complete line.
+     */
+    static boolean endsCleanly(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size == 0) {
+            return true;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        return ch.read(last, size - 1) == 1 && last.get(0) == '\n';
+    }
+
+    /**
+     * Reads the valid records of a journal. Closing it closes the stream.
+     */
+    static final class Reader implements Closeable {
+        private final InputStream in;
+        private final CRC32C crc = new CRC32C();
+        private final byte[] buf = new byte[1 << 16];
+        private int pos;
+        private int limit;
+        private byte[] line = new byte[256];
+        private long validLength;
+        private long recordStart;
+        private boolean corrupt;
+
+        Reader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * JSON of the next record, or null at the end of the valid prefix.
+         */
+        String next() throws IOException {
+            while (!corrupt) {
+                int length = readLine();
+                if (length < 0) {
+                    corrupt = length != -1; // torn last line
+                    return null;
+                }
+                String json = decode(length);
+                if (json == null) {
+                    corrupt = true;
+                    return null;
+                }
+                recordStart = validLength;
+                validLength += length + 1;
+                if (!json.isEmpty()) {
+                    return json;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Bytes from the start of the journal to the end of the last valid record.
+         */
+        long validLength() {
+            return validLength;
+        }
+
+        /**
+         * Whether reading stopped at a torn or damaged record rather than at the end.
+         */
+        boolean isCorrupt() {
+            return corrupt;
+        }
+
+        /**
+         * Mark the last record returned as unusable (e.g. its JSON did not parse).
+         */
+        void reject() {
+            validLength = recordStart;
+            corrupt = true;
+        }
+
+        /**
+         * Read the next line, without its newline, into {@code line}.
+         *
+         * @return its length, {@code -1} at the end of the input, or {@code -2} if the input
+         *         ends with an incomplete line
+         */
+        private int readLine() throws IOException {
+            int length = 0;
+            while (true) {
+                if (pos == limit) {
+                    limit = in.read(buf, 0, buf.length);
+                    pos = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return length == 0 ? -1 : -2;
+                    }
+                }
+                int start = pos;
+                while (pos < limit && buf[pos] != '\n') {
+                    pos++;
+                }
+                int n = pos - start;
+                if (length + n > line.length) {
+                    line = Arrays.copyOf(line, Math.max(line.length * 2, length + n));
+                }
+                System.arraycopy(buf, start, line, length, n);
+                length += n;
+                if (pos < limit) {
+                    pos++; // newline
+                    return length;
+                }
+            }
+        }
+
+        private String decode(int length) {
+            if (length == 0) {
+                return "";
+            }
+            if (length <= PREFIX || line[PREFIX - 1] != ' ') {
+                return null;
+            }
+            int expected = 0;
+            for (int i = 0; i < 8; i++) {
+                int d = Character.digit(line[i], 16);
+                if (d < 0) {
+                    return null;
+                }
+                expected = expected << 4 | d;
+            }
+            crc.reset();
+            crc.update(line, PREFIX, length - PREFIX);
+            if ((int) crc.getValue() != expected) {
+                return null;
+            }
+            return new String(line, PREFIX, length - PREFIX, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
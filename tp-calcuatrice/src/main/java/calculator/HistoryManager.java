@@ -1,40 +1,1012 @@
 package calculator;
 
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.FileReader;
+import java.io.InputStreamReader;
 import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
+import java.util.NoSuchElementException;
+import java.nio.charset.StandardCharsets;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Simple JSON history manager using Gson.
+ *
+ * History is kept in two files:
+ * <ul>
+ *   <li>the snapshot ({@code history.json}), a JSON array written by {@link #save(List)}
+ *       or {@link #save(HistoryStore)};</li>
+ *   <li>the journal ({@code history.json.journal}), one JSON object per line appended by
+ *       {@link #append(HistoryEntry)}, each prefixed with its CRC32C (see
+ *       {@link HistoryJournal}).</li>
+ * </ul>
+ * Snapshots are written to {@code history.json.tmp}, forced to disk and renamed over the
+ * old one, so a crash leaves either the old or the new snapshot, never a partial one (a
+ * crash right after the rename may replay journal entries the snapshot already holds).
+ * Journal replay stops at the first torn or damaged record, and that tail is cut off
+ * before the journal is read or appended again.
+ * {@link #load()} reads the snapshot and replays the journal on top of it. Once the journal
+ * holds at least {@link #getCompactionThreshold()} records, and at least as many as the
+ * snapshot, it is folded back into the snapshot; the doubling keeps compaction cost
+ * amortised constant per entry however large the history grows.
+ * {@link #stream()} reads the same sequence one entry at a time, in constant memory.
+ * With {@link #setCompressedSnapshots(boolean)} the snapshot is written in the block
+ * format of {@link CompressedHistoryFile} instead of JSON, and with
+ * {@link #setBinarySnapshots(boolean)} in the fixed-width records of
+ * {@link BinaryHistoryFile}; every format is recognised when reading.
+ * {@link #query(HistoryStore, HistoryQuery)} filters a loaded {@link HistoryStore} with a
+ * {@link HistoryIndex} of positions in it, kept in {@code history.json.idx} and saved on
+ * {@link #close()} to spare rebuilding it; the history itself is still read whole.
+ *
+ * With {@link #setSegmentation} or {@link #setRetention} the snapshot is split into segments
+ * bounded in size and time span, listed in {@code history.json.manifest} (see
+ * {@link HistorySegments}): compaction rewrites only the last segment, old segments are
+ * dropped whole by the retention limits and deleted from a background thread, and
+ * {@link #loadStore(long, long)} and {@link #stream(long, long)} only open the segments that
+ * overlap the requested time range. The first compaction turns an existing snapshot into
+ * segments; from then on the history stays segmented.
+ *
+ * By default appends are written synchronously. After {@link #startAsync} they are handed
+ * to an {@link AsyncHistoryWriter} that group-commits them from a background thread;
+ * {@link #flush()} waits for them and {@link #close()} stops the writer.
+ *
+ * Several threads may share one manager, and several managers or processes may share one
+ * history: every file access holds a {@link HistoryFileLock} on {@code history.json.lock}
+ * (shared for reads, exclusive for writes), and compaction re-reads the files under the
+ * lock so entries appended by others are kept. {@link #save} replaces the whole history
+ * and therefore drops entries other processes appended since it was loaded; use
+ * {@link #compact()} to fold the journal without losing them.
  */
-public class HistoryManager {
+public class HistoryManager implements Closeable {
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    public static final Duration DEFAULT_SEGMENT_SPAN = Duration.ofDays(1);
+
     private final File file;
-    private final Gson gson = new Gson();
+    private final File journal;
+    private final File tempFile;
+    private final File indexFile;
+    private final HistoryFileLock lock;
+    private final HistoryJournal.Encoder encoder = new HistoryJournal.Encoder(); // guarded by this
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private volatile boolean compressedSnapshots;
+    private volatile boolean binarySnapshots;
+    private int journalRecords;
+    private int snapshotRecords;
+    private boolean countersKnown; // false until the history is read or written whole
+    private volatile AsyncHistoryWriter writer;
+    private HistoryIndex index;
+    private int indexedSize = -1;
+    private volatile boolean segmented;
+    private long segmentBytes = DEFAULT_SEGMENT_BYTES; // guarded by this
+    private long segmentSpanNanos = DEFAULT_SEGMENT_SPAN.toNanos(); // guarded by this
+    private long retentionNanos; // guarded by this, 0 for no limit
+    private long retentionBytes; // guarded by this, 0 for no limit
+    private ExecutorService deleter; // guarded by this, started on first deletion
 
     public HistoryManager(String path) {
         this.file = new File(path);
+        this.journal = new File(path + ".journal");
+        this.tempFile = new File(path + ".tmp");
+        this.indexFile = new File(path + ".idx");
+        this.lock = HistoryFileLock.forFile(new File(path + ".lock"));
+    }
+
+    public int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * Minimum number of journal records before {@link #append(HistoryEntry)} compacts the
+     * journal into the snapshot. Use {@code 0} to disable automatic compaction.
+     */
+    public void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public boolean isCompressedSnapshots() {
+        return compressedSnapshots;
+    }
+
+    /**
+     * Whether snapshots written from now on (by {@link #save}, {@link #compact()} or
+     * automatic compaction) use the compressed block format rather than JSON.
+     */
+    public void setCompressedSnapshots(boolean compressedSnapshots) {
+        this.compressedSnapshots = compressedSnapshots;
+    }
+
+    public boolean isBinarySnapshots() {
+        return binarySnapshots;
+    }
+
+    /**
+     * Whether snapshots written from now on use the fixed-width records of
+     * {@link BinaryHistoryFile}, which read back without parsing. Takes precedence over
+     * {@link #setCompressedSnapshots(boolean)}. The format holds doubles only, so a history
+     * with exact entries, and the segments of a segmented history, are still written in the
+     * other formats.
+     */
+    public void setBinarySnapshots(boolean binarySnapshots) {
+        this.binarySnapshots = binarySnapshots;
+    }
+
+    /**
+     * Keep the history as segments of about {@code maxBytes} at most, each covering at most
+     * {@code maxSpan} from its first entry. Takes effect at the next compaction or save. A
+     * history that already has segments stays segmented, with the default limits unless
+     * this is called.
+     */
+    public synchronized void setSegmentation(long maxBytes, Duration maxSpan) {
+        if (maxBytes <= 0 || maxSpan.isNegative() || maxSpan.isZero()) {
+            throw new IllegalArgumentException("Segment limits must be positive");
+        }
+        segmentBytes = maxBytes;
+        segmentSpanNanos = maxSpan.toNanos();
+        segmented = true;
+    }
+
+    /**
+     * Drop sealed segments once their newest entry is older than {@code maxAge}, then the
+     * oldest ones while the history takes more than {@code maxBytes}; {@code null} and
+     * {@code 0} mean no limit. Applied by every compaction and save and by
+     * {@link #enforceRetention()}. The segment still growing is always kept, so the history
+     * is segmented from the next compaction on.
+     */
+    public synchronized void setRetention(Duration maxAge, long maxBytes) {
+        if ((maxAge != null && maxAge.isNegative()) || maxBytes < 0) {
+            throw new IllegalArgumentException("Retention limits cannot be negative");
+        }
+        retentionNanos = maxAge != null ? maxAge.toNanos() : 0;
+        retentionBytes = maxBytes;
+        segmented = true;
+    }
+
+    private boolean isSegmented() {
+        return segmented || HistorySegments.manifestOf(file).exists();
     }
 
+    /**
+     * Write appends from a background thread from now on.
+     */
+    public synchronized void startAsync(AsyncHistoryWriter.Durability durability) {
+        if (writer == null) {
+            writer = new AsyncHistoryWriter(this::writeJournal, durability);
+        }
+    }
+
+    /**
+     * Write the full history as the snapshot and clear the journal.
+     * Pending asynchronous appends are flushed first.
+     */
     public void save(List<HistoryEntry> entries) throws IOException {
-        try (FileWriter fw = new FileWriter(file)) {
-            gson.toJson(entries, fw);
+        flush();
+        writeSnapshot(entries, entries.size());
+    }
+
+    /**
+     * Write the full history from a {@link HistoryStore} as the snapshot and clear the journal.
+     */
+    public void save(HistoryStore store) throws IOException {
+        flush();
+        writeSnapshot(store, store.size());
+    }
+
+    private synchronized void writeSnapshot(Iterable<HistoryEntry> entries, int count) throws IOException {
+        Metrics m = Metrics.current();
+        long start = m != null ? System.nanoTime() : 0;
+        lock.lock(false);
+        try {
+            if (isSegmented()) {
+                HistorySegments manifest = HistorySegments.read(file);
+                if (manifest == null) {
+                    manifest = new HistorySegments(file);
+                }
+                manifest.segments().clear(); // every old segment is replaced
+                commitSegments(manifest, entries.iterator());
+            } else {
+                if (binarySnapshots && BinaryHistoryFile.canHold(entries)) {
+                    new BinaryHistoryFile(file.getPath()).write(entries, count); // through tempFile
+                } else {
+                    try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                        writeEntries(out, entries);
+                        out.getFD().sync();
+                    }
+                    replace(tempFile, file);
+                }
+                deleteJournal();
+                journalRecords = 0;
+                snapshotRecords = count;
+                countersKnown = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (m != null) {
+            m.snapshot.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Encode {@code entries} as a snapshot, compressed or JSON.
+     */
+    private void writeEntries(OutputStream out, Iterable<HistoryEntry> entries) throws IOException {
+        if (compressedSnapshots) {
+            CompressedHistoryFile.write(out, entries);
+            return;
+        }
+        JsonWriter w = HistoryEntryAdapter.newWriter(
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16));
+        w.beginArray();
+        for (HistoryEntry e : entries) {
+            HistoryEntryAdapter.INSTANCE.write(w, e);
+        }
+        w.endArray();
+        w.flush();
+    }
+
+    private void deleteJournal() throws IOException {
+        if (journal.exists() && !journal.delete()) {
+            throw new IOException("Cannot delete journal " + journal);
+        }
+    }
+
+    /**
+     * Write {@code entries} as new segments after those of {@code manifest}, apply the
+     * retention limits, commit the manifest and clear the journal. Segment files the manifest
+     * no longer names are deleted in the background. Called with the exclusive lock held.
+     */
+    private void commitSegments(HistorySegments manifest, Iterator<HistoryEntry> entries) throws IOException {
+        Splitter split = new Splitter(entries);
+        while (split.hasMore()) {
+            File f = manifest.newSegmentFile();
+            try (FileOutputStream out = new FileOutputStream(f)) {
+                writeEntries(split.start(out), () -> split);
+                out.getFD().sync();
+            }
+            manifest.add(new HistorySegments.Segment(f.getName(), split.count, split.minNanos, split.maxNanos,
+                    f.length()));
+        }
+        manifest.expire(EpochClock.SYSTEM.epochNanos(), retentionNanos, retentionBytes, 0);
+        manifest.write();
+        deleteJournal();
+        journalRecords = 0;
+        HistorySegments.Segment active = manifest.active();
+        snapshotRecords = active != null ? active.count : 0;
+        countersKnown = true;
+        deleteLater(manifest.orphans(file));
+    }
+
+    /**
+     * Drop the segments the retention limits no longer keep (see {@link #setRetention}), and
+     * delete their files, with any that a crash left behind, from a background thread.
+     * No-op for a history without segments.
+     */
+    public synchronized void enforceRetention() throws IOException {
+        lock.lock(false);
+        try {
+            HistorySegments manifest = HistorySegments.read(file);
+            if (manifest == null) {
+                return;
+            }
+            if (!manifest.expire(EpochClock.SYSTEM.epochNanos(), retentionNanos, retentionBytes,
+                    journal.length()).isEmpty()) {
+                manifest.write();
+            }
+            deleteLater(manifest.orphans(file));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete {@code files} from the background thread. Nothing needs them any more: readers
+     * hold the shared lock, so none is still reading a manifest that named them. A file that
+     * cannot be deleted yet is retried by the next compaction or {@link #enforceRetention()}.
+     */
+    private synchronized void deleteLater(List<File> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        if (deleter == null) {
+            deleter = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "history-deleter");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        deleter.execute(() -> {
+            for (File f : files) {
+                f.delete();
+            }
+        });
+    }
+
+    /**
+     * Bytes used by the snapshot or the segments, and the journal.
+     */
+    public long sizeOnDisk() {
+        long snapshot = file.length();
+        try {
+            HistorySegments manifest = HistorySegments.read(file);
+            if (manifest != null) {
+                snapshot = manifest.bytes();
+            }
+        } catch (IOException ex) {
+            // unreadable manifest: the gauge falls back to the unsegmented snapshot
+        }
+        return snapshot + journal.length();
+    }
+
+    /**
+     * Rename {@code from} over {@code to} atomically where the file system allows it, then
+     * force the directory entry to disk where the platform allows it.
+     */
+    static void replace(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        File dir = to.getAbsoluteFile().getParentFile();
+        try (FileChannel ch = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ex) {
+            // directories cannot be opened or forced on every platform (e.g. Windows)
+        }
+    }
+
+    /**
+     * Append one entry to the journal without rewriting the snapshot.
+     */
+    public void append(HistoryEntry entry) throws IOException {
+        AsyncHistoryWriter w = writer;
+        if (w != null) {
+            w.submit(entry);
+        } else {
+            writeJournal(Collections.singletonList(entry), false);
+        }
+    }
+
+    /**
+     * Append several entries to the journal with a single open and write.
+     */
+    public void appendAll(List<HistoryEntry> entries) throws IOException {
+        AsyncHistoryWriter w = writer;
+        if (w != null) {
+            for (HistoryEntry entry : entries) {
+                w.submit(entry);
+            }
+        } else {
+            writeJournal(entries, false);
+        }
+    }
+
+    /**
+     * Wait for pending asynchronous appends to reach the journal. No-op when appends are
+     * synchronous.
+     */
+    public void flush() throws IOException {
+        AsyncHistoryWriter w = writer;
+        if (w != null) {
+            w.flush();
+        }
+    }
+
+    /**
+     * Flush pending appends and stop the background writer, if any. The index used by
+     * {@link #query} is saved if it changed, and pending segment deletions are waited for.
+     * Each step runs even if an earlier one fails; the first failure is thrown, with the
+     * later ones suppressed.
+     */
+    @Override
+    public void close() throws IOException {
+        AsyncHistoryWriter w;
+        synchronized (this) {
+            w = writer;
+            writer = null;
+        }
+        Exception failure = null;
+        try {
+            if (w != null) {
+                w.close();
+            }
+        } catch (IOException | RuntimeException ex) {
+            failure = ex;
+        }
+        try {
+            saveIndex();
+        } catch (IOException | RuntimeException ex) {
+            failure = suppress(failure, ex);
+        } finally {
+            stopDeleter();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    private static Exception suppress(Exception first, Exception next) {
+        if (first == null) {
+            return next;
+        }
+        first.addSuppressed(next);
+        return first;
+    }
+
+    private void stopDeleter() {
+        ExecutorService d;
+        synchronized (this) {
+            d = deleter;
+            deleter = null;
+        }
+        if (d != null) {
+            d.shutdown();
+            try {
+                d.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Positions in {@code store} of the entries matching {@code query}, in history order.
+     * This filters the store in memory. The index is read from disk on first use (or rebuilt
+     * if missing or stale) and then updated incrementally with the entries added to
+     * {@code store} since.
+     */
+    public synchronized int[] query(HistoryStore store, HistoryQuery query) {
+        if (index == null) {
+            index = HistoryIndex.read(indexFile, store);
+        }
+        return query.execute(store, index);
+    }
+
+    private synchronized void saveIndex() throws IOException {
+        if (index != null && index.size() != indexedSize) {
+            index.write(indexFile);
+            indexedSize = index.size();
+        }
+    }
+
+    private synchronized void writeJournal(List<HistoryEntry> entries, boolean sync) throws IOException {
+        if (entries.isEmpty() && !(sync && journal.exists())) {
+            return;
+        }
+        Metrics m = Metrics.current();
+        long start = m != null ? System.nanoTime() : 0;
+        lock.lock(false);
+        try {
+            try (FileChannel ch = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long end = HistoryJournal.endsCleanly(ch) ? ch.size() : HistoryJournal.recover(ch);
+                ch.position(end);
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16);
+                for (HistoryEntry entry : entries) {
+                    encoder.write(out, entry);
+                }
+                out.flush();
+                if (sync) {
+                    ch.force(false);
+                }
+                if (!countersKnown && !entries.isEmpty()) {
+                    estimateCounters(end, ch.position() - end, entries.size());
+                }
+            }
+            if (m != null) {
+                m.journal.record(System.nanoTime() - start);
+            }
+            journalRecords += entries.size();
+            if (compactionThreshold > 0 && journalRecords >= Math.max(compactionThreshold, snapshotRecords)) {
+                compact0();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seed the compaction counters of a history appended to without being read, as by
+     * one-shot calculations: the journal records before {@code journalBytes} and the
+     * records of the snapshot (or last segment) are estimated from the size of the
+     * {@code count} records just written in {@code writtenBytes}. Compaction then still
+     * happens when those processes together have filled the journal.
+     */
+    private void estimateCounters(long journalBytes, long writtenBytes, int count) throws IOException {
+        long perRecord = Math.max(1, writtenBytes / count);
+        journalRecords = (int) Math.min(Integer.MAX_VALUE, journalBytes / perRecord);
+        HistorySegments manifest = HistorySegments.read(file);
+        if (manifest != null) {
+            HistorySegments.Segment active = manifest.active();
+            snapshotRecords = active != null ? active.count : 0;
+        } else {
+            snapshotRecords = (int) Math.min(Integer.MAX_VALUE, file.length() / perRecord);
+        }
+        countersKnown = true;
+    }
+
+    /**
+     * Fold the journal into the snapshot.
+     */
+    public void compact() throws IOException {
+        flush();
+        compact0();
+    }
+
+    private synchronized void compact0() throws IOException {
+        lock.lock(false);
+        try {
+            if (isSegmented()) {
+                compactSegments();
+                return;
+            }
+            HistoryStore store = loadStore();
+            writeSnapshot(store, store.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fold the journal into the last segment, or into new ones once it is full. The first
+     * time, the unsegmented snapshot and the journal are rewritten as segments.
+     */
+    private void compactSegments() throws IOException {
+        HistorySegments manifest = HistorySegments.read(file);
+        List<File> parts = new ArrayList<>();
+        if (manifest == null) {
+            manifest = new HistorySegments(file);
+            if (file.exists()) {
+                parts.add(file);
+            }
+        } else {
+            HistorySegments.Segment active = manifest.active();
+            if (active != null && active.bytes < segmentBytes) {
+                manifest.segments().remove(manifest.segments().size() - 1);
+                parts.add(manifest.fileOf(active));
+            }
+        }
+        try (Cursor cursor = new Cursor(parts, Long.MIN_VALUE, Long.MAX_VALUE, 0)) {
+            commitSegments(manifest, cursor);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
         }
     }
 
     public List<HistoryEntry> load() throws IOException {
-        if (!file.exists()) {
-            return new ArrayList<>();
+        return load(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Load the entries made between {@code fromNanos} and {@code toNanos} (epoch nanoseconds,
+     * inclusive), in history order. Only the segments overlapping that range are read.
+     */
+    public List<HistoryEntry> load(long fromNanos, long toNanos) throws IOException {
+        List<HistoryEntry> list = new ArrayList<>();
+        read(list::add, fromNanos, toNanos);
+        return list;
+    }
+
+    /**
+     * Load the whole history into a compact {@link HistoryStore}.
+     */
+    public HistoryStore loadStore() throws IOException {
+        return loadStore(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Load the entries made between {@code fromNanos} and {@code toNanos} into a
+     * {@link HistoryStore}, reading only the segments overlapping that range.
+     */
+    public HistoryStore loadStore(long fromNanos, long toNanos) throws IOException {
+        HistoryStore store = new HistoryStore();
+        read(store::add, fromNanos, toNanos);
+        return store;
+    }
+
+    private synchronized void read(Consumer<HistoryEntry> into, long fromNanos, long toNanos) throws IOException {
+        Metrics m = Metrics.current();
+        long start = m != null ? System.nanoTime() : 0;
+        boolean damaged;
+        lock.lock(true);
+        try (Cursor cursor = cursor(fromNanos, toNanos)) {
+            while (cursor.hasNext()) {
+                into.accept(cursor.next());
+            }
+            journalRecords = cursor.journalRecords;
+            snapshotRecords = cursor.activeRecords >= 0 ? cursor.activeRecords : cursor.snapshotRecords;
+            countersKnown = true;
+            damaged = cursor.journalDamaged;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            lock.unlock();
+        }
+        if (damaged) {
+            recoverJournal();
+        }
+        if (m != null) {
+            m.load.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Cut the journal after its last valid record, so that later appends are not hidden
+     * behind a damaged one.
+     */
+    private void recoverJournal() throws IOException {
+        lock.lock(false);
+        try (FileChannel ch = FileChannel.open(journal.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            HistoryJournal.recover(ch);
+        } catch (NoSuchFileException ex) {
+            // compacted meanwhile by another process
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stream the snapshot then the journal, parsing one entry at a time. The stream holds
+     * open files and the shared history lock, and must be closed by the thread that opened
+     * it; I/O errors surface as {@link UncheckedIOException}.
+     */
+    public Stream<HistoryEntry> stream() throws IOException {
+        return stream(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #stream()}, for the entries made between {@code fromNanos} and
+     * {@code toNanos} only; segments outside that range are not opened.
+     */
+    public Stream<HistoryEntry> stream(long fromNanos, long toNanos) throws IOException {
+        lock.lock(true);
+        Cursor cursor;
+        try {
+            cursor = cursor(fromNanos, toNanos);
+        } catch (IOException | RuntimeException ex) {
+            lock.unlock();
+            throw ex;
+        }
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        try {
+                            cursor.close();
+                        } finally {
+                            lock.unlock();
+                        }
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+    }
+
+    /**
+     * A cursor over the entries between {@code fromNanos} and {@code toNanos}: the segments
+     * overlapping that range, or the unsegmented snapshot, then the journal.
+     */
+    private Cursor cursor(long fromNanos, long toNanos) throws IOException {
+        HistorySegments manifest = HistorySegments.read(file);
+        if (manifest == null) {
+            List<File> parts = file.exists() ? Collections.singletonList(file) : Collections.emptyList();
+            return new Cursor(parts, fromNanos, toNanos, -1);
+        }
+        List<File> parts = new ArrayList<>();
+        for (HistorySegments.Segment s : manifest.segments()) {
+            if (s.overlaps(fromNanos, toNanos)) {
+                parts.add(manifest.fileOf(s));
+            }
+        }
+        HistorySegments.Segment active = manifest.active();
+        return new Cursor(parts, fromNanos, toNanos, active != null ? active.count : 0);
+    }
+
+    /**
+     * Iterates snapshot files one after the other (each a JSON array read with a
+     * {@link JsonReader}, compressed blocks decoded one at a time, or binary records), then
+     * the journal line by line, skipping entries outside {@code [fromNanos, toNanos]}.
+     */
+    private final class Cursor implements Iterator<HistoryEntry>, Closeable {
+        private final Iterator<File> parts;
+        private final long fromNanos;
+        private final long toNanos;
+        private final int activeRecords; // records in the last segment, -1 when unsegmented
+        private JsonReader snapshot;
+        private CompressedHistoryFile.Reader blocks;
+        private int blockSize;
+        private int blockPos;
+        private BinaryHistoryFile.Records records;
+        private HistoryJournal.Reader journalReader;
+        private boolean journalOpened;
+        private boolean journalDamaged;
+        private HistoryEntry next;
+        private int journalRecords;
+        private int snapshotRecords;
+
+        Cursor(List<File> parts, long fromNanos, long toNanos, int activeRecords) throws IOException {
+            this.parts = parts.iterator();
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+            this.activeRecords = activeRecords;
+            openNextPart();
+        }
+
+        /**
+         * Open the next snapshot file that holds entries; false once there are none left.
+         */
+        private boolean openNextPart() throws IOException {
+            while (parts.hasNext()) {
+                File part = parts.next();
+                if (CompressedHistoryFile.isCompressed(part)) {
+                    blocks = new CompressedHistoryFile.Reader(new FileInputStream(part));
+                    return true;
+                }
+                if (BinaryHistoryFile.isBinary(part)) {
+                    records = new BinaryHistoryFile(part.getPath()).records();
+                    return true;
+                }
+                snapshot = new JsonReader(new BufferedReader(
+                        new InputStreamReader(new FileInputStream(part), StandardCharsets.UTF_8)));
+                snapshot.setLenient(true);
+                try {
+                    if (snapshot.peek() == JsonToken.BEGIN_ARRAY) {
+                        snapshot.beginArray();
+                        return true;
+                    }
+                    closeSnapshot(); // "null" or another non-array document
+                } catch (EOFException ex) {
+                    closeSnapshot(); // empty file
+                } catch (IOException | RuntimeException ex) {
+                    closeSnapshot();
+                    throw ex;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = advance();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public HistoryEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            HistoryEntry e = next;
+            next = null;
+            return e;
+        }
+
+        private HistoryEntry advance() throws IOException {
+            HistoryEntry e = read();
+            if (fromNanos == Long.MIN_VALUE && toNanos == Long.MAX_VALUE) {
+                return e; // unbounded: leave the times of JSON entries unparsed
+            }
+            while (e != null && (e.epochNanos() < fromNanos || e.epochNanos() > toNanos)) {
+                e = read();
+            }
+            return e;
+        }
+
+        private HistoryEntry read() throws IOException {
+            do {
+                if (records != null) {
+                    HistoryEntry e = records.next();
+                    if (e != null) {
+                        snapshotRecords++;
+                        return e;
+                    }
+                    closeRecords();
+                }
+                while (blocks != null) {
+                    if (blockPos < blockSize) {
+                        snapshotRecords++;
+                        return blocks.entry(blockPos++);
+                    }
+                    blockSize = blocks.nextBlock();
+                    blockPos = 0;
+                    if (blockSize < 0) {
+                        closeBlocks();
+                    }
+                }
+                if (snapshot != null) {
+                    if (snapshot.hasNext()) {
+                        snapshotRecords++;
+                        return HistoryEntryAdapter.readEntry(snapshot);
+                    }
+                    closeSnapshot();
+                }
+            } while (openNextPart());
+            if (!journalOpened) {
+                journalOpened = true;
+                if (journal.exists()) {
+                    journalReader = new HistoryJournal.Reader(new FileInputStream(journal));
+                }
+            }
+            if (journalReader == null) {
+                return null;
+            }
+            String json = journalReader.next();
+            if (json != null) {
+                try {
+                    HistoryEntry e = HistoryEntryAdapter.parse(json);
+                    journalRecords++;
+                    return e;
+                } catch (JsonParseException ex) {
+                    journalReader.reject(); // checksum matches but the JSON is not an entry
+                }
+            }
+            // keep what was fully written before a crash
+            journalDamaged = journalReader.isCorrupt();
+            journalReader.close();
+            journalReader = null;
+            return null;
+        }
+
+        private void closeBlocks() throws IOException {
+            CompressedHistoryFile.Reader r = blocks;
+            blocks = null;
+            blockSize = 0;
+            blockPos = 0;
+            r.close();
+        }
+
+        private void closeRecords() throws IOException {
+            BinaryHistoryFile.Records r = records;
+            records = null;
+            r.close();
+        }
+
+        private void closeSnapshot() throws IOException {
+            JsonReader r = snapshot;
+            snapshot = null;
+            r.close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (snapshot != null) {
+                    closeSnapshot();
+                }
+                if (blocks != null) {
+                    closeBlocks();
+                }
+                if (records != null) {
+                    closeRecords();
+                }
+            } finally {
+                if (journalReader != null) {
+                    journalReader.close();
+                    journalReader = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands out the entries of one segment at a time: {@link #hasNext()} turns false when the
+     * segment started by {@link #start} reaches the size limit (as far as its output has been
+     * flushed) or its time span, and {@link #hasMore()} tells whether another one is needed.
+     */
+    private final class Splitter implements Iterator<HistoryEntry> {
+        private final Iterator<HistoryEntry> entries;
+        private HistoryEntry pending;
+        private CountingOutputStream out;
+        int count;
+        long minNanos;
+        long maxNanos;
+        private long firstNanos;
+
+        Splitter(Iterator<HistoryEntry> entries) {
+            this.entries = entries;
+        }
+
+        boolean hasMore() {
+            return pending != null || entries.hasNext();
+        }
+
+        OutputStream start(OutputStream segment) {
+            out = new CountingOutputStream(segment);
+            count = 0;
+            minNanos = Long.MAX_VALUE;
+            maxNanos = Long.MIN_VALUE;
+            return out;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pending == null && entries.hasNext()) {
+                pending = entries.next();
+            }
+            if (pending == null) {
+                return false;
+            }
+            return count == 0 || (out.count < segmentBytes && pending.epochNanos() - firstNanos < segmentSpanNanos);
+        }
+
+        @Override
+        public HistoryEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            HistoryEntry e = pending;
+            pending = null;
+            long t = e.epochNanos();
+            if (count++ == 0) {
+                firstNanos = t;
+            }
+            minNanos = Math.min(minNanos, t);
+            maxNanos = Math.max(maxNanos, t);
+            return e;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
         }
-        try (FileReader fr = new FileReader(file)) {
-            Type t = new TypeToken<List<HistoryEntry>>() {}.getType();
-            List<HistoryEntry> list = gson.fromJson(fr, t);
-            return list != null ? list : new ArrayList<>();
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
         }
     }
 }
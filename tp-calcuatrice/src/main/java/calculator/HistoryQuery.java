@@ -0,0 +1,220 @@
+package calculator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Filter over history entries, parsed from terms such as
+ * <pre>
+ * op=div since=1h result&gt;1e6
+ * </pre>
+ * Supported terms (all must match):
+ * <ul>
+ *   <li>{@code op=<name>}</li>
+ *   <li>{@code since=<n>s|m|h|d} (relative to now), {@code after=<ISO-8601>}, {@code before=<ISO-8601>}</li>
+ *   <li>{@code result}, {@code a} or {@code b} compared with {@code = < <= > >=}, e.g. {@code a<=10}</li>
+ * </ul>
+ * {@link #execute(HistoryStore, HistoryIndex)} starts from the most selective index
+ * (op posting list, time range or result range) and checks the other terms only on
+ * those candidates.
+ */
+public class HistoryQuery {
+    private byte op = -1;
+    private long fromNanos = Long.MIN_VALUE;
+    private long toNanos = Long.MAX_VALUE;
+    private final double[] min = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+    private final double[] max = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+    private final boolean[] bounded = new boolean[3];
+
+    private static final int A = 0;
+    private static final int B = 1;
+    private static final int RESULT = 2;
+
+    /**
+     * Parse query terms, {@code since} being relative to {@code nowNanos}.
+     *
+     * @throws IllegalArgumentException on an invalid term
+     */
+    public static HistoryQuery parse(String text, long nowNanos) {
+        HistoryQuery q = new HistoryQuery();
+        for (String term : text.trim().split("\\s+")) {
+            if (term.isEmpty() || term.equalsIgnoreCase("and")) continue;
+            q.addTerm(term, nowNanos);
+        }
+        return q;
+    }
+
+    private void addTerm(String term, long nowNanos) {
+        int opStart = indexOfOperator(term);
+        if (opStart <= 0) {
+            throw new IllegalArgumentException("Invalid query term: " + term);
+        }
+        int opEnd = opStart + 1;
+        if (opEnd < term.length() && term.charAt(opEnd) == '=') {
+            opEnd++;
+        }
+        String field = term.substring(0, opStart).toLowerCase(Locale.ROOT);
+        String cmp = term.substring(opStart, opEnd);
+        String value = term.substring(opEnd);
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Missing value in query term: " + term);
+        }
+        switch (field) {
+            case "op":
+                requireEquals(term, cmp);
+                op = OpCode.of(value);
+                break;
+            case "since":
+                requireEquals(term, cmp);
+                fromNanos = Math.max(fromNanos, nowNanos - parseDuration(value).toNanos());
+                break;
+            case "after":
+                requireEquals(term, cmp);
+                fromNanos = Math.max(fromNanos, parseInstant(value));
+                break;
+            case "before":
+                requireEquals(term, cmp);
+                toNanos = Math.min(toNanos, parseInstant(value));
+                break;
+            case "a":
+                bound(A, cmp, value);
+                break;
+            case "b":
+                bound(B, cmp, value);
+                break;
+            case "result":
+                bound(RESULT, cmp, value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown query field: " + field);
+        }
+    }
+
+    private void bound(int field, String cmp, String value) {
+        double v = Double.parseDouble(value);
+        bounded[field] = true;
+        switch (cmp) {
+            case "=": min[field] = Math.max(min[field], v); max[field] = Math.min(max[field], v); break;
+            case ">=": min[field] = Math.max(min[field], v); break;
+            case "<=": max[field] = Math.min(max[field], v); break;
+            case ">": min[field] = Math.max(min[field], Math.nextUp(v)); break;
+            case "<": max[field] = Math.min(max[field], Math.nextDown(v)); break;
+            default: throw new IllegalArgumentException("Invalid comparison: " + cmp);
+        }
+    }
+
+    private static int indexOfOperator(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c == '=' || c == '<' || c == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void requireEquals(String term, String cmp) {
+        if (!"=".equals(cmp)) {
+            throw new IllegalArgumentException("Only '=' is supported in: " + term);
+        }
+    }
+
+    private static long parseInstant(String value) {
+        try {
+            return EpochClock.toEpochNanos(Instant.parse(value));
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Invalid instant (use ISO-8601, e.g. 2024-01-31T12:00:00Z): " + value);
+        }
+    }
+
+    static Duration parseDuration(String value) {
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        long n = Long.parseLong(value.substring(0, value.length() - 1));
+        switch (unit) {
+            case 's': return Duration.ofSeconds(n);
+            case 'm': return Duration.ofMinutes(n);
+            case 'h': return Duration.ofHours(n);
+            case 'd': return Duration.ofDays(n);
+            default: throw new IllegalArgumentException("Invalid duration (use s, m, h or d): " + value);
+        }
+    }
+
+    /**
+     * Earliest epoch nanoseconds a matching entry can have, {@link Long#MIN_VALUE} if unbounded.
+     */
+    public long fromNanos() {
+        return fromNanos;
+    }
+
+    /**
+     * Latest epoch nanoseconds a matching entry can have, {@link Long#MAX_VALUE} if unbounded.
+     */
+    public long toNanos() {
+        return toNanos;
+    }
+
+    /**
+     * Whether entry {@code i} of {@code store} matches every term.
+     */
+    public boolean matches(HistoryStore store, int i) {
+        if (op >= 0 && store.opCode(i) != op) return false;
+        long t = store.epochNanos(i);
+        if (t < fromNanos || t > toNanos) return false;
+        return within(A, store.a(i)) && within(B, store.b(i)) && within(RESULT, store.result(i));
+    }
+
+    private boolean within(int field, double v) {
+        return !bounded[field] || (v >= min[field] && v <= max[field]);
+    }
+
+    /**
+     * Positions of the matching entries, in history order.
+     */
+    public int[] execute(HistoryStore store, HistoryIndex index) {
+        index.update(store);
+        // candidates[from, to); null means every position of the store
+        int[] candidates = null;
+        int from = 0;
+        int to = store.size();
+        boolean inOrder = true;
+        int[] range = new int[2];
+        if (op >= 0) {
+            candidates = index.postings(op);
+            to = index.postingCount(op);
+        }
+        if (fromNanos != Long.MIN_VALUE || toNanos != Long.MAX_VALUE) {
+            int[] byTime = index.timeRange(store, fromNanos, toNanos, range);
+            if (range[1] - range[0] < to - from) {
+                candidates = byTime;
+                from = range[0];
+                to = range[1];
+                inOrder = false;
+            }
+        }
+        if (bounded[RESULT]) {
+            int[] byResult = index.resultRange(store, min[RESULT], max[RESULT], range);
+            if (range[1] - range[0] < to - from) {
+                candidates = byResult;
+                from = range[0];
+                to = range[1];
+                inOrder = false;
+            }
+        }
+        int[] hits = new int[Math.max(to - from, 0)];
+        int n = 0;
+        for (int k = from; k < to; k++) {
+            int i = candidates == null ? k : candidates[k];
+            if (matches(store, i)) {
+                hits[n++] = i;
+            }
+        }
+        hits = Arrays.copyOf(hits, n);
+        if (!inOrder) {
+            Arrays.sort(hits); // time and result indexes are not in history order
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,222 @@
+package calculator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manifest of a segmented history ({@code history.json.manifest}): the snapshot files
+ * ("segments", {@code history.json.seg-000001} and so on) that, oldest first and followed by
+ * the journal, make up the history, each with its entry count, time range and size.
+ *
+ * Text format: a {@link #HEADER} line, the next segment number, then one line per segment,
+ * {@code name count minNanos maxNanos bytes}. The manifest is rewritten whole and renamed
+ * into place, so it always describes segments that were fully written and forced to disk;
+ * a segment file it does not name is garbage left by a crash or a deferred deletion.
+ *
+ * Only the last segment is still growing; the others are sealed and are only ever
+ * dropped as a whole, by {@link #expire}.
+ */
+final class HistorySegments {
+    static final String HEADER = "calculator-segments 1";
+
+    static final class Segment {
+        final String name;
+        final int count;
+        final long minNanos;
+        final long maxNanos;
+        final long bytes;
+
+        Segment(String name, int count, long minNanos, long maxNanos, long bytes) {
+            this.name = name;
+            this.count = count;
+            this.minNanos = minNanos;
+            this.maxNanos = maxNanos;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Whether the segment may hold entries in {@code [fromNanos, toNanos]}.
+         */
+        boolean overlaps(long fromNanos, long toNanos) {
+            return count > 0 && minNanos <= toNanos && maxNanos >= fromNanos;
+        }
+    }
+
+    private final File file;
+    private final File dir;
+    private final String prefix;
+    private final List<Segment> segments = new ArrayList<>();
+    private long nextNumber = 1;
+
+    /**
+     * An empty manifest for the history {@code history}; segment files go next to it.
+     */
+    HistorySegments(File history) {
+        this.file = manifestOf(history);
+        this.dir = history.getAbsoluteFile().getParentFile();
+        this.prefix = history.getName() + ".seg-";
+    }
+
+    static File manifestOf(File history) {
+        return new File(history.getPath() + ".manifest");
+    }
+
+    /**
+     * The manifest of {@code history}, or null if the history is not segmented.
+     */
+    static HistorySegments read(File history) throws IOException {
+        HistorySegments m = new HistorySegments(history);
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(m.file), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(in.readLine())) {
+                throw new IOException("Not a history manifest: " + m.file);
+            }
+            try {
+                m.nextNumber = Long.parseLong(in.readLine());
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    String[] f = line.split(" ");
+                    m.segments.add(new Segment(f[0], Integer.parseInt(f[1]), Long.parseLong(f[2]),
+                            Long.parseLong(f[3]), Long.parseLong(f[4])));
+                }
+            } catch (RuntimeException ex) { // NumberFormatException, missing fields
+                throw new IOException("Damaged history manifest: " + m.file, ex);
+            }
+        } catch (FileNotFoundException ex) {
+            return null;
+        }
+        return m;
+    }
+
+    /**
+     * Write the manifest to a temporary file, force it to disk and rename it into place.
+     */
+    void write() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            w.write(HEADER);
+            w.write('\n');
+            w.write(Long.toString(nextNumber));
+            w.write('\n');
+            for (Segment s : segments) {
+                w.write(s.name + ' ' + s.count + ' ' + s.minNanos + ' ' + s.maxNanos + ' ' + s.bytes + '\n');
+            }
+            w.flush();
+            out.getFD().sync();
+        }
+        HistoryManager.replace(temp, file);
+    }
+
+    List<Segment> segments() {
+        return segments;
+    }
+
+    File fileOf(Segment s) {
+        return new File(dir, s.name);
+    }
+
+    /**
+     * The segment still growing, or null if there is none.
+     */
+    Segment active() {
+        return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    }
+
+    /**
+     * A new segment file name. Numbers are never reused while a file with that name exists,
+     * so a segment awaiting deletion cannot be mistaken for a new one.
+     */
+    File newSegmentFile() {
+        File f;
+        do {
+            f = new File(dir, prefix + String.format("%06d", nextNumber++));
+        } while (f.exists());
+        return f;
+    }
+
+    void add(Segment s) {
+        segments.add(s);
+    }
+
+    long bytes() {
+        long total = 0;
+        for (Segment s : segments) {
+            total += s.bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Drop the sealed segments whose newest entry is older than {@code maxAgeNanos}, then
+     * the oldest sealed ones while the history (with {@code extraBytes} for the journal)
+     * exceeds {@code maxBytes}. The active segment is always kept. Either limit may be
+     * {@code 0} for none.
+     *
+     * @return the dropped segments, oldest first
+     */
+    List<Segment> expire(long nowNanos, long maxAgeNanos, long maxBytes, long extraBytes) {
+        int drop = 0;
+        int sealed = segments.size() - 1;
+        if (maxAgeNanos > 0) {
+            while (drop < sealed && segments.get(drop).maxNanos < nowNanos - maxAgeNanos) {
+                drop++;
+            }
+        }
+        if (maxBytes > 0) {
+            long total = bytes() + extraBytes;
+            for (int i = 0; i < drop; i++) {
+                total -= segments.get(i).bytes;
+            }
+            while (drop < sealed && total > maxBytes) {
+                total -= segments.get(drop++).bytes;
+            }
+        }
+        List<Segment> dropped = new ArrayList<>(segments.subList(0, drop));
+        segments.subList(0, drop).clear();
+        return dropped;
+    }
+
+    /**
+     * Segment files in the directory that the manifest does not name, and the unsegmented
+     * snapshot {@code history} it replaced.
+     */
+    List<File> orphans(File history) {
+        List<File> orphans = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) {
+            return orphans;
+        }
+        for (String name : names) {
+            if (name.startsWith(prefix) && !names(name)) {
+                orphans.add(new File(dir, name));
+            }
+        }
+        if (history.exists() && !names(history.getName())) {
+            orphans.add(history);
+        }
+        return orphans;
+    }
+
+    private boolean names(String name) {
+        for (Segment s : segments) {
+            if (s.name.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,197 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact in-memory history kept in primitive parallel arrays: one op code byte, three
+ * doubles and one epoch-nanos long per calculation (33 bytes, no per-entry object).
+ *
+ * Entries are read either field by field ({@link #a(int)}, {@link #result(int)}, ...) or
+ * through a flyweight {@link HistoryEntry}: {@link #get(int, HistoryEntry)} and the
+ * iterator refill the same object, which must not be kept after the next call.
+ *
+ * The exact decimal text of entries from an exact {@link NumericBackend} is kept in a
+ * side array, allocated only once such an entry is added. So are the names of operations
+ * the {@link OpCode} registry does not know (stored as {@link OpCode#UNKNOWN}), such as
+ * plugin operations found in a history after their plugin was removed.
+ */
+public class HistoryStore implements Iterable<HistoryEntry> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] ops;
+    private double[] as;
+    private double[] bs;
+    private double[] results;
+    private long[] times;
+    private String[] texts; // a, b, result per entry; null while every entry is a plain double
+    private String[] unknownOps; // op name per UNKNOWN entry; null while every op is known
+    private int size;
+
+    public HistoryStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public HistoryStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        ops = new byte[capacity];
+        as = new double[capacity];
+        bs = new double[capacity];
+        results = new double[capacity];
+        times = new long[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(HistoryEntry e) {
+        byte code = OpCode.find(e.op);
+        add(code >= 0 ? code : OpCode.UNKNOWN, e.a, e.b, e.result, e.epochNanos());
+        if (code < 0) {
+            if (unknownOps == null) {
+                unknownOps = new String[ops.length];
+            }
+            unknownOps[size - 1] = e.op;
+        }
+        if (e.isExact()) {
+            if (texts == null) {
+                texts = new String[ops.length * 3];
+            }
+            int t = (size - 1) * 3;
+            texts[t] = e.aText();
+            texts[t + 1] = e.bText();
+            texts[t + 2] = e.resultText();
+        }
+    }
+
+    /**
+     * Add an entry by op code, which must be a code of the {@link OpCode} registry.
+     */
+    public void add(byte opCode, double a, double b, double result, long epochNanos) {
+        if (size == ops.length) {
+            grow();
+        }
+        ops[size] = opCode;
+        as[size] = a;
+        bs[size] = b;
+        results[size] = result;
+        times[size] = epochNanos;
+        if (texts != null) {
+            int t = size * 3;
+            texts[t] = texts[t + 1] = texts[t + 2] = null;
+        }
+        if (unknownOps != null) {
+            unknownOps[size] = null;
+        }
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+        texts = null;
+        unknownOps = null;
+    }
+
+    /**
+     * Op code of entry {@code i}, {@link OpCode#UNKNOWN} for an operation the registry does
+     * not know.
+     */
+    public byte opCode(int i) {
+        return ops[checkIndex(i)];
+    }
+
+    public String op(int i) {
+        return opName(checkIndex(i));
+    }
+
+    private String opName(int i) {
+        return ops[i] != OpCode.UNKNOWN ? OpCode.name(ops[i]) : unknownOps[i];
+    }
+
+    public double a(int i) {
+        return as[checkIndex(i)];
+    }
+
+    public double b(int i) {
+        return bs[checkIndex(i)];
+    }
+
+    public double result(int i) {
+        return results[checkIndex(i)];
+    }
+
+    public long epochNanos(int i) {
+        return times[checkIndex(i)];
+    }
+
+    /**
+     * Fill {@code reuse} with entry {@code i} and return it.
+     */
+    public HistoryEntry get(int i, HistoryEntry reuse) {
+        checkIndex(i);
+        reuse.set(opName(i), as[i], bs[i], results[i], times[i]);
+        if (texts != null && texts[i * 3 + 2] != null) {
+            reuse.setTexts(texts[i * 3], texts[i * 3 + 1], texts[i * 3 + 2]);
+        }
+        return reuse;
+    }
+
+    /**
+     * A new, independent copy of entry {@code i}.
+     */
+    public HistoryEntry get(int i) {
+        return get(i, new HistoryEntry(null, 0, 0, 0, 0L));
+    }
+
+    /**
+     * Iterate with a single flyweight entry, refilled on every {@code next()}.
+     */
+    @Override
+    public Iterator<HistoryEntry> iterator() {
+        return new Iterator<HistoryEntry>() {
+            private final HistoryEntry flyweight = new HistoryEntry(null, 0, 0, 0, 0L);
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public HistoryEntry next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++, flyweight);
+            }
+        };
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+        }
+        return i;
+    }
+
+    private void grow() {
+        int capacity = ops.length + (ops.length >> 1) + 1;
+        ops = Arrays.copyOf(ops, capacity);
+        as = Arrays.copyOf(as, capacity);
+        bs = Arrays.copyOf(bs, capacity);
+        results = Arrays.copyOf(results, capacity);
+        times = Arrays.copyOf(times, capacity);
+        if (texts != null) {
+            texts = Arrays.copyOf(texts, capacity * 3);
+        }
+        if (unknownOps != null) {
+            unknownOps = Arrays.copyOf(unknownOps, capacity);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package calculator;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent latency histogram with log-linear buckets, in the style of HdrHistogram:
+ * values below {@value #SUB_BUCKETS} nanoseconds get one bucket each, and every power of two
+ * above is split into {@value #HALF} equal buckets, so any recorded value is known to within
+ * 1/{@value #HALF} (about 6%) whatever its magnitude, with a fixed 960-bucket array.
+ *
+ * {@link #record(long)} is one atomic increment plus a sum and a max update; readers see a
+ * consistent-enough view without stopping writers.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = (64 - SUB_BITS) * HALF + HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one duration; negative values count as {@code 0}.
+     */
+    public void record(long nanos) {
+        long v = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(v));
+        sum.add(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    static int bucket(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(v) - SUB_BITS; // >= 1
+        return shift * HALF + (int) (v >>> shift);
+    }
+
+    /** Largest value falling in {@code bucket}. */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / HALF - 1;
+        long mantissa = bucket % HALF + HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Mean in nanoseconds, {@code 0} when empty.
+     */
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Value at {@code percentile} (0 to 100): the upper bound of the bucket holding it,
+     * capped at the maximum recorded. {@code 0} when empty.
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        long n = count();
+        if (n == 0) {
+            return "n=0";
+        }
+        return String.format("n=%d mean=%s p50=%s p99=%s p99.9=%s max=%s", n, format(mean()),
+                format(percentile(50)), format(percentile(99)), format(percentile(99.9)), format(max()));
+    }
+
+    /**
+     * Human-readable duration: ns, us, ms or s with three significant digits.
+     */
+    static String format(double nanos) {
+        if (nanos < 1_000) {
+            return String.format(Locale.ROOT, "%.0fns", nanos);
+        }
+        if (nanos < 1_000_000) {
+            return String.format(Locale.ROOT, "%.3gus", nanos / 1_000);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format(Locale.ROOT, "%.3gms", nanos / 1_000_000);
+        }
+        return String.format(Locale.ROOT, "%.3gs", nanos / 1_000_000_000);
+    }
+}
@@ -0,0 +1,102 @@
+package calculator;
+
+/**
+ * Splits a line held in a {@code char[]} into whitespace-separated tokens in place: a
+ * token is only a {@code [start, end)} range of the buffer, so scanning, recognising
+ * operation names and parsing numbers allocate nothing. Only {@link #token()}, meant for
+ * error messages, builds a String.
+ *
+ * <pre>
+ * tokenizer.reset(buf, lineStart, lineEnd);
+ * while (tokenizer.next()) { ... tokenizer.parseDouble() ... }
+ * </pre>
+ */
+final class LineTokenizer {
+    private char[] chars = new char[0];
+    private int end;
+    private int pos;
+    private int tokenStart;
+    private int tokenEnd;
+
+    /**
+     * Tokenize {@code chars[from, to)}. The array is not copied.
+     */
+    void reset(char[] chars, int from, int to) {
+        this.chars = chars;
+        this.pos = from;
+        this.end = to;
+        this.tokenStart = from;
+        this.tokenEnd = from;
+    }
+
+    /**
+     * Advance to the next token.
+     *
+     * @return false when the line has no more tokens
+     */
+    boolean next() {
+        int i = pos;
+        while (i < end && isSpace(chars[i])) {
+            i++;
+        }
+        if (i == end) {
+            pos = i;
+            return false;
+        }
+        tokenStart = i;
+        while (i < end && !isSpace(chars[i])) {
+            i++;
+        }
+        tokenEnd = i;
+        pos = i;
+        return true;
+    }
+
+    /** Start of the current token in the buffer. */
+    int start() {
+        return tokenStart;
+    }
+
+    /** End (exclusive) of the current token in the buffer. */
+    int end() {
+        return tokenEnd;
+    }
+
+    /**
+     * Whether the current token starts with {@code c}.
+     */
+    boolean startsWith(char c) {
+        return tokenEnd > tokenStart && chars[tokenStart] == c;
+    }
+
+    /**
+     * The current token as an {@link OpCode}, or {@code -1} if it is not an operation name.
+     */
+    byte opCode() {
+        return OpCode.of(chars, tokenStart, tokenEnd);
+    }
+
+    /**
+     * The current token as a double, with the same results as {@link Double#parseDouble}.
+     *
+     * @throws NumberFormatException if it is not a number
+     */
+    double parseDouble() {
+        return FastDoubleParser.parse(chars, tokenStart, tokenEnd);
+    }
+
+    /**
+     * The current token as a new String.
+     */
+    String token() {
+        return new String(chars, tokenStart, tokenEnd - tokenStart);
+    }
+
+    /**
+     * Same characters as the regex {@code \s}: space, tab, line feed, vertical tab, form
+     * feed and carriage return.
+     */
+    static boolean isSpace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+}
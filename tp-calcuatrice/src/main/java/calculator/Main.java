@@ -1,7 +1,17 @@
 package calculator;
 
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.io.BufferedWriter;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * CLI entrypoint for the calculator.
@@ -9,56 +19,194 @@ import java.io.IOException;
  * Usage examples:
  * java -cp target/classes;target/dependency/* calculator.Main
  * java -cp target/classes;target/dependency/* calculator.Main add 2 3
+ * java -cp target/classes;target/dependency/* calculator.Main eval "(2+3)*4"
  * java -cp target/classes;target/dependency/* calculator.Main --history history.json
+ * java -cp target/classes;target/dependency/* calculator.Main --batch ops.txt [--batch-flush 10000]
+ * some-script | java -cp target/classes;target/dependency/* calculator.Main --batch -
+ * java -cp target/classes;target/dependency/* calculator.Main --serve [--port 7878]
+ * java -cp target/classes;target/dependency/* calculator.Main --connect [--port 7878] add 2 3
+ *
+ * One-shot calculations only append to the history; the interactive session loads it the
+ * first time a command needs it (history where, export, aggregate).
+ * --ephemeral keeps no history on disk at all: nothing is read or written, and the
+ * interactive session only remembers its own calculations.
+ * In interactive and batch mode history is written by a background thread;
+ * --durability each|periodic|none (default periodic) chooses when it is fsync'ed.
+ * --coarse-clock stamps entries from a clock refreshed every millisecond instead of
+ * reading the system clock for each calculation (useful for large batches).
+ * --cache N memoises the results of the last N distinct calculations (LRU).
+ * --mode double|decimal[:precision]|fixed[:scale] chooses the arithmetic of add/sub/mul/div
+ * (see {@link NumericBackend}); exact modes keep decimal text in the history.
+ * --compress writes history snapshots in the compressed block format
+ * (see {@link CompressedHistoryFile}) instead of JSON; --binary writes them as the
+ * fixed-width records of {@link BinaryHistoryFile}, the fastest to load.
+ * --segment-size 64M and --segment-span 1d split the history file into segments of at most
+ * that size and time span; --retain 30d and --retain-size 10G drop whole segments past that
+ * age or beyond that total size, at startup and on each compaction (see {@link HistoryManager}).
+ * --metrics turns on instrumentation (see {@link Metrics}), shown by the stats command,
+ * at the end of a batch, and over JMX.
+ * --serve keeps a warm calculator listening on a loopback port (see {@link CalculatorServer});
+ * --connect sends the remaining arguments to it instead of computing locally.
  *
  * Interactive commands:
  *  - add <a> <b>
  *  - sub <a> <b>
  *  - mul <a> <b>
  *  - div <a> <b>
- *  - history  (show history file entries)
- *  - save     (save current history)
+ *  - any operation plugged in through {@link Operation}, e.g. hypot <a> <b>
+ *  - eval <expression>  (infix expression, e.g. (2+3)*4/x; always in double)
+ *  - set <name> <value> (define a variable for eval)
+ *  - history [op]  (show history file entries, optionally only one operation)
+ *  - history where <terms> (in-memory filtering, e.g. history where op=div since=1h result>1e6)
+ *  - save     (fold the journal into the history file)
+ *  - export <file> (write history in the binary format)
+ *  - cache    (show result cache statistics)
+ *  - stats    (show metrics, with --metrics)
+ *  - aggregate [file] (result statistics and quantiles per operation, over the history
+ *    or over a file written by export; see {@link HistoryAggregator})
  *  - quit
+ * With --ephemeral, history, save and the rest only see the calculations of the session.
  */
 public class Main {
     public static void main(String[] args) {
-        String historyPath = "history.json";
         List<String> argList = new ArrayList<>(Arrays.asList(args));
-        // simple arg parsing for --history <path>
-        for (int i = 0; i < argList.size(); i++) {
-            if ("--history".equals(argList.get(i)) && i + 1 < argList.size()) {
-                historyPath = argList.get(i + 1);
-                // remove both args
-                argList.remove(i + 1);
-                argList.remove(i);
-                break;
-            }
+        String historyPath = takeOption(argList, "--history", "history.json");
+        String batchInput = takeOption(argList, "--batch", null);
+        String batchFlush = takeOption(argList, "--batch-flush", Integer.toString(BatchRunner.DEFAULT_FLUSH_EVERY));
+        String cacheSize = takeOption(argList, "--cache", null);
+        String mode = takeOption(argList, "--mode", "double");
+        String port = takeOption(argList, "--port", Integer.toString(CalculatorServer.DEFAULT_PORT));
+        boolean serve = takeFlag(argList, "--serve");
+        boolean connect = takeFlag(argList, "--connect");
+        boolean ephemeral = takeFlag(argList, "--ephemeral");
+        boolean compress = takeFlag(argList, "--compress");
+        boolean binary = takeFlag(argList, "--binary");
+        String segmentSize = takeOption(argList, "--segment-size", null);
+        String segmentSpan = takeOption(argList, "--segment-span", null);
+        String retain = takeOption(argList, "--retain", null);
+        String retainSize = takeOption(argList, "--retain-size", null);
+        AsyncHistoryWriter.Durability durability = parseDurability(takeOption(argList, "--durability", "periodic"));
+        if (durability == null) {
+            System.err.println("Invalid --durability value (each, periodic or none)");
+            System.exit(2);
         }
 
-        HistoryManager hm = new HistoryManager(historyPath);
-        List<HistoryEntry> history = new ArrayList<>();
+        int portNumber = -1;
         try {
-            history = hm.load();
-        } catch (IOException e) {
-            // ignore, start with empty history
+            portNumber = Integer.parseInt(port);
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid --port value");
+            System.exit(2);
+        }
+        if (connect) {
+            System.exit(runClient(portNumber, argList));
+        }
+
+        NumericBackend backend = null;
+        try {
+            backend = NumericBackend.of(mode);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+        if (backend.isExact() && cacheSize != null) {
+            System.err.println("--cache only applies to --mode double");
+            System.exit(2);
+        }
+
+        ResultCache cache = null;
+        if (cacheSize != null) {
+            try {
+                cache = new ResultCache(Integer.parseInt(cacheSize));
+            } catch (IllegalArgumentException ex) { // includes NumberFormatException
+                System.err.println("Invalid --cache value (positive number of entries)");
+                System.exit(2);
+            }
+        }
+
+        if (takeFlag(argList, "--coarse-clock")) {
+            HistoryEntry.setClock(EpochClock.coarse());
+        }
+
+        HistoryManager hm = null; // ephemeral: no history files, no JSON
+        if (!ephemeral) {
+            hm = new HistoryManager(historyPath);
+            hm.setCompressedSnapshots(compress);
+            hm.setBinarySnapshots(binary);
+            try {
+                if (segmentSize != null || segmentSpan != null) {
+                    hm.setSegmentation(
+                            segmentSize != null ? parseSize(segmentSize) : HistoryManager.DEFAULT_SEGMENT_BYTES,
+                            segmentSpan != null ? HistoryQuery.parseDuration(segmentSpan) : HistoryManager.DEFAULT_SEGMENT_SPAN);
+                }
+                if (retain != null || retainSize != null) {
+                    hm.setRetention(retain != null ? HistoryQuery.parseDuration(retain) : null,
+                            retainSize != null ? parseSize(retainSize) : 0);
+                    hm.enforceRetention();
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException ex) { // includes NumberFormatException
+                System.err.println("Invalid segment or retention value (sizes like 64M or 10G, durations like 12h or 30d)");
+                System.exit(2);
+            } catch (IOException ex) {
+                System.err.println("I/O error applying history retention: " + ex.getMessage());
+                System.exit(4);
+            }
+        }
+        if (takeFlag(argList, "--metrics")) {
+            Metrics metrics = Metrics.enable();
+            if (hm != null) {
+                metrics.gauge("history.bytes", hm::sizeOnDisk);
+            }
+        }
+        if (batchInput != null) {
+            // batch mode: history is only appended, never loaded
+            if (hm != null) {
+                hm.startAsync(durability);
+            }
+            System.exit(runBatch(batchInput, batchFlush, cache, backend, hm));
+        }
+        if (serve) {
+            // server mode: like batch, history is only appended
+            if (hm != null) {
+                hm.startAsync(durability);
+            }
+            System.exit(runServer(portNumber, cache, backend, hm));
         }
 
         if (argList.size() >= 1) {
             // non-interactive mode: first arg is operation
             String op = argList.get(0);
+            if ("eval".equals(op) && argList.size() >= 2) {
+                try {
+                    String expr = String.join(" ", argList.subList(1, argList.size()));
+                    System.out.println(evaluate(ExpressionCompiler.compile(expr, ExpressionParser.parse(expr)),
+                            Collections.emptyMap()));
+                } catch (ArithmeticException | IllegalArgumentException ex) {
+                    System.err.println("Error: " + ex.getMessage());
+                    System.exit(3);
+                }
+                return;
+            }
             if (argList.size() < 3) {
-                System.err.println("Usage: <op> <a> <b>\nops: add sub mul div");
+                System.err.println("Usage: <op> <a> <b>\nops: " + String.join(" ", OpCode.names()));
                 System.exit(2);
             }
             try {
-                double a = Double.parseDouble(argList.get(1));
-                double b = Double.parseDouble(argList.get(2));
-                double res = perform(op, a, b, history, hm);
-                System.out.println(res);
+                // one-shot: the entry is appended to the journal, the history is never read
+                if (backend.isExact()) {
+                    System.out.println(perform(backend, op, argList.get(1), argList.get(2), null, hm));
+                } else {
+                    double a = Double.parseDouble(argList.get(1));
+                    double b = Double.parseDouble(argList.get(2));
+                    double res = perform(op, a, b, cache, null, hm);
+                    System.out.println(res);
+                }
             } catch (NumberFormatException ex) {
+                Metrics.error();
                 System.err.println("Invalid number");
                 System.exit(2);
             } catch (ArithmeticException ex) {
+                Metrics.error();
                 System.err.println("Error: " + ex.getMessage());
                 System.exit(3);
             } catch (IOException ex) {
@@ -70,12 +218,21 @@ public class Main {
 
         // interactive mode
         Scanner sc = new Scanner(System.in);
+        ExpressionCompiler compiler = new ExpressionCompiler();
+        Map<String, Double> variables = new HashMap<>();
+        SessionHistory history = new SessionHistory(hm);
+        if (Metrics.current() != null) {
+            Metrics.current().gauge("history.entries", history::loadedSize);
+        }
+        if (hm != null) {
+            hm.startAsync(durability);
+        }
         System.out.println("Calculator CLI — type 'help' for commands");
+        loop:
         while (true) {
             System.out.print("calc> ");
-            String line = sc.nextLine();
-            if (line == null) break;
-            line = line.trim();
+            if (!sc.hasNextLine()) break;
+            String line = sc.nextLine().trim();
             if (line.isEmpty()) continue;
             String[] parts = line.split("\\s+");
             String cmd = parts[0].toLowerCase();
@@ -84,54 +241,315 @@ public class Main {
                     case "quit":
                     case "exit":
                         System.out.println("Bye");
-                        return;
+                        break loop;
                     case "help":
-                        System.out.println("Commands: add/sub/mul/div a b | history | save | quit");
+                        System.out.println("Commands: " + String.join("/", OpCode.names()) + " a b | eval expr | set name value | history [op] | history where op=div since=1h result>1e6 | save | export <file> | cache | stats | aggregate [file] | quit");
                         break;
                     case "history":
-                        for (HistoryEntry e : history) {
-                            System.out.printf("%s %s %s = %s @ %s\n", e.op, e.a, e.b, e.result, e.when);
+                        if (parts.length > 1 && parts[1].equalsIgnoreCase("where")) {
+                            String terms = line.substring(line.toLowerCase().indexOf("where") + 5);
+                            HistoryQuery query = HistoryQuery.parse(terms, EpochClock.SYSTEM.epochNanos());
+                            HistoryStore hits = history.select(query);
+                            for (HistoryEntry e : hits) {
+                                System.out.printf("%s %s %s = %s @ %s\n", e.op, e.aText(), e.bText(), e.resultText(), e.when());
+                            }
+                            System.out.println(hits.size() + " matching entries");
+                            break;
+                        }
+                        String only = parts.length > 1 ? parts[1] : null;
+                        if (hm != null) {
+                            hm.flush();
+                        }
+                        try (Stream<HistoryEntry> entries = hm != null ? hm.stream()
+                                : StreamSupport.stream(history.get().spliterator(), false)) {
+                            entries.filter(e -> only == null || only.equals(e.op))
+                                    .forEach(e -> System.out.printf("%s %s %s = %s @ %s\n", e.op, e.aText(), e.bText(), e.resultText(), e.when()));
                         }
                         break;
                     case "save":
-                        hm.save(history);
+                        if (hm == null) {
+                            System.out.println("Ephemeral session: history is not saved");
+                            break;
+                        }
+                        // every calculation is already journaled; folding the journal (rather
+                        // than rewriting from memory) keeps entries from other processes
+                        hm.compact();
                         System.out.println("Saved history to " + historyPath);
                         break;
-                    case "add":
-                    case "sub":
-                    case "mul":
-                    case "div":
+                    case "export":
+                        if (parts.length < 2) { System.out.println("Usage: export file"); break; }
+                        new BinaryHistoryFile(parts[1]).write(history.get());
+                        System.out.println("Exported " + history.get().size() + " entries to " + parts[1]);
+                        break;
+                    case "cache":
+                        System.out.println(cache != null ? cache : "Result cache disabled (start with --cache N)");
+                        break;
+                    case "stats":
+                        System.out.println(Metrics.current() != null ? Metrics.current()
+                                : "Metrics disabled (start with --metrics)");
+                        break;
+                    case "aggregate":
+                        if (parts.length > 1) {
+                            try (BinaryHistoryFile.Reader reader = new BinaryHistoryFile(parts[1]).open()) {
+                                System.out.print(HistoryAggregator.aggregate(reader));
+                            }
+                            break;
+                        }
+                        System.out.print(HistoryAggregator.aggregate(history.get()));
+                        break;
+                    case "set":
+                        if (parts.length < 3) { System.out.println("Usage: set name value"); break; }
+                        variables.put(parts[1], Double.parseDouble(parts[2]));
+                        break;
+                    case "eval":
+                        if (parts.length < 2) { System.out.println("Usage: eval expression"); break; }
+                        String expr = line.substring(parts[0].length()).trim();
+                        System.out.println("= " + evaluate(compiler.compile(expr), variables));
+                        break;
+                    default:
+                        if (OpCode.find(cmd) < 0) {
+                            System.out.println("Unknown command. Type help.");
+                            break;
+                        }
                         if (parts.length < 3) { System.out.println("Usage: " + cmd + " a b"); break; }
+                        if (backend.isExact()) {
+                            System.out.println("= " + perform(backend, cmd, parts[1], parts[2], history.ifLoaded(), hm));
+                            break;
+                        }
                         double a = Double.parseDouble(parts[1]);
                         double b = Double.parseDouble(parts[2]);
-                        double r = perform(cmd, a, b, history, hm);
+                        double r = perform(cmd, a, b, cache, history.ifLoaded(), hm);
                         System.out.println("= " + r);
-                        break;
-                    default:
-                        System.out.println("Unknown command. Type help.");
                 }
             } catch (NumberFormatException ex) {
+                Metrics.error();
                 System.out.println("Invalid number");
-            } catch (ArithmeticException ex) {
+            } catch (ArithmeticException | IllegalArgumentException ex) {
+                Metrics.error();
                 System.out.println("Error: " + ex.getMessage());
             } catch (IOException ex) {
                 System.out.println("I/O error: " + ex.getMessage());
+            } catch (UncheckedIOException ex) {
+                System.out.println("I/O error: " + ex.getCause().getMessage());
             }
         }
+        try {
+            if (hm != null) {
+                hm.close();
+            }
+        } catch (IOException ex) {
+            System.err.println("I/O error saving history: " + ex.getMessage());
+            System.exit(4);
+        }
     }
 
-    private static double perform(String op, double a, double b, List<HistoryEntry> history, HistoryManager hm) throws IOException {
-        double r;
-        switch (op) {
-            case "add": r = Calculator.add(a, b); break;
-            case "sub": r = Calculator.sub(a, b); break;
-            case "mul": r = Calculator.mul(a, b); break;
-            case "div": r = Calculator.div(a, b); break;
-            default: throw new IllegalArgumentException("Unknown op: " + op);
-        }
-        HistoryEntry e = new HistoryEntry(op, a, b, r);
-        history.add(e);
-        hm.save(history);
+    /**
+     * Remove {@code name <value>} from the argument list and return the value,
+     * or {@code defaultValue} when the option is absent.
+     */
+    private static String takeOption(List<String> argList, String name, String defaultValue) {
+        for (int i = 0; i < argList.size(); i++) {
+            if (name.equals(argList.get(i)) && i + 1 < argList.size()) {
+                String value = argList.get(i + 1);
+                // remove both args
+                argList.remove(i + 1);
+                argList.remove(i);
+                return value;
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Remove {@code name} from the argument list and return whether it was present.
+     */
+    private static boolean takeFlag(List<String> argList, String name) {
+        return argList.remove(name);
+    }
+
+    /**
+     * Parse a byte count with an optional K, M or G suffix (powers of 1024), e.g. {@code 64M}.
+     */
+    private static long parseSize(String value) {
+        int shift;
+        switch (Character.toUpperCase(value.charAt(value.length() - 1))) {
+            case 'K': shift = 10; break;
+            case 'M': shift = 20; break;
+            case 'G': shift = 30; break;
+            default: shift = 0;
+        }
+        long n = Long.parseLong(shift == 0 ? value : value.substring(0, value.length() - 1));
+        if (n <= 0 || n > Long.MAX_VALUE >> shift) {
+            throw new IllegalArgumentException("Invalid size: " + value);
+        }
+        return n << shift;
+    }
+
+    private static AsyncHistoryWriter.Durability parseDurability(String value) {
+        switch (value) {
+            case "each": return AsyncHistoryWriter.Durability.EACH_COMMIT;
+            case "periodic": return AsyncHistoryWriter.Durability.PERIODIC;
+            case "none": return AsyncHistoryWriter.Durability.NONE;
+            default: return null;
+        }
+    }
+
+    private static int runBatch(String input, String flushEvery, ResultCache cache, NumericBackend backend,
+                                HistoryManager hm) {
+        int n;
+        try {
+            n = Integer.parseInt(flushEvery);
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid --batch-flush value");
+            return 2;
+        }
+        BatchRunner runner = new BatchRunner(hm, n, cache, backend);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        try (Reader in = "-".equals(input)
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : new FileReader(input, StandardCharsets.UTF_8)) {
+            long failed = runner.run(in, out);
+            out.flush();
+            if (cache != null) {
+                System.err.println(cache);
+            }
+            if (hm != null) {
+                hm.close();
+            }
+            if (Metrics.current() != null) {
+                System.err.println(Metrics.current());
+            }
+            return failed == 0 ? 0 : 3;
+        } catch (IOException ex) {
+            System.err.println("I/O error: " + ex.getMessage());
+            return 4;
+        }
+    }
+
+    private static int runServer(int port, ResultCache cache, NumericBackend backend, HistoryManager hm) {
+        CalculatorServer server;
+        try {
+            server = new CalculatorServer(port, hm, cache, backend);
+        } catch (IOException ex) {
+            System.err.println("Cannot listen on port " + port + ": " + ex.getMessage());
+            return 4;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                if (hm != null) {
+                    hm.close();
+                }
+            } catch (IOException ex) {
+                System.err.println("I/O error saving history: " + ex.getMessage());
+            }
+        }));
+        System.out.println("Listening on 127.0.0.1:" + server.getPort());
+        try {
+            server.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    private static int runClient(int port, List<String> request) {
+        if (request.isEmpty()) {
+            System.err.println("Usage: --connect <op> <a> <b> | --connect eval <expr>");
+            return 2;
+        }
+        String response;
+        try {
+            response = CalculatorClient.call(port, String.join(" ", request));
+        } catch (IOException ex) {
+            System.err.println("Cannot reach server on port " + port + ": " + ex.getMessage());
+            return 4;
+        }
+        int space = response.indexOf(' ');
+        String status = space < 0 ? response : response.substring(0, space);
+        String body = space < 0 ? "" : response.substring(space + 1);
+        if ("0".equals(status)) {
+            System.out.println(body);
+            return 0;
+        }
+        System.err.println("2".equals(status) ? body : "Error: " + body); // same output as local mode
+        try {
+            return Integer.parseInt(status);
+        } catch (NumberFormatException ex) {
+            return 4; // not a calculator server
+        }
+    }
+
+    private static double evaluate(CompiledExpression ce, Map<String, Double> variables) {
+        double[] values = new double[ce.variables().size()];
+        for (int i = 0; i < values.length; i++) {
+            Double v = variables.get(ce.variables().get(i));
+            if (v == null) {
+                throw new IllegalArgumentException("Undefined variable: " + ce.variables().get(i));
+            }
+            values[i] = v;
+        }
+        return ce.evaluate(values);
+    }
+
+    static double perform(String op, double a, double b, HistoryStore history, HistoryManager hm) throws IOException {
+        return perform(op, a, b, null, history, hm);
+    }
+
+    /**
+     * Compute {@code op} (through {@code cache} unless it is null) and record it in the
+     * history: in {@code history} unless it is null, and through {@code hm} unless it is null.
+     */
+    static double perform(String op, double a, double b, ResultCache cache, HistoryStore history,
+                          HistoryManager hm) throws IOException {
+        Metrics m = Metrics.current();
+        long start = m != null ? System.nanoTime() : 0;
+        byte code = OpCode.of(op);
+        double r = cache != null ? cache.apply(code, a, b) : Calculator.apply(code, a, b);
+        HistoryEntry e = new HistoryEntry(OpCode.name(code), a, b, r);
+        if (m != null) {
+            start = m.computed(code, start);
+        }
+        record(e, history, hm, m, start);
+        return r;
+    }
+
+    /**
+     * Compute {@code op} with an exact backend on decimal operands and record it, with its
+     * exact text, in the history.
+     *
+     * @return the result as decimal text
+     */
+    static String perform(NumericBackend backend, String op, String a, String b, HistoryStore history,
+                          HistoryManager hm) throws IOException {
+        Metrics m = Metrics.current();
+        long start = m != null ? System.nanoTime() : 0;
+        String na = backend.normalize(a); // invalid numbers are reported before unknown ops
+        String nb = backend.normalize(b);
+        byte code = OpCode.of(op);
+        String r = backend.apply(code, na, nb);
+        HistoryEntry e = new HistoryEntry(OpCode.name(code), na, nb, r);
+        if (m != null) {
+            start = m.computed(code, start);
+        }
+        record(e, history, hm, m, start);
         return r;
     }
+
+    /**
+     * Add {@code e} to {@code history} and append it to {@code hm}; either may be null (history
+     * not in memory, ephemeral run).
+     */
+    private static void record(HistoryEntry e, HistoryStore history, HistoryManager hm, Metrics m, long start)
+            throws IOException {
+        if (history != null) {
+            history.add(e);
+        }
+        if (hm != null) {
+            hm.append(e);
+            if (m != null) {
+                m.persisted(start);
+            }
+        }
+    }
 }
@@ -0,0 +1,232 @@
+package calculator;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide instrumentation, off unless {@link #enable()} was called (CLI:
+ * {@code --metrics}).
+ *
+ * Instrumented code reads {@link #current()} once and skips all timing when it is null, so
+ * the disabled cost is one field read and a branch. When enabled it records:
+ * <ul>
+ *   <li>successful calculations per operation, and failed ones;</li>
+ *   <li>latency histograms ({@link LatencyHistogram}) for {@code compute} (the arithmetic,
+ *       including the result cache; in batch mode the whole line, parsing and formatting
+ *       included), {@code persist} (recording entries in the history as seen by the
+ *       caller: queueing them, or writing them when appends are synchronous; one batch
+ *       flush counts once),
+ *       {@code journal} (each journal write, one per group commit), {@code snapshot}
+ *       (snapshot rewrites) and {@code load} (full history reads);</li>
+ *   <li>gauges registered by the caller, e.g. history entries and bytes on disk.</li>
+ * </ul>
+ * Everything is also exposed over JMX through {@link MetricsMXBean}.
+ */
+public final class Metrics implements MetricsMXBean {
+    public static final String OBJECT_NAME = "calculator:type=Metrics";
+
+    private static volatile Metrics current;
+
+    private final LongAdder[] operations = new LongAdder[OpCode.COUNT];
+    private final LongAdder errors = new LongAdder();
+    public final LatencyHistogram compute = new LatencyHistogram();
+    public final LatencyHistogram persist = new LatencyHistogram();
+    public final LatencyHistogram journal = new LatencyHistogram();
+    public final LatencyHistogram snapshot = new LatencyHistogram();
+    public final LatencyHistogram load = new LatencyHistogram();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    Metrics() {
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * The enabled metrics, or null when instrumentation is off.
+     */
+    public static Metrics current() {
+        return current;
+    }
+
+    /**
+     * Turn instrumentation on (idempotent) and register the MBean.
+     */
+    public static synchronized Metrics enable() {
+        Metrics m = current;
+        if (m == null) {
+            m = new Metrics();
+            m.register();
+            current = m;
+        }
+        return m;
+    }
+
+    /**
+     * Turn instrumentation off and unregister the MBean.
+     */
+    public static synchronized void disable() {
+        if (current != null) {
+            current.unregister();
+            current = null;
+        }
+    }
+
+    /**
+     * Count a failed calculation, if metrics are enabled.
+     */
+    public static void error() {
+        Metrics m = current;
+        if (m != null) {
+            m.countError();
+        }
+    }
+
+    /**
+     * Record a successful calculation of {@code op} that started at {@code startNanos}.
+     *
+     * @return the current {@link System#nanoTime()}, to time what follows
+     */
+    public long computed(byte op, long startNanos) {
+        long now = System.nanoTime();
+        compute.record(now - startNanos);
+        operations[op].increment();
+        return now;
+    }
+
+    /**
+     * Record the persistence of calculations that started at {@code startNanos}.
+     */
+    public void persisted(long startNanos) {
+        persist.record(System.nanoTime() - startNanos);
+    }
+
+    public void countOperation(byte op) {
+        operations[op].increment();
+    }
+
+    public void countError() {
+        errors.increment();
+    }
+
+    public long operationCount(byte op) {
+        return operations[op].sum();
+    }
+
+    /**
+     * Publish {@code value} as gauge {@code name}, replacing any gauge of that name.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (byte op = 0; op < operations.length; op++) {
+            counts.put(OpCode.name(op), operations[op].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public Map<String, Long> getLatencies() {
+        Map<String, Long> latencies = new LinkedHashMap<>();
+        for (Map.Entry<String, LatencyHistogram> h : histograms().entrySet()) {
+            String name = h.getKey();
+            LatencyHistogram hist = h.getValue();
+            latencies.put(name + ".count", hist.count());
+            latencies.put(name + ".mean", Math.round(hist.mean()));
+            latencies.put(name + ".p50", hist.percentile(50));
+            latencies.put(name + ".p99", hist.percentile(99));
+            latencies.put(name + ".p99.9", hist.percentile(99.9));
+            latencies.put(name + ".max", hist.max());
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        gauges.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(g -> values.put(g.getKey(), g.getValue().getAsLong()));
+        return values;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder("operations:");
+        getOperationCounts().forEach((op, n) -> sb.append(' ').append(op).append('=').append(n));
+        sb.append(" errors=").append(getErrors());
+        for (Map.Entry<String, LatencyHistogram> h : histograms().entrySet()) {
+            sb.append('\n').append(h.getKey()).append(": ").append(h.getValue());
+        }
+        Map<String, Long> g = getGauges();
+        if (!g.isEmpty()) {
+            sb.append("\ngauges:");
+            g.forEach((name, v) -> sb.append(' ').append(name).append('=').append(v));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder op : operations) {
+            op.reset();
+        }
+        errors.reset();
+        for (LatencyHistogram h : histograms().values()) {
+            h.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getReport();
+    }
+
+    private Map<String, LatencyHistogram> histograms() {
+        Map<String, LatencyHistogram> all = new LinkedHashMap<>();
+        all.put("compute", compute);
+        all.put("persist", persist);
+        all.put("journal", journal);
+        all.put("snapshot", snapshot);
+        all.put("load", load);
+        return all;
+    }
+
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException ex) {
+            System.err.println("Cannot register metrics MBean: " + ex.getMessage());
+        }
+    }
+
+    private void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException ex) {
+            // not registered
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package calculator;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link Metrics}, registered as {@value Metrics#OBJECT_NAME}. Latencies are
+ * in nanoseconds, keyed {@code <histogram>.<statistic>} (e.g. {@code compute.p99}).
+ */
+public interface MetricsMXBean {
+
+    /** Successful calculations per operation. */
+    Map<String, Long> getOperationCounts();
+
+    /** Calculations that failed (invalid number, division by zero, ...). */
+    long getErrors();
+
+    /** Count, mean, p50, p99, p99.9 and max of every latency histogram. */
+    Map<String, Long> getLatencies();
+
+    /** Current value of every gauge (history entries, bytes on disk, ...). */
+    Map<String, Long> getGauges();
+
+    /** Human-readable report, as printed by the {@code stats} command. */
+    String getReport();
+
+    /** Zero counters and histograms; gauges are unaffected. */
+    void reset();
+}
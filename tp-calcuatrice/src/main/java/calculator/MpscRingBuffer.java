@@ -0,0 +1,87 @@
+package calculator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ *
+ * Each slot carries a sequence number (after D. Vyukov's bounded queue): a producer claims
+ * the next position with one CAS on the tail and publishes its item by advancing the
+ * slot's sequence; the consumer reads the slot once the sequence says it is full and
+ * releases it for the producer one lap later. No locks are taken, and an uncontended
+ * {@link #offer} is one CAS plus two stores.
+ *
+ * {@link #poll()} must only ever be called from one thread at a time.
+ */
+final class MpscRingBuffer<T> {
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // consumer only
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    MpscRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        items = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Add {@code item} unless the buffer is full.
+     */
+    boolean offer(T item) {
+        while (true) {
+            long pos = tail.get();
+            int slot = (int) pos & mask;
+            long diff = sequences.get(slot) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    items.lazySet(slot, item);
+                    // volatile store publishes the item and orders it before any later
+                    // volatile read by the producer (see AsyncHistoryWriter wake-ups)
+                    sequences.set(slot, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false; // the consumer has not released this slot yet: full
+            }
+            // else another producer claimed pos; retry with the new tail
+        }
+    }
+
+    /**
+     * Remove the oldest item, or return null when empty. Single consumer only.
+     */
+    T poll() {
+        long pos = head;
+        int slot = (int) pos & mask;
+        if (sequences.get(slot) != pos + 1) {
+            return null;
+        }
+        T item = items.get(slot);
+        items.lazySet(slot, null);
+        sequences.lazySet(slot, pos + mask + 1); // free for the producer one lap later
+        head = pos + 1;
+        return item;
+    }
+
+    /**
+     * Whether no published item is waiting. Exact only from the consumer thread.
+     */
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+}
@@ -0,0 +1,75 @@
+package calculator;
+
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Number representation used for calculations, chosen with {@code --mode}:
+ * <ul>
+ *   <li>{@code double} (default): binary floating point, see {@link Calculator};</li>
+ *   <li>{@code decimal[:precision]}: {@link java.math.BigDecimal} rounded to
+ *       {@code precision} significant digits (34 by default), see {@link DecimalBackend};</li>
+ *   <li>{@code fixed[:scale]}: decimal fixed point held in a {@code long} with
+ *       {@code scale} fractional digits (2 by default), see {@link FixedPointBackend}.</li>
+ * </ul>
+ * Operands and results are exchanged as decimal text, which the exact backends keep in
+ * the history unchanged.
+ */
+public interface NumericBackend {
+
+    /**
+     * Name as accepted by {@link #of(String)}, e.g. {@code fixed:2}.
+     */
+    String name();
+
+    /**
+     * Whether results are exact decimals that must be stored as text.
+     */
+    boolean isExact();
+
+    /**
+     * The operand as this backend reads it, e.g. rounded to the fixed-point scale.
+     *
+     * @throws NumberFormatException if it is not a number
+     */
+    String normalize(String value);
+
+    /**
+     * Apply {@code op} to decimal operands and return the result as decimal text.
+     *
+     * @throws NumberFormatException if an operand is not a number
+     * @throws ArithmeticException on division by zero or overflow
+     * @throws IllegalArgumentException for an unknown operation
+     */
+    String apply(byte op, String a, String b);
+
+    /**
+     * Parse a backend name.
+     *
+     * @throws IllegalArgumentException for an unknown name or bad parameter
+     */
+    static NumericBackend of(String spec) {
+        int colon = spec.indexOf(':');
+        String kind = colon < 0 ? spec : spec.substring(0, colon);
+        String param = colon < 0 ? null : spec.substring(colon + 1);
+        try {
+            switch (kind) {
+                case "double":
+                    if (param != null) break;
+                    return DoubleBackend.INSTANCE;
+                case "decimal":
+                    int precision = param == null ? MathContext.DECIMAL128.getPrecision() : Integer.parseInt(param);
+                    if (precision <= 0) break;
+                    return new DecimalBackend(new MathContext(precision, RoundingMode.HALF_EVEN));
+                case "fixed":
+                    return new FixedPointBackend(param == null ? 2 : Integer.parseInt(param));
+                default:
+                    break;
+            }
+        } catch (NumberFormatException ex) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid mode: " + spec
+                + " (double, decimal[:precision] or fixed[:scale])");
+    }
+}
@@ -0,0 +1,159 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Compact one-byte codes for the calculator operations, used by the in-memory history and
+ * its indexes, and the registry that resolves operation names to them.
+ *
+ * The built-in operations have fixed codes {@code 0} to {@code 3}. Operations found by
+ * {@link ServiceLoader} (see {@link Operation}) follow, in name order, so their codes only
+ * stay the same for the same set of installed operations: files store operation names (or a
+ * table of the names behind their codes) and translate them on reading, and an operation no
+ * longer installed reads as {@link #UNKNOWN}. Names are resolved once per calculation; the
+ * code then selects the operator without further string handling.
+ */
+public final class OpCode {
+    public static final byte ADD = 0;
+    public static final byte SUB = 1;
+    public static final byte MUL = 2;
+    public static final byte DIV = 3;
+    /**
+     * Code of an operation the registry does not know, such as a plugin operation recorded in
+     * a history and uninstalled since; never returned by {@link #find(String)}, and rejected
+     * by {@link #name(byte)} and {@link #operator(byte)}. Holders of such entries keep the
+     * name themselves.
+     */
+    public static final byte UNKNOWN = -1;
+    /** Number of codes; valid codes are {@code 0} to {@code COUNT - 1}. */
+    public static final int COUNT;
+
+    private static final String[] NAMES;
+    private static final DoubleBinaryOperator[] OPERATORS;
+    private static final Map<String, Byte> PLUGGED = new HashMap<>();
+
+    static {
+        List<String> names = new ArrayList<>(Arrays.asList("add", "sub", "mul", "div"));
+        List<DoubleBinaryOperator> operators = new ArrayList<>(Arrays.<DoubleBinaryOperator>asList(
+                Calculator::add, Calculator::sub, Calculator::mul, Calculator::div));
+        List<Operation> found = new ArrayList<>();
+        for (Operation op : ServiceLoader.load(Operation.class)) {
+            found.add(op);
+        }
+        found.sort(Comparator.comparing(Operation::name));
+        for (Operation op : found) {
+            String name = op.name();
+            if (name == null || !name.matches("[a-z][a-z0-9]*")) {
+                throw new ServiceConfigurationError("Invalid operation name \"" + name + "\" in " + op.getClass().getName());
+            }
+            if (names.contains(name)) {
+                throw new ServiceConfigurationError("Duplicate operation \"" + name + "\" in " + op.getClass().getName());
+            }
+            if (names.size() > Byte.MAX_VALUE) {
+                throw new ServiceConfigurationError("Too many operations (at most " + (Byte.MAX_VALUE + 1) + ")");
+            }
+            PLUGGED.put(name, (byte) names.size());
+            names.add(name);
+            operators.add(op);
+        }
+        NAMES = names.toArray(new String[0]);
+        OPERATORS = operators.toArray(new DoubleBinaryOperator[0]);
+        COUNT = NAMES.length;
+    }
+
+    private OpCode() {
+    }
+
+    /**
+     * Resolve an operation name to its code.
+     *
+     * @throws IllegalArgumentException for an unknown operation
+     */
+    public static byte of(String op) {
+        byte code = find(op);
+        if (code < 0) {
+            throw new IllegalArgumentException("Unknown op: " + op);
+        }
+        return code;
+    }
+
+    /**
+     * Resolve an operation name to its code.
+     *
+     * @return the code, or {@code -1} for an unknown operation
+     */
+    public static byte find(String op) {
+        switch (op) {
+            case "add": return ADD;
+            case "sub": return SUB;
+            case "mul": return MUL;
+            case "div": return DIV;
+            default:
+                Byte code = PLUGGED.get(op);
+                return code != null ? code : -1;
+        }
+    }
+
+    /**
+     * Recognise the operation name in {@code chars[from, to)} without allocating.
+     *
+     * @return the code, or {@code -1} if the characters are not an operation name
+     */
+    public static byte of(char[] chars, int from, int to) {
+        for (byte code = 0; code < NAMES.length; code++) {
+            String name = NAMES[code];
+            if (name.length() != to - from) {
+                continue;
+            }
+            int i = 0;
+            while (i < name.length() && chars[from + i] == name.charAt(i)) {
+                i++;
+            }
+            if (i == name.length()) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Operation name for a code.
+     *
+     * @throws IllegalArgumentException for an unknown code
+     */
+    public static String name(byte code) {
+        return NAMES[check(code)];
+    }
+
+    /**
+     * The function computing an operation, cached once per code.
+     *
+     * @throws IllegalArgumentException for an unknown code
+     */
+    public static DoubleBinaryOperator operator(byte code) {
+        return OPERATORS[check(code)];
+    }
+
+    /**
+     * Every operation name, by code.
+     */
+    public static List<String> names() {
+        return Collections.unmodifiableList(Arrays.asList(NAMES));
+    }
+
+    private static int check(byte code) {
+        if (code < 0 || code >= COUNT) {
+            throw new IllegalArgumentException("Unknown op code: " + code);
+        }
+        return code;
+    }
+}
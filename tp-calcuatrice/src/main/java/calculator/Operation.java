@@ -0,0 +1,21 @@
+package calculator;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * A binary operation on doubles plugged into the calculator.
+ *
+ * Implementations are found with {@link java.util.ServiceLoader}: put a jar on the class path
+ * that lists them in {@code META-INF/services/calculator.Operation}, each with a public
+ * no-argument constructor. They get {@link OpCode}s after the built-in operations, in name
+ * order, and can then be used like {@code add} from the command line, interactive sessions,
+ * batches and the server, in {@code double} mode; exact modes only know the built-in ones.
+ */
+public interface Operation extends DoubleBinaryOperator {
+    /**
+     * Name used on the command line and in the history: a lower-case letter followed by
+     * lower-case letters and digits. A name that is also an interactive command (such as
+     * {@code save}) is only usable outside interactive sessions.
+     */
+    String name();
+}
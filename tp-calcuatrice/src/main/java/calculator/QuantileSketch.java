@@ -0,0 +1,233 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable streaming quantile estimator with relative-error guarantees (DDSketch).
+ *
+ * Values are counted in logarithmic buckets: bucket {@code i} holds magnitudes in
+ * {@code (gamma^(i-1), gamma^i]} with {@code gamma = (1 + a) / (1 - a)}, so every quantile
+ * is returned within relative error {@code a} of a value of the right rank, positive and
+ * negative values alike (zeros and infinities are counted apart). Memory is bounded by
+ * {@code maxBuckets} per sign: past that, the smallest magnitudes are folded together,
+ * which only affects accuracy for quantiles close to zero. Two sketches with the same
+ * parameters {@link #merge merge} exactly, so partial sketches can be built in parallel.
+ *
+ * NaN is ignored. Not thread-safe.
+ */
+public final class QuantileSketch {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    public static final int DEFAULT_MAX_BUCKETS = 2048;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final int maxBuckets;
+    private final Store positive;
+    private final Store negative;
+    private long zeros;
+    private long negativeInfinities;
+    private long positiveInfinities;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BUCKETS);
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBuckets) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1) || maxBuckets < 1) {
+            throw new IllegalArgumentException("Invalid sketch parameters: " + relativeAccuracy + ", " + maxBuckets);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.maxBuckets = maxBuckets;
+        this.positive = new Store(maxBuckets);
+        this.negative = new Store(maxBuckets);
+    }
+
+    public void add(double v) {
+        if (Double.isNaN(v)) {
+            return;
+        }
+        if (Double.isInfinite(v)) {
+            if (v > 0) {
+                positiveInfinities++;
+            } else {
+                negativeInfinities++;
+            }
+        } else if (v > 0) {
+            positive.add(index(v), 1);
+        } else if (v < 0) {
+            negative.add(index(-v), 1);
+        } else {
+            zeros++;
+        }
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    /**
+     * Add every value counted by {@code other}, which must have the same parameters.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy || other.maxBuckets != maxBuckets) {
+            throw new IllegalArgumentException("Cannot merge sketches with different parameters");
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeros += other.zeros;
+        negativeInfinities += other.negativeInfinities;
+        positiveInfinities += other.positiveInfinities;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return negativeInfinities + negative.total + zeros + positive.total + positiveInfinities;
+    }
+
+    /**
+     * Estimated value at quantile {@code q} (0 to 1), or NaN when empty. The extremes are
+     * the exact minimum and maximum.
+     */
+    public double quantile(double q) {
+        long n = count();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (Math.max(0, Math.min(1, q)) * (n - 1)); // 0-based
+        if (rank == 0) {
+            return min;
+        }
+        if (rank == n - 1) {
+            return max;
+        }
+        if (rank < negativeInfinities) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        rank -= negativeInfinities;
+        double v;
+        if (rank < negative.total) {
+            // most negative first: walk negative magnitudes from the largest
+            v = -value(negative.indexOfRank(negative.total - 1 - rank));
+        } else if (rank < negative.total + zeros) {
+            v = 0;
+        } else if (rank < negative.total + zeros + positive.total) {
+            v = value(positive.indexOfRank(rank - negative.total - zeros));
+        } else {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.max(min, Math.min(max, v));
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    /** Representative magnitude of a bucket, within the relative accuracy of all it holds. */
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * Dense counts for a contiguous range of bucket indexes, at most {@code maxBuckets}
+     * wide; lower indexes are collapsed into the lowest kept one.
+     */
+    private static final class Store {
+        private final int maxBuckets;
+        private long[] counts = new long[0];
+        private int offset; // bucket index of counts[0]
+        private int lo = Integer.MAX_VALUE; // lowest and highest index with a count
+        private int hi = Integer.MIN_VALUE;
+        long total;
+
+        Store(int maxBuckets) {
+            this.maxBuckets = maxBuckets;
+        }
+
+        void add(int index, long n) {
+            if (total == 0) {
+                if (counts.length == 0) {
+                    counts = new long[Math.min(64, maxBuckets)];
+                }
+                offset = index - counts.length / 2;
+                lo = hi = index;
+            } else if (index > hi) {
+                int newLo = Math.max(lo, index - maxBuckets + 1);
+                collapseBelow(newLo);
+                hi = index;
+            } else if (index < lo) {
+                index = Math.max(index, hi - maxBuckets + 1); // beyond the width: fold into the lowest
+                lo = index;
+            }
+            ensureRange(lo, hi);
+            counts[index - offset] += n;
+            total += n;
+        }
+
+        void merge(Store other) {
+            for (int i = other.lo; other.total > 0 && i <= other.hi; i++) {
+                long n = other.counts[i - other.offset];
+                if (n != 0) {
+                    add(i, n);
+                }
+            }
+        }
+
+        /** Bucket index holding the value of 0-based {@code rank} in ascending index order. */
+        int indexOfRank(long rank) {
+            long seen = 0;
+            for (int i = lo; i <= hi; i++) {
+                seen += counts[i - offset];
+                if (seen > rank) {
+                    return i;
+                }
+            }
+            return hi;
+        }
+
+        /** Fold the counts of indexes below {@code newLo} into {@code newLo}. */
+        private void collapseBelow(int newLo) {
+            if (newLo <= lo) {
+                return;
+            }
+            long folded = 0;
+            for (int i = lo; i < newLo && i <= hi; i++) {
+                folded += counts[i - offset];
+                counts[i - offset] = 0;
+            }
+            lo = newLo;
+            ensureRange(lo, Math.max(hi, lo));
+            counts[lo - offset] += folded;
+        }
+
+        /** Make {@code [from, to]} addressable, moving the window or growing it. */
+        private void ensureRange(int from, int to) {
+            if (from >= offset && to < offset + counts.length) {
+                return;
+            }
+            int needed = to - from + 1;
+            int length = counts.length;
+            while (length < needed) {
+                length *= 2;
+            }
+            length = Math.max(length, needed);
+            long[] grown = new long[length];
+            int newOffset = from - (length - needed) / 2;
+            for (int i = Math.max(lo, offset); i <= Math.min(hi, offset + counts.length - 1); i++) {
+                if (i >= newOffset && i < newOffset + length) {
+                    grown[i - newOffset] = counts[i - offset];
+                }
+            }
+            counts = grown;
+            offset = newOffset;
+        }
+
+        @Override
+        public String toString() {
+            return "Store[" + lo + ".." + hi + ", total=" + total + ", " + Arrays.toString(counts) + "]";
+        }
+    }
+}
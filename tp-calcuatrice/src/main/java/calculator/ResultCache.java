@@ -0,0 +1,211 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Bounded memoisation of {@link Calculator} results, keyed on {@code (op, a, b)}.
+ *
+ * Keys and results live in primitive arrays (operands are compared by their bit
+ * patterns, so {@code 0.0} and {@code -0.0} are different keys), looked up through an
+ * open-addressing table with linear probing. Entries form an intrusive doubly-linked list
+ * in recency order; when the cache is full the least recently used one is evicted.
+ * Operations that throw (division by zero, unknown op) are not cached.
+ *
+ * Not thread-safe.
+ */
+public class ResultCache {
+    private static final int NIL = -1;
+
+    private final int capacity;
+    // entries, indexed by node
+    private final byte[] ops;
+    private final long[] as;
+    private final long[] bs;
+    private final double[] results;
+    private final int[] prev;
+    private final int[] next;
+    // hash table of node + 1, 0 meaning empty
+    private final int[] table;
+    private final int mask;
+
+    private int size;
+    private int head = NIL; // most recently used
+    private int tail = NIL; // least recently used
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ResultCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        ops = new byte[capacity];
+        as = new long[capacity];
+        bs = new long[capacity];
+        results = new double[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+        // load factor at most 0.5 keeps probe sequences short
+        int tableSize = Integer.highestOneBit(Math.max(capacity * 2 - 1, 1)) << 1;
+        table = new int[tableSize];
+        mask = tableSize - 1;
+    }
+
+    /**
+     * Result of {@code op} on {@code a} and {@code b}, from the cache or computed.
+     *
+     * @throws IllegalArgumentException for an unknown operation
+     * @throws ArithmeticException for a division by zero
+     */
+    public double apply(String op, double a, double b) {
+        return apply(OpCode.of(op), a, b);
+    }
+
+    public double apply(byte op, double a, double b) {
+        long aBits = Double.doubleToRawLongBits(a);
+        long bBits = Double.doubleToRawLongBits(b);
+        int slot = hash(op, aBits, bBits) & mask;
+        for (int t; (t = table[slot]) != 0; slot = (slot + 1) & mask) {
+            int node = t - 1;
+            if (ops[node] == op && as[node] == aBits && bs[node] == bBits) {
+                hits++;
+                moveToFront(node);
+                return results[node];
+            }
+        }
+        misses++;
+        double r = Calculator.apply(op, a, b);
+        int node;
+        if (size < capacity) {
+            node = size++;
+        } else {
+            node = tail;
+            unlink(node);
+            removeFromTable(node);
+            evictions++;
+            // removal may have shifted entries into our probe sequence; find a free slot again
+            slot = hash(op, aBits, bBits) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        ops[node] = op;
+        as[node] = aBits;
+        bs[node] = bBits;
+        results[node] = r;
+        table[slot] = node + 1;
+        linkFirst(node);
+        return r;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Fraction of lookups answered from the cache, {@code 0} before the first lookup.
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Drop every entry. Counters are kept.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+        head = NIL;
+        tail = NIL;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cache: %d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                size, capacity, hits, misses, hitRate() * 100, evictions);
+    }
+
+    private static int hash(byte op, long aBits, long bBits) {
+        long h = aBits * 0x9E3779B97F4A7C15L;
+        h ^= Long.rotateLeft(bBits * 0xC2B2AE3D27D4EB4FL, 31);
+        h += op;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Remove {@code node} from the table, shifting back later entries of its probe
+     * sequence so that lookups never stop at the hole (no tombstones).
+     */
+    private void removeFromTable(int node) {
+        int hole = hash(ops[node], as[node], bs[node]) & mask;
+        while (table[hole] != node + 1) {
+            hole = (hole + 1) & mask;
+        }
+        table[hole] = 0;
+        for (int j = (hole + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int other = table[j] - 1;
+            int home = hash(ops[other], as[other], bs[other]) & mask;
+            // move it into the hole unless its home lies cyclically in (hole, j]
+            boolean reachable = hole <= j ? (home > hole && home <= j) : (home > hole || home <= j);
+            if (!reachable) {
+                table[hole] = table[j];
+                table[j] = 0;
+                hole = j;
+            }
+        }
+    }
+
+    private void moveToFront(int node) {
+        if (node != head) {
+            unlink(node);
+            linkFirst(node);
+        }
+    }
+
+    private void linkFirst(int node) {
+        prev[node] = NIL;
+        next[node] = head;
+        if (head != NIL) {
+            prev[head] = node;
+        }
+        head = node;
+        if (tail == NIL) {
+            tail = node;
+        }
+    }
+
+    private void unlink(int node) {
+        int p = prev[node];
+        int n = next[node];
+        if (p != NIL) {
+            next[p] = n;
+        } else {
+            head = n;
+        }
+        if (n != NIL) {
+            prev[n] = p;
+        } else {
+            tail = p;
+        }
+    }
+}
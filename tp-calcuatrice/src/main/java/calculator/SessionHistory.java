@@ -0,0 +1,93 @@
+package calculator;
+
+import java.io.IOException;
+
+/**
+ * History of an interactive session, read from disk only when a command first needs it.
+ *
+ * Until then calculations only go to the journal, which the eventual load replays, so
+ * nothing is lost or counted twice. Without a {@link HistoryManager} (ephemeral sessions)
+ * the history starts empty and lives in memory only.
+ */
+class SessionHistory {
+    private final HistoryManager hm;
+    private HistoryStore store; // null until loaded
+    private HistoryIndex index; // ephemeral sessions only
+
+    SessionHistory(HistoryManager hm) {
+        this.hm = hm;
+        if (hm == null) {
+            store = new HistoryStore();
+        }
+    }
+
+    /**
+     * The whole history, loading it on the first call.
+     */
+    HistoryStore get() throws IOException {
+        if (store == null) {
+            hm.flush(); // the journal must hold this session's entries before it is read
+            store = hm.loadStore();
+        }
+        return store;
+    }
+
+    /**
+     * The history if it is in memory, else null: new entries then only need journaling.
+     */
+    HistoryStore ifLoaded() {
+        return store;
+    }
+
+    /**
+     * Number of entries in memory, {@code 0} before loading.
+     */
+    long loadedSize() {
+        HistoryStore s = store;
+        return s != null ? s.size() : 0;
+    }
+
+    /**
+     * Entries matching {@code query}, in history order. While the history is not in memory, a
+     * query bounded in time reads only that range (only the segments covering it, for a
+     * segmented history) and leaves the history unloaded.
+     */
+    HistoryStore select(HistoryQuery query) throws IOException {
+        HistoryStore s;
+        int[] hits;
+        if (store == null && (query.fromNanos() != Long.MIN_VALUE || query.toNanos() != Long.MAX_VALUE)) {
+            hm.flush();
+            s = hm.loadStore(query.fromNanos(), query.toNanos());
+            HistoryIndex range = new HistoryIndex();
+            range.update(s);
+            hits = query.execute(s, range);
+        } else {
+            s = get();
+            hits = query(query);
+        }
+        HistoryStore selected = new HistoryStore(hits.length);
+        HistoryEntry e = new HistoryEntry(null, 0, 0, 0, 0L);
+        for (int i : hits) {
+            selected.add(s.get(i, e));
+        }
+        return selected;
+    }
+
+    /**
+     * Run {@code query} over the whole history, loaded in memory, with the index of the
+     * history manager, or one kept only in memory for ephemeral sessions.
+     *
+     * @return matching positions in {@link #get()}
+     */
+    int[] query(HistoryQuery query) throws IOException {
+        HistoryStore s = get();
+        if (hm != null) {
+            return hm.query(s, query);
+        }
+        if (index == null) {
+            index = new HistoryIndex();
+        }
+        index.update(s);
+        return query.execute(s, index);
+    }
+}
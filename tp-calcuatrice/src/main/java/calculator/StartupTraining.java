@@ -0,0 +1,48 @@
+package calculator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Representative run recorded by the {@code fast-start} Maven profile to build its AppCDS
+ * archive: whatever classes it loads are archived, so it goes through the usual paths of
+ * {@link Main} (one-shot calculations in each numeric mode, an expression, an interactive
+ * session that reads, queries, aggregates and compacts the history) against a throwaway
+ * history directory.
+ */
+final class StartupTraining {
+    private static final String SESSION = "sub 5 3\nhistory\nhistory where op=add\naggregate\nsave\nquit\n";
+
+    private StartupTraining() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("calc-training");
+        String history = dir.resolve("history.json").toString();
+        PrintStream out = System.out;
+        InputStream in = System.in;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Main.main(new String[] {"--history", history, "add", "2", "3"});
+            Main.main(new String[] {"--history", history, "--mode", "decimal", "div", "1", "3"});
+            Main.main(new String[] {"--history", history, "--mode", "fixed", "mul", "1.5", "2"});
+            Main.main(new String[] {"--ephemeral", "eval", "(2+3)*4/2"});
+            System.setIn(new ByteArrayInputStream(SESSION.getBytes(StandardCharsets.UTF_8)));
+            Main.main(new String[] {"--history", history});
+        } finally {
+            System.setOut(out);
+            System.setIn(in);
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
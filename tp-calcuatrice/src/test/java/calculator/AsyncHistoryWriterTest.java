@@ -0,0 +1,133 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the AsyncHistoryWriter class and asynchronous HistoryManager appends.
+ * Tests group commits, flush/close semantics and durability modes.
+ */
+@DisplayName("AsyncHistoryWriter Tests")
+public class AsyncHistoryWriterTest {
+
+    /** Records every commit made by the writer thread. */
+    private static final class RecordingSink implements AsyncHistoryWriter.Sink {
+        final List<HistoryEntry> written = Collections.synchronizedList(new ArrayList<>());
+        final List<Boolean> syncs = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void commit(List<HistoryEntry> batch, boolean sync) {
+            written.addAll(batch);
+            syncs.add(sync);
+        }
+    }
+
+    @Test
+    @DisplayName("should group-commit queued entries")
+    void testGroupCommit() throws IOException {
+        RecordingSink sink = new RecordingSink();
+        AsyncHistoryWriter writer = new AsyncHistoryWriter(sink, AsyncHistoryWriter.Durability.NONE, 1000, 100, 50, 1000);
+        for (int i = 0; i < 500; i++) {
+            writer.submit(new HistoryEntry("add", i, 1, i + 1.0));
+        }
+        writer.close();
+
+        assertEquals(500, sink.written.size(), "Every entry should be committed");
+        assertEquals(499.0, sink.written.get(499).a, "Submission order should be kept");
+        assertTrue(sink.syncs.size() < 500, "Entries should be committed in groups");
+        assertFalse(sink.syncs.contains(true), "NONE durability should never sync");
+    }
+
+    @Test
+    @DisplayName("should sync every commit in EACH_COMMIT mode")
+    void testEachCommit() throws IOException {
+        RecordingSink sink = new RecordingSink();
+        AsyncHistoryWriter writer = new AsyncHistoryWriter(sink, AsyncHistoryWriter.Durability.EACH_COMMIT);
+        writer.submit(new HistoryEntry("add", 1, 2, 3.0));
+        writer.flush();
+        writer.submit(new HistoryEntry("sub", 3, 2, 1.0));
+        writer.close();
+
+        assertEquals(2, sink.written.size(), "Both entries should be committed");
+        assertFalse(sink.syncs.contains(false), "Every commit should sync");
+    }
+
+    @Test
+    @DisplayName("should sync on flush in PERIODIC mode")
+    void testPeriodicFlush() throws IOException {
+        RecordingSink sink = new RecordingSink();
+        AsyncHistoryWriter writer = new AsyncHistoryWriter(sink, AsyncHistoryWriter.Durability.PERIODIC, 100, 10, 1, 60_000);
+        writer.submit(new HistoryEntry("mul", 2, 2, 4.0));
+        writer.flush();
+
+        assertEquals(1, sink.written.size(), "Flush should commit pending entries");
+        assertTrue(sink.syncs.get(sink.syncs.size() - 1), "Flush should force a sync");
+        writer.close();
+    }
+
+    @Test
+    @DisplayName("should reject entries after close")
+    void testSubmitAfterClose() throws IOException {
+        AsyncHistoryWriter writer = new AsyncHistoryWriter(new RecordingSink(), AsyncHistoryWriter.Durability.NONE);
+        writer.close();
+
+        assertThrows(IllegalStateException.class, () -> writer.submit(new HistoryEntry("add", 1, 1, 2.0)),
+                "Closed writer should reject entries");
+    }
+
+    @Test
+    @DisplayName("should report a failed commit to the caller")
+    void testFailure() {
+        AsyncHistoryWriter writer = new AsyncHistoryWriter((batch, sync) -> {
+            throw new IOException("disk full");
+        }, AsyncHistoryWriter.Durability.NONE);
+
+        IOException ex = assertThrows(IOException.class, () -> {
+            writer.submit(new HistoryEntry("add", 1, 1, 2.0));
+            writer.flush();
+        }, "Flush should surface the commit failure");
+        assertEquals("disk full", ex.getMessage(), "Original error should be reported");
+    }
+
+    @Test
+    @DisplayName("should report a sink runtime exception and still release flush and close")
+    void testRuntimeFailure() {
+        AsyncHistoryWriter writer = new AsyncHistoryWriter((batch, sync) -> {
+            throw new IllegalArgumentException("Unknown op: pow");
+        }, AsyncHistoryWriter.Durability.NONE);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            writer.submit(new HistoryEntry("add", 1, 1, 2.0));
+            IOException ex = assertThrows(IOException.class, writer::flush, "Flush should surface the failure");
+            assertTrue(ex.getCause() instanceof IllegalArgumentException, "Original exception should be the cause");
+            assertThrows(IOException.class, () -> writer.submit(new HistoryEntry("sub", 1, 1, 0.0)),
+                    "Later submits should be rejected");
+            assertThrows(IOException.class, writer::close, "Close should report it without hanging");
+        }, "Writer should not hang after a runtime failure");
+    }
+
+    @Test
+    @DisplayName("should persist asynchronous HistoryManager appends on close")
+    void testHistoryManagerAsync(@TempDir Path tempDir) throws IOException {
+        String path = tempDir.resolve("async_history.json").toString();
+        HistoryManager manager = new HistoryManager(path);
+        manager.setCompactionThreshold(100);
+        manager.startAsync(AsyncHistoryWriter.Durability.PERIODIC);
+        for (int i = 0; i < 250; i++) {
+            manager.append(new HistoryEntry("add", i, 1, i + 1.0));
+        }
+        manager.close();
+
+        assertEquals(250, new HistoryManager(path).load().size(), "Every entry should survive compactions");
+    }
+}
@@ -0,0 +1,95 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the BatchRunner class.
+ * Tests line evaluation, error reporting and history flushing.
+ */
+@DisplayName("BatchRunner Tests")
+public class BatchRunnerTest {
+
+    private HistoryManager historyManager;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDir) {
+        historyManager = new HistoryManager(tempDir.resolve("batch_history.json").toString());
+    }
+
+    @Test
+    @DisplayName("should write one result per operation line")
+    void testResults() throws IOException {
+        StringWriter out = new StringWriter();
+        long failed = new BatchRunner(historyManager, 0)
+                .run(new StringReader("add 2 3\n\n# comment\n  mul 4   5  \ndiv 9 3\n"), out);
+
+        assertEquals(0, failed, "No line should fail");
+        assertEquals("5.0\n20.0\n3.0\n", out.toString(), "Results should follow input order");
+        assertEquals(3, historyManager.load().size(), "Every result should be recorded");
+    }
+
+    @Test
+    @DisplayName("should report errors and keep evaluating")
+    void testErrors() throws IOException {
+        StringWriter out = new StringWriter();
+        long failed = new BatchRunner(historyManager, 0)
+                .run(new StringReader("div 1 0\nadd x 1\npow 2 3\nadd 1\nsub 5 1\n"), out);
+
+        assertEquals(4, failed, "Four lines should fail");
+        assertEquals("Error: Division by zero\nError: Invalid number\nError: Unknown op: pow\n"
+                + "Error: Usage: <op> <a> <b>\n4.0\n", out.toString(), "Each line should get a result or an error");
+        assertEquals(1, historyManager.load().size(), "Only successful operations should be recorded");
+    }
+
+    @Test
+    @DisplayName("should only print results without a history manager")
+    void testEphemeral() throws IOException {
+        StringWriter out = new StringWriter();
+        long failed = new BatchRunner(null, 1, null, NumericBackend.of("fixed:2"))
+                .run(new StringReader("add 0.1 0.2\nmul 3 4\n"), out);
+
+        assertEquals(0, failed, "No line should fail");
+        assertEquals("0.30\n12.00\n", out.toString(), "Results should still be printed");
+        assertEquals(0, historyManager.load().size(), "Nothing should be recorded");
+    }
+
+    @Test
+    @DisplayName("should flush history every N entries")
+    void testFlushEvery() throws IOException {
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            in.append("add ").append(i).append(" 1\n");
+        }
+
+        new BatchRunner(historyManager, 10).run(new StringReader(in.toString()), new StringWriter());
+
+        assertEquals(25, historyManager.load().size(), "Partial and final flushes should record every entry");
+    }
+
+    @Test
+    @DisplayName("should accept CRLF endings, a missing final newline and lines longer than the buffer")
+    void testLineEndings() throws IOException {
+        StringBuilder longLine = new StringBuilder("add 1 ");
+        for (int i = 0; i < 100_000; i++) {
+            longLine.append('0');
+        }
+        longLine.append("1e-99999");
+        StringWriter out = new StringWriter();
+        long failed = new BatchRunner(historyManager, 0)
+                .run(new StringReader("add 2 3\r\nsub 1 1\r\n" + longLine + "\nmul 2 2"), out);
+
+        assertEquals(0, failed, "No line should fail");
+        assertEquals("5.0\n0.0\n" + (1 + Double.parseDouble(longLine.substring(6))) + "\n4.0\n", out.toString(),
+                "Every line should be evaluated");
+    }
+}
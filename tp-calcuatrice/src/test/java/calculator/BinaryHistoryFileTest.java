@@ -0,0 +1,153 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the BinaryHistoryFile class.
+ * Tests the fixed-width record format and memory-mapped reads.
+ */
+@DisplayName("BinaryHistoryFile Tests")
+public class BinaryHistoryFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("should round-trip entries through the binary format")
+    void testRoundTrip() throws IOException {
+        BinaryHistoryFile file = new BinaryHistoryFile(tempDir.resolve("h.bin").toString());
+        HistoryEntry entry = new HistoryEntry("div", 10, 4, 2.5, "2025-12-01T15:45:49.815337300Z");
+        file.appendAll(Arrays.asList(new HistoryEntry("add", 2, 3, 5.0), entry));
+
+        try (BinaryHistoryFile.Reader reader = file.open()) {
+            assertEquals(2, reader.size(), "Should read 2 records");
+            assertEquals(OpCode.DIV, reader.opCode(1), "Op code should be DIV");
+            assertEquals(10, reader.a(1), "First operand should be 10");
+            assertEquals(4, reader.b(1), "Second operand should be 4");
+            assertEquals(2.5, reader.result(1), "Result should be 2.5");
+            assertEquals(entry.when(), reader.entry(1).when(), "Timestamp should keep nanosecond precision");
+        }
+    }
+
+    @Test
+    @DisplayName("should append to an existing file")
+    void testAppend() throws IOException {
+        BinaryHistoryFile file = new BinaryHistoryFile(tempDir.resolve("h.bin").toString());
+        file.append(new HistoryEntry("add", 1, 1, 2.0));
+        file.append(new HistoryEntry("sub", 3, 1, 2.0));
+
+        try (BinaryHistoryFile.Reader reader = file.open()) {
+            assertEquals(2, reader.size(), "Should read 2 records");
+            assertEquals("sub", reader.op(1), "Second record should be 'sub'");
+        }
+        int header = BinaryHistoryFile.HEADER_SIZE;
+        for (String name : OpCode.names()) {
+            header += 2 + name.length();
+        }
+        assertEquals(header + 2 * BinaryHistoryFile.RECORD_SIZE,
+                Files.size(file.getPath()), "File should hold a header and 2 fixed-width records");
+    }
+
+    @Test
+    @DisplayName("should store op names and extend the name table when appending new ones")
+    void testOpNames() throws IOException {
+        BinaryHistoryFile file = new BinaryHistoryFile(tempDir.resolve("h.bin").toString());
+        file.appendAll(Arrays.asList(new HistoryEntry("hypot", 3, 4, 5.0), new HistoryEntry("frobnicate", 1, 2, 3.0)));
+        file.append(new HistoryEntry("zap", 7, 8, 9.0)); // not in the table yet: header rewritten
+        file.append(new HistoryEntry("div", 8, 2, 4.0));
+
+        try (BinaryHistoryFile.Reader reader = file.open()) {
+            assertEquals(4, reader.size(), "Every record should be kept");
+            assertEquals(OpCode.find("hypot"), reader.opCode(0), "Plugin names should map to the current codes");
+            assertEquals(OpCode.UNKNOWN, reader.opCode(1), "Unknown names should read as UNKNOWN");
+            assertEquals("frobnicate", reader.op(1), "Unknown names should be kept");
+            assertEquals(1, reader.a(1), "Records before the rewrite should be intact");
+            assertEquals("zap", reader.op(2), "Appended names should be added to the table");
+            assertEquals(OpCode.DIV, reader.opCode(3), "Built-in ops should keep their codes");
+            assertEquals(2, HistoryAggregator.aggregate(reader).forOp(OpCode.UNKNOWN).count(),
+                    "Aggregates should count unknown ops as other");
+        }
+    }
+
+    @Test
+    @DisplayName("should replace the file when writing a whole history")
+    void testWrite() throws IOException {
+        BinaryHistoryFile file = new BinaryHistoryFile(tempDir.resolve("h.bin").toString());
+        List<HistoryEntry> entries = Arrays.asList(new HistoryEntry("add", 1, 1, 2.0), new HistoryEntry("mul", 2, 3, 6.0));
+        file.write(entries);
+        file.write(entries); // exporting twice
+
+        try (BinaryHistoryFile.Reader reader = file.open()) {
+            assertEquals(2, reader.size(), "A second export should not duplicate entries");
+            assertEquals("mul", reader.op(1), "Entries should be written in order");
+        }
+        assertFalse(Files.exists(tempDir.resolve("h.bin.tmp")), "Temporary file should be renamed into place");
+    }
+
+    @Test
+    @DisplayName("should open a missing file as empty history")
+    void testMissingFile() throws IOException {
+        BinaryHistoryFile file = new BinaryHistoryFile(tempDir.resolve("none.bin").toString());
+        try (BinaryHistoryFile.Reader reader = file.open()) {
+            assertEquals(0, reader.size(), "Missing file should be empty");
+        }
+    }
+
+    @Test
+    @DisplayName("should reject a file that is not a binary history")
+    void testBadMagic() throws IOException {
+        Path path = tempDir.resolve("h.json");
+        Files.writeString(path, "[{\"op\":\"add\"}]");
+        BinaryHistoryFile file = new BinaryHistoryFile(path.toString());
+
+        assertThrows(IOException.class, file::open, "JSON file should be rejected");
+    }
+
+    @Test
+    @DisplayName("should be loaded by HistoryManager as a snapshot, with the journal on top")
+    void testManagerSnapshot() throws IOException {
+        String path = tempDir.resolve("history.json").toString();
+        HistoryManager hm = new HistoryManager(path);
+        hm.setBinarySnapshots(true);
+        hm.save(Arrays.asList(new HistoryEntry("add", 2, 3, 5.0), new HistoryEntry("hypot", 3, 4, 5.0)));
+        assertTrue(BinaryHistoryFile.isBinary(tempDir.resolve("history.json").toFile()),
+                "Save should write the binary format");
+        hm.append(new HistoryEntry("div", 1, 0, Double.NaN));
+        hm.compact();
+        assertTrue(BinaryHistoryFile.isBinary(tempDir.resolve("history.json").toFile()),
+                "Compaction should write the binary format");
+        hm.append(new HistoryEntry("sub", 5, 3, 2.0));
+
+        List<HistoryEntry> loaded = new HistoryManager(path).load();
+        assertEquals(4, loaded.size(), "Snapshot and journal should both be read");
+        assertEquals("hypot", loaded.get(1).op, "Plugin op should keep its name");
+        assertTrue(Double.isNaN(loaded.get(2).result), "NaN result should survive compaction");
+        assertEquals("sub", loaded.get(3).op, "Journal entry should follow the snapshot");
+        try (Stream<HistoryEntry> s = new HistoryManager(path).stream()) {
+            assertEquals(4, s.count(), "Streaming should read the binary snapshot too");
+        }
+
+        hm.append(new HistoryEntry("add", "0.1", "0.2", "0.3"));
+        hm.compact();
+        assertFalse(BinaryHistoryFile.isBinary(tempDir.resolve("history.json").toFile()),
+                "Exact entries should fall back to JSON");
+        assertEquals("0.3", hm.load().get(4).resultText(), "Exact text should be kept");
+    }
+
+    @Test
+    @DisplayName("should reject an unknown operation")
+    void testUnknownOp() {
+        assertThrows(IllegalArgumentException.class, () -> OpCode.of("pow"), "Unknown op should be rejected");
+    }
+}
@@ -0,0 +1,102 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CalculatorServer and CalculatorClient.
+ * Tests the line protocol, error statuses, concurrent clients and history appends.
+ */
+@DisplayName("CalculatorServer Tests")
+public class CalculatorServerTest {
+
+    @Test
+    @DisplayName("should answer requests and append them to the history")
+    void testRequests(@TempDir Path tempDir) throws Exception {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        try (CalculatorServer server = new CalculatorServer(0, hm, null)) {
+            int port = server.getPort();
+
+            assertEquals("0 5.0", CalculatorClient.call(port, "add 2 3"), "add should succeed");
+            assertEquals("0 20.0", CalculatorClient.call(port, "eval (2+3)*4"), "eval should succeed");
+            assertEquals("0 pong", CalculatorClient.call(port, "ping"), "ping should answer");
+            assertEquals("3 Division by zero", CalculatorClient.call(port, "div 1 0"), "Division by zero should fail");
+            assertEquals("2 Invalid number", CalculatorClient.call(port, "mul x 2"), "Bad number should be rejected");
+            assertEquals("2 Usage: <op> <a> <b>", CalculatorClient.call(port, "sub 1"), "Missing operand should be rejected");
+            assertTrue(CalculatorClient.call(port, "pow 2 3").startsWith("3 "), "Unknown op should fail");
+        }
+
+        List<HistoryEntry> history = hm.load();
+        assertEquals(1, history.size(), "Only the successful calculation should be recorded");
+        assertEquals("add", history.get(0).op, "Recorded op should be add");
+    }
+
+    @Test
+    @DisplayName("should answer pipelined requests on one connection in order")
+    void testPipelining(@TempDir Path tempDir) throws Exception {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        try (CalculatorServer server = new CalculatorServer(0, hm, new ResultCache(16));
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write("add 1 1\nmul 3 3\n\nadd 1 1\n".getBytes(StandardCharsets.UTF_8));
+            socket.shutdownOutput();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            assertEquals("0 2.0", in.readLine(), "First answer should be for add");
+            assertEquals("0 9.0", in.readLine(), "Second answer should be for mul");
+            assertEquals("0 2.0", in.readLine(), "Blank lines should be skipped");
+            assertNull(in.readLine(), "Server should close after the last request");
+        }
+    }
+
+    @Test
+    @DisplayName("should serve concurrent clients")
+    void testConcurrentClients(@TempDir Path tempDir) throws Exception {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        hm.startAsync(AsyncHistoryWriter.Durability.NONE);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try (CalculatorServer server = new CalculatorServer(0, hm, new ResultCache(64))) {
+            List<Future<String>> answers = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String request = "add " + (i % 20) + " 1";
+                answers.add(clients.submit(() -> CalculatorClient.call(server.getPort(), request)));
+            }
+            for (int i = 0; i < answers.size(); i++) {
+                assertEquals("0 " + ((i % 20) + 1.0), answers.get(i).get(), "Answer " + i + " should match");
+            }
+        } finally {
+            clients.shutdown();
+        }
+        hm.close();
+
+        assertEquals(200, hm.load().size(), "Every calculation should be recorded");
+    }
+
+    @Test
+    @DisplayName("client should fail when no server is listening")
+    void testNoServer(@TempDir Path tempDir) throws IOException {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        int port;
+        try (CalculatorServer server = new CalculatorServer(0, hm, null)) {
+            port = server.getPort();
+        }
+        assertThrows(IOException.class, () -> CalculatorClient.call(port, "add 1 2"));
+    }
+}
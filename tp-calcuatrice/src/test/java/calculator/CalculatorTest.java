@@ -129,4 +129,81 @@ public class CalculatorTest {
         double result = Calculator.div(5, 2);
         assertEquals(2.5, result, 0.0001, "5 / 2 should equal 2.5");
     }
+
+    @Test
+    @DisplayName("should apply bulk operations element-wise")
+    void testBulkOperations() {
+        double[] a = {1, 2, 3, 4, 5};
+        double[] b = {5, 4, 3, 2, 1};
+        double[] out = new double[5];
+
+        Calculator.add(a, b, out);
+        assertArrayEquals(new double[] {6, 6, 6, 6, 6}, out, "Bulk add should sum each pair");
+        Calculator.sub(a, b, out);
+        assertArrayEquals(new double[] {-4, -2, 0, 2, 4}, out, "Bulk sub should subtract each pair");
+        Calculator.mul(a, b, out);
+        assertArrayEquals(new double[] {5, 8, 9, 8, 5}, out, "Bulk mul should multiply each pair");
+    }
+
+    @Test
+    @DisplayName("should apply bulk operations on a range")
+    void testBulkRange() {
+        double[] a = {0, 10, 20, 30};
+        double[] b = {1, 2, 3};
+        double[] out = new double[4];
+
+        Calculator.add(a, 1, b, 0, out, 2, 2);
+        assertArrayEquals(new double[] {0, 0, 11, 22}, out, "Only the requested range should be written");
+        assertThrows(IndexOutOfBoundsException.class, () -> Calculator.add(a, 3, b, 0, out, 0, 2),
+                "Range past the end should be rejected");
+    }
+
+    @Test
+    @DisplayName("should report every division by zero in bulk divide")
+    void testBulkDivideByZero() {
+        double[] a = {10, 1, 9, 2, 8};
+        double[] b = {2, 0, 3, 0, 4};
+        double[] out = new double[5];
+
+        int[] zeros = Calculator.div(a, b, out);
+
+        assertArrayEquals(new int[] {1, 3}, zeros, "Indexes of zero divisors should be reported");
+        assertEquals(5.0, out[0], "Valid quotients should be computed");
+        assertEquals(2.0, out[4], "Quotients after a zero divisor should be computed");
+        assertTrue(Double.isNaN(out[1]) && Double.isNaN(out[3]), "Zero divisors should yield NaN");
+        assertEquals(0, Calculator.div(a, new double[] {1, 1, 1, 1, 1}, out).length,
+                "No index should be reported without zero divisors");
+    }
+
+    @Test
+    @DisplayName("should divide in place, into either operand")
+    void testBulkDivideInPlace() {
+        double[] a = {10, 1, 9};
+        double[] b = {2, 0, 3};
+        assertArrayEquals(new int[] {1}, Calculator.div(a, b, b), "Zero divisor should be reported when out is b");
+        assertEquals(5.0, b[0], "Quotients should overwrite b");
+        assertTrue(Double.isNaN(b[1]), "Zero divisor should yield NaN when out is b");
+        assertEquals(3.0, b[2], "Quotients should overwrite b");
+
+        double[] c = {10, 1, 9, 7};
+        double[] d = {2, 0, 3, 0};
+        assertArrayEquals(new int[] {1, 3}, Calculator.div(c, d, c), "Zero divisors should be reported when out is a");
+        assertEquals(5.0, c[0], "Quotients should overwrite a");
+        assertTrue(Double.isNaN(c[1]) && Double.isNaN(c[3]), "Zero divisors should yield NaN when out is a");
+
+        double[] e = {6, 0, 4, 1, 1};
+        assertArrayEquals(new int[] {1}, Calculator.div(new double[] {12, 5, 8, 1, 1}, 0, e, 0, e, 0, 3),
+                "Only the range should be divided");
+        assertTrue(Double.isNaN(e[1]), "Zero divisor in the range should yield NaN");
+        assertArrayEquals(new double[] {2, 2, 1, 1}, new double[] {e[0], e[2], e[3], e[4]},
+                "Other elements should be untouched or divided");
+    }
+
+    @Test
+    @DisplayName("should reject bulk arrays of different lengths")
+    void testBulkLengthMismatch() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Calculator.mul(new double[2], new double[3], new double[2]),
+                "Mismatched lengths should be rejected");
+    }
 }
@@ -0,0 +1,197 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CompressedHistoryFile class.
+ * Tests lossless round trips, block-wise decoding, the compression ratio and corruption.
+ */
+@DisplayName("CompressedHistoryFile Tests")
+public class CompressedHistoryFileTest {
+    private static final String[] OPS = {"add", "sub", "mul", "div"};
+    private static final long T0 = 1_700_000_000_000_000_000L;
+
+    @Test
+    @DisplayName("should round-trip special values, irregular times and exact entries")
+    void testRoundTrip() throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        double[] specials = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, Double.MAX_VALUE, 1.0, 0.1, 0.1, 0.1};
+        Random random = new Random(42);
+        long t = T0;
+        for (int i = 0; i < 3000; i++) {
+            double a = i < specials.length ? specials[i] : random.nextDouble() * 1e6;
+            double b = specials[i % specials.length];
+            t += i % 5 == 0 ? random.nextInt(1 << 30) : (i % 7 == 0 ? -12345 : 1_000_000);
+            entries.add(new HistoryEntry(OPS[random.nextInt(4)], a, b, a + b, t));
+        }
+        entries.add(new HistoryEntry("add", parse("0.1"), parse("0.2"), parse("0.3"), Long.MIN_VALUE + 1));
+        HistoryEntry exact = new HistoryEntry("add", "0.1", "0.2", "0.3");
+        entries.add(exact);
+        entries.add(new HistoryEntry("mul", 2, 3, 6, Long.MAX_VALUE));
+
+        List<HistoryEntry> decoded = decode(encode(entries));
+
+        assertEquals(entries.size(), decoded.size(), "Every entry should be decoded");
+        for (int i = 0; i < entries.size(); i++) {
+            HistoryEntry e = entries.get(i);
+            HistoryEntry d = decoded.get(i);
+            assertEquals(e.op, d.op, "op of entry " + i);
+            assertEquals(Double.doubleToRawLongBits(e.a), Double.doubleToRawLongBits(d.a), "a of entry " + i);
+            assertEquals(Double.doubleToRawLongBits(e.b), Double.doubleToRawLongBits(d.b), "b of entry " + i);
+            assertEquals(Double.doubleToRawLongBits(e.result), Double.doubleToRawLongBits(d.result),
+                    "result of entry " + i);
+            assertEquals(e.epochNanos(), d.epochNanos(), "time of entry " + i);
+            assertEquals(e.isExact(), d.isExact(), "exactness of entry " + i);
+        }
+        HistoryEntry d = decoded.get(entries.size() - 2);
+        assertEquals(Arrays.asList("0.1", "0.2", "0.3"), Arrays.asList(d.aText(), d.bText(), d.resultText()),
+                "Exact text should be kept");
+    }
+
+    @Test
+    @DisplayName("should decode block by block")
+    void testBlocks() throws IOException {
+        List<HistoryEntry> entries = generate(CompressedHistoryFile.BLOCK_SIZE * 2 + 5);
+        try (CompressedHistoryFile.Reader r = new CompressedHistoryFile.Reader(
+                new ByteArrayInputStream(encode(entries)))) {
+            assertEquals(CompressedHistoryFile.BLOCK_SIZE, r.nextBlock(), "First block should be full");
+            assertEquals(entries.get(3).a, r.a(3), "Entries should be addressable in the block");
+            assertEquals(CompressedHistoryFile.BLOCK_SIZE, r.nextBlock(), "Second block should be full");
+            assertEquals(5, r.nextBlock(), "Last block should hold the rest");
+            assertEquals(entries.get(entries.size() - 1).result, r.result(4), "Last entry should match");
+            assertEquals(-1, r.nextBlock(), "End of snapshot");
+        }
+        assertEquals(0, decode(encode(new ArrayList<>())).size(), "Empty history should round-trip");
+    }
+
+    @Test
+    @DisplayName("should be an order of magnitude smaller than JSON")
+    void testRatio(@TempDir Path tempDir) throws IOException {
+        List<HistoryEntry> entries = generate(100_000);
+        HistoryManager json = new HistoryManager(tempDir.resolve("json.json").toString());
+        json.save(entries);
+        HistoryManager compressed = new HistoryManager(tempDir.resolve("compressed.json").toString());
+        compressed.setCompressedSnapshots(true);
+        compressed.save(entries);
+
+        long jsonSize = Files.size(tempDir.resolve("json.json"));
+        long compressedSize = Files.size(tempDir.resolve("compressed.json"));
+        assertTrue(compressedSize * 10 <= jsonSize,
+                "Expected 10x smaller, got " + jsonSize + " vs " + compressedSize + " bytes");
+    }
+
+    @Test
+    @DisplayName("should read either snapshot format and keep the journal on top")
+    void testManager(@TempDir Path tempDir) throws IOException {
+        String path = tempDir.resolve("history.json").toString();
+        HistoryManager hm = new HistoryManager(path);
+        hm.save(generate(10));
+        hm.setCompressedSnapshots(true);
+        hm.append(new HistoryEntry("add", "0.1", "0.2", "0.3"));
+        hm.compact();
+        assertTrue(CompressedHistoryFile.isCompressed(tempDir.resolve("history.json").toFile()),
+                "Compaction should write the compressed format");
+        hm.append(new HistoryEntry("sub", 5, 3, 2));
+
+        List<HistoryEntry> loaded = new HistoryManager(path).load();
+        assertEquals(12, loaded.size(), "Snapshot and journal should both be read");
+        assertEquals("0.3", loaded.get(10).resultText(), "Exact entry should survive compaction");
+        assertEquals("sub", loaded.get(11).op, "Journal entry should follow the snapshot");
+        try (Stream<HistoryEntry> s = new HistoryManager(path).stream()) {
+            assertEquals(12, s.count(), "Streaming should read the compressed snapshot too");
+        }
+
+        hm.setCompressedSnapshots(false);
+        hm.compact();
+        assertFalse(CompressedHistoryFile.isCompressed(tempDir.resolve("history.json").toFile()),
+                "Turning compression off should write JSON again");
+        assertEquals(12, hm.loadStore().size(), "Converting back should keep every entry");
+    }
+
+    @Test
+    @DisplayName("should store op names, keeping operations the registry does not know")
+    void testOpNames(@TempDir Path tempDir) throws IOException {
+        List<HistoryEntry> entries = generate(10);
+        entries.add(new HistoryEntry("hypot", 3, 4, 5, T0 - 1)); // plugin, code depends on the plugin set
+        entries.add(new HistoryEntry("frobnicate", 1, 2, 3, T0 - 2)); // plugin no longer installed
+
+        try (CompressedHistoryFile.Reader r = new CompressedHistoryFile.Reader(
+                new ByteArrayInputStream(encode(entries)))) {
+            assertEquals(12, r.nextBlock(), "Entries should be in one block");
+            assertEquals(OpCode.find("hypot"), r.opCode(10), "Names should map to the current codes");
+            assertEquals(OpCode.UNKNOWN, r.opCode(11), "Unknown names should read as UNKNOWN");
+            assertEquals("frobnicate", r.entry(11).op, "Unknown names should be kept");
+        }
+
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        hm.setCompressedSnapshots(true);
+        hm.appendAll(entries);
+        hm.compact();
+        assertEquals("frobnicate", hm.load().get(11).op, "Compaction should keep unknown operations");
+    }
+
+    @Test
+    @DisplayName("should report truncated snapshots")
+    void testTruncated(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("history.json");
+        HistoryManager hm = new HistoryManager(file.toString());
+        hm.setCompressedSnapshots(true);
+        hm.save(generate(2000));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+        IOException ex = assertThrows(IOException.class, hm::load);
+        assertTrue(ex.getMessage().contains("Truncated"), "Message should say what is wrong: " + ex.getMessage());
+    }
+
+    private static double parse(String s) {
+        return Double.parseDouble(s);
+    }
+
+    /** Calculator-like history: small operands, one entry per millisecond. */
+    private static List<HistoryEntry> generate(int n) {
+        List<HistoryEntry> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double a = i % 100;
+            double b = (i % 9) + 1;
+            String op = OPS[(i / 50) & 3];
+            list.add(new HistoryEntry(op, a, b, Calculator.apply(op, a, b), T0 + i * 1_000_000L));
+        }
+        return list;
+    }
+
+    private static byte[] encode(List<HistoryEntry> entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompressedHistoryFile.write(out, entries);
+        return out.toByteArray();
+    }
+
+    private static List<HistoryEntry> decode(byte[] bytes) throws IOException {
+        List<HistoryEntry> list = new ArrayList<>();
+        try (CompressedHistoryFile.Reader r = new CompressedHistoryFile.Reader(new ByteArrayInputStream(bytes))) {
+            for (int n; (n = r.nextBlock()) >= 0; ) {
+                for (int i = 0; i < n; i++) {
+                    list.add(r.entry(i));
+                }
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,132 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for sharing one history between threads, managers and processes.
+ * Every writer appends entries tagged with its id; none may be lost or duplicated, even
+ * while journals are being compacted.
+ */
+@DisplayName("Concurrent History Tests")
+public class ConcurrentHistoryTest {
+    private static final int PER_WRITER = 300;
+
+    /**
+     * Child process body: {@code <history path> <writer id> <count>}.
+     */
+    public static void main(String[] args) throws IOException {
+        appendTagged(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]), false);
+    }
+
+    private static void appendTagged(String path, int writer, int count, boolean async) throws IOException {
+        HistoryManager hm = new HistoryManager(path);
+        hm.setCompactionThreshold(50); // compact often to race with the other writers
+        if (async) {
+            hm.startAsync(AsyncHistoryWriter.Durability.NONE);
+        }
+        for (int i = 0; i < count; i++) {
+            hm.append(new HistoryEntry("add", writer, i, writer + i));
+        }
+        hm.close();
+    }
+
+    private static void assertAllPresent(HistoryManager hm, int writers) throws IOException {
+        List<HistoryEntry> entries = hm.load();
+        Set<String> seen = new HashSet<>();
+        for (HistoryEntry e : entries) {
+            assertTrue(seen.add(e.a + ":" + e.b), "Entry " + e.a + ":" + e.b + " should not be duplicated");
+        }
+        assertEquals(writers * PER_WRITER, entries.size(), "Every appended entry should be kept");
+    }
+
+    @Test
+    @DisplayName("threads sharing one manager should not lose entries")
+    void testSharedManager(@TempDir Path tempDir) throws Exception {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        hm.setCompactionThreshold(50);
+        hm.startAsync(AsyncHistoryWriter.Durability.NONE);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            Thread t = new Thread(() -> {
+                try {
+                    for (int i = 0; i < PER_WRITER; i++) {
+                        hm.append(new HistoryEntry("add", writer, i, writer + i));
+                    }
+                } catch (IOException ex) {
+                    throw new AssertionError(ex);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        hm.close();
+
+        assertAllPresent(hm, 4);
+    }
+
+    @Test
+    @DisplayName("managers in one JVM sharing a file should not lose entries")
+    void testSeparateManagers(@TempDir Path tempDir) throws Exception {
+        String path = tempDir.resolve("history.json").toString();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            Thread t = new Thread(() -> {
+                try {
+                    appendTagged(path, writer, PER_WRITER, writer % 2 == 0);
+                } catch (Throwable ex) {
+                    synchronized (failures) {
+                        failures.add(ex);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertTrue(failures.isEmpty(), "Writers should not fail: " + failures);
+        assertAllPresent(new HistoryManager(path), 4);
+    }
+
+    @Test
+    @DisplayName("processes sharing a file should not lose entries")
+    void testSeparateProcesses(@TempDir Path tempDir) throws Exception {
+        String path = tempDir.resolve("history.json").toString();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    ConcurrentHistoryTest.class.getName(), path, Integer.toString(w), Integer.toString(PER_WRITER))
+                    .inheritIO()
+                    .start());
+        }
+        appendTagged(path, 2, PER_WRITER, false);
+        for (Process p : processes) {
+            assertTrue(p.waitFor(60, TimeUnit.SECONDS), "Writer process should finish");
+            assertEquals(0, p.exitValue(), "Writer process should succeed");
+        }
+
+        assertAllPresent(new HistoryManager(path), 3);
+    }
+}
@@ -0,0 +1,95 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ExpressionParser and ExpressionCompiler.
+ * Tests precedence, variables, compiled evaluation and error reporting.
+ */
+@DisplayName("Expression Tests")
+public class ExpressionTest {
+
+    @Test
+    @DisplayName("should respect operator precedence and parentheses")
+    void testPrecedence() {
+        assertEquals(14.0, ExpressionParser.parse("2 + 3 * 4").evaluate(Map.of()), "* binds tighter than +");
+        assertEquals(20.0, ExpressionParser.parse("(2+3)*4").evaluate(Map.of()), "Parentheses group first");
+        assertEquals(2.0, ExpressionParser.parse("8 / 2 / 2").evaluate(Map.of()), "/ is left-associative");
+        assertEquals(-1.0, ExpressionParser.parse("-(2 - 1)").evaluate(Map.of()), "Unary minus negates");
+        assertEquals(1500.0, ExpressionParser.parse("1.5e3").evaluate(Map.of()), "Exponent notation is a number");
+    }
+
+    @Test
+    @DisplayName("should compile expressions with variables")
+    void testCompileVariables() {
+        CompiledExpression ce = new ExpressionCompiler().compile("(2+3)*4/ x - y*x");
+
+        assertEquals(List.of("x", "y"), ce.variables(), "Variables should be listed by first appearance");
+        assertEquals(20.0 / 5 - 2 * 5, ce.evaluate(5, 2), "Compiled result should match arithmetic");
+        assertEquals(20.0 / 2 - 3 * 2, ce.evaluate(2, 3), "Compiled expression should be reusable");
+    }
+
+    @Test
+    @DisplayName("should agree with the interpreter")
+    void testCompiledMatchesInterpreted() {
+        String src = "-(a - 1.5) * (b + 2) / -c + 3";
+        Expression expr = ExpressionParser.parse(src);
+        CompiledExpression ce = ExpressionCompiler.compile(src, expr);
+
+        assertEquals(expr.evaluate(Map.of("a", 4.0, "b", -7.0, "c", 0.5)), ce.evaluate(4, -7, 0.5),
+                "Compiled and interpreted results should be identical");
+    }
+
+    @Test
+    @DisplayName("should reuse cached compiled expressions")
+    void testCache() {
+        ExpressionCompiler compiler = new ExpressionCompiler();
+        assertSame(compiler.compile("x * 2"), compiler.compile("x * 2"), "Same source should hit the cache");
+    }
+
+    @Test
+    @DisplayName("should throw on division by zero at evaluation time")
+    void testDivisionByZero() {
+        ExpressionCompiler compiler = new ExpressionCompiler();
+        CompiledExpression constant = compiler.compile("1 / (2 - 2)");
+        CompiledExpression variable = compiler.compile("1 / x");
+
+        assertThrows(ArithmeticException.class, constant::evaluate, "Constant division by zero should throw");
+        assertThrows(ArithmeticException.class, () -> variable.evaluate(0), "Division by zero should throw");
+    }
+
+    @Test
+    @DisplayName("should report syntax errors")
+    void testSyntaxErrors() {
+        assertThrows(IllegalArgumentException.class, () -> ExpressionParser.parse("(1 + 2"), "Missing ')'");
+        assertThrows(IllegalArgumentException.class, () -> ExpressionParser.parse("1 +"), "Missing operand");
+        assertThrows(IllegalArgumentException.class, () -> ExpressionParser.parse("2 $ 3"), "Unknown operator");
+        assertThrows(IllegalArgumentException.class, () -> ExpressionParser.parse("1.2.3"), "Invalid number");
+    }
+
+    @Test
+    @DisplayName("should reject expressions nested too deeply instead of overflowing the stack")
+    void testNestingLimit() {
+        int n = 100_000;
+        String parens = "(".repeat(n) + "1" + ")".repeat(n);
+        String signs = "-".repeat(n) + "1";
+        String chain = "1" + "+1".repeat(n);
+        for (String deep : new String[] {parens, signs, chain}) {
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                    () -> ExpressionParser.parse(deep), "Deep expression should be a parse error");
+            assertTrue(ex.getMessage().contains("nested too deeply"), "Unexpected message: " + ex.getMessage());
+        }
+
+        int limit = ExpressionParser.MAX_DEPTH - 1;
+        String nested = "(".repeat(limit) + "x" + ")".repeat(limit);
+        assertEquals(3.0, new ExpressionCompiler().compile(nested).evaluate(3), 0.0, "Nesting within the limit should work");
+        String sum = "1" + "+1".repeat(limit - 1);
+        assertEquals(limit, new ExpressionCompiler().compile(sum).evaluate(), 0.0, "Chains within the limit should work");
+    }
+}
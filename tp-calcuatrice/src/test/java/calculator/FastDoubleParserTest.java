@@ -0,0 +1,92 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for FastDoubleParser and LineTokenizer.
+ * Results must be bit-for-bit identical to Double.parseDouble.
+ */
+@DisplayName("FastDoubleParser Tests")
+public class FastDoubleParserTest {
+
+    private static double parse(String s) {
+        return FastDoubleParser.parse(s.toCharArray(), 0, s.length());
+    }
+
+    private static void assertSameAsJdk(String s) {
+        assertEquals(Double.doubleToRawLongBits(Double.parseDouble(s)), Double.doubleToRawLongBits(parse(s)),
+                "Parsing " + s + " should match Double.parseDouble");
+    }
+
+    @Test
+    @DisplayName("should parse the same values as Double.parseDouble")
+    void testEdgeCases() {
+        String[] inputs = {
+                "0", "-0", "+0", "0.0", "-0.0", "1", "-1", "+1", "12.5", "3.25", ".5", "5.", "-.5",
+                "1e5", "1E5", "1e+5", "1e-5", "2.5e-3", "123456789012345678", "9007199254740993",
+                "1234567890123456789", "12345678901234567890", "0.1", "0.3", "1e22", "1e23", "1e-22",
+                "1e-23", "4.9e-324", "1.7976931348623157e308", "1e309", "1e-400", "0e999999",
+                "000000000000000000000000001.5", "1.0000000000000000000001", "NaN", "-Infinity",
+                "Infinity", "0x1p3", "1d", "2.5f", "1e999999999999",
+        };
+        for (String s : inputs) {
+            assertSameAsJdk(s);
+        }
+    }
+
+    @Test
+    @DisplayName("should not overflow on 19-digit mantissas")
+    void testLongMantissas() {
+        for (String s : new String[] {"9223372036854775807", "9223372036854775808", "9300000000000000000",
+                "9999999999999999999", "-9999999999999999999", "99999999999999999.99", "999999999999999999",
+                "1000000000000000000", "0.9999999999999999999", "9999999999999999999e-3"}) {
+            assertSameAsJdk(s);
+        }
+    }
+
+    @Test
+    @DisplayName("should match Double.parseDouble on random decimals")
+    void testRandom() {
+        Random random = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(d)) continue;
+            assertSameAsJdk(Double.toString(d));
+            long mantissa = random.nextLong() % 1_000_000_000_000L;
+            int exp = random.nextInt(60) - 30;
+            assertSameAsJdk(mantissa + "e" + exp);
+            assertSameAsJdk((mantissa / 1000) + "." + Math.abs(mantissa % 1000));
+        }
+    }
+
+    @Test
+    @DisplayName("should reject what Double.parseDouble rejects")
+    void testInvalid() {
+        for (String s : new String[] {"", "-", "+", ".", "e5", "1e", "1e+", "1.2.3", "x", "1x", "--1", "1 2"}) {
+            assertThrows(NumberFormatException.class, () -> parse(s), "'" + s + "' should be rejected");
+        }
+    }
+
+    @Test
+    @DisplayName("tokenizer should split on whitespace and recognise ops in place")
+    void testTokenizer() {
+        char[] line = " \tadd  2.5\t-1e3 \r".toCharArray();
+        LineTokenizer tok = new LineTokenizer();
+        tok.reset(line, 0, line.length);
+
+        assertTrue(tok.next(), "First token should be found");
+        assertEquals(OpCode.ADD, tok.opCode(), "add should be recognised");
+        assertTrue(tok.next(), "Second token should be found");
+        assertEquals(2.5, tok.parseDouble(), "Second token should be 2.5");
+        assertEquals(-1, tok.opCode(), "A number is not an op");
+        assertTrue(tok.next(), "Third token should be found");
+        assertEquals("-1e3", tok.token(), "Token text should be kept");
+        assertEquals(-1000.0, tok.parseDouble(), "Third token should be -1000");
+        assertFalse(tok.next(), "Trailing whitespace should end the line");
+    }
+}
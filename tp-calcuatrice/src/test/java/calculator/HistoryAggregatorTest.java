@@ -0,0 +1,154 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the HistoryAggregator and QuantileSketch classes.
+ * Tests quantile accuracy, bounded memory, merging and parallel aggregation.
+ */
+@DisplayName("HistoryAggregator Tests")
+public class HistoryAggregatorTest {
+
+    @Test
+    @DisplayName("should estimate quantiles within the relative accuracy")
+    void testSketchAccuracy() {
+        Random random = new Random(11);
+        double[] values = new double[100_000];
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 0; i < values.length; i++) {
+            // signed, spanning many orders of magnitude, with some zeros
+            values[i] = i % 50 == 0 ? 0 : (random.nextBoolean() ? 1 : -1) * Math.exp(random.nextGaussian() * 3);
+            sketch.add(values[i]);
+        }
+        sketch.add(Double.NaN);
+        Arrays.sort(values);
+
+        assertEquals(values.length, sketch.count(), "NaN should be ignored");
+        assertEquals(values[0], sketch.quantile(0), "q=0 should be the exact min");
+        assertEquals(values[values.length - 1], sketch.quantile(1), "q=1 should be the exact max");
+        for (double q : new double[] {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999}) {
+            double exact = values[(int) (q * (values.length - 1))];
+            assertEquals(exact, sketch.quantile(q), Math.abs(exact) * QuantileSketch.DEFAULT_RELATIVE_ACCURACY + 1e-12,
+                    "Quantile " + q + " should be within 1%");
+        }
+        assertTrue(Double.isNaN(new QuantileSketch().quantile(0.5)), "Empty sketch should report NaN");
+    }
+
+    @Test
+    @DisplayName("should bound memory by collapsing the smallest magnitudes")
+    void testSketchCollapse() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 100);
+        for (int e = -300; e <= 300; e++) {
+            sketch.add(Math.pow(10, e));
+        }
+        sketch.add(Double.POSITIVE_INFINITY);
+        assertEquals(602, sketch.count(), "Every value should still be counted");
+        assertEquals(1e300, sketch.quantile(0.999), 1e300 * 0.01, "Large quantiles should stay accurate");
+        assertTrue(sketch.quantile(0.5) > 1, "Small magnitudes should be folded into the lowest kept bucket");
+        assertEquals(Double.POSITIVE_INFINITY, sketch.quantile(1), "Max should be exact");
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new QuantileSketch()),
+                "Sketches with different parameters should not merge");
+    }
+
+    @Test
+    @DisplayName("should merge sketches like a single one")
+    void testSketchMerge() {
+        Random random = new Random(3);
+        QuantileSketch whole = new QuantileSketch();
+        QuantileSketch left = new QuantileSketch();
+        QuantileSketch right = new QuantileSketch();
+        for (int i = 0; i < 10_000; i++) {
+            double v = random.nextGaussian() * 1000;
+            whole.add(v);
+            (i % 3 == 0 ? left : right).add(v);
+        }
+        left.merge(right);
+        for (double q = 0; q <= 1; q += 0.05) {
+            assertEquals(whole.quantile(q), left.quantile(q), "Merged sketch should match at " + q);
+        }
+    }
+
+    @Test
+    @DisplayName("should aggregate the same way sequentially and in parallel")
+    void testParallelAggregate() {
+        HistoryStore store = new HistoryStore();
+        Random random = new Random(5);
+        for (int i = 0; i < 20_000; i++) {
+            double a = random.nextInt(1000);
+            double b = random.nextInt(1000) + 1;
+            store.add(new HistoryEntry(i % 4 == 0 ? "div" : "add", a, b, i % 4 == 0 ? a / b : a + b, (long) i));
+        }
+        HistoryAggregator.Source source = new HistoryAggregator.Source() {
+            @Override
+            public byte opCode(long i) {
+                return store.opCode((int) i);
+            }
+
+            @Override
+            public double result(long i) {
+                return store.result((int) i);
+            }
+        };
+        HistoryAggregator.Aggregate sequential = HistoryAggregator.aggregate(store.size(), source,
+                ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            HistoryAggregator.Aggregate parallel = HistoryAggregator.aggregate(store.size(), source, pool, 1000);
+            for (byte op : new byte[] {OpCode.ADD, OpCode.DIV}) {
+                HistoryAggregator.Stats s = sequential.forOp(op);
+                HistoryAggregator.Stats p = parallel.forOp(op);
+                assertEquals(s.count(), p.count(), "Counts should match");
+                assertEquals(s.sum(), p.sum(), Math.abs(s.sum()) * 1e-12, "Sums should match");
+                assertEquals(s.mean(), p.mean(), Math.abs(s.mean()) * 1e-12, "Means should match");
+                assertEquals(s.stddev(), p.stddev(), s.stddev() * 1e-9, "Deviations should match");
+                assertEquals(s.min(), p.min(), "Minimums should match");
+                assertEquals(s.max(), p.max(), "Maximums should match");
+                assertEquals(s.quantile(0.9), p.quantile(0.9), "Quantiles should match");
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(15_000, sequential.forOp(OpCode.ADD).count(), "add entries should be counted");
+        assertEquals(0, sequential.forOp(OpCode.MUL).count(), "mul should be empty");
+        assertTrue(Double.isNaN(sequential.forOp(OpCode.MUL).mean()), "Empty mean should be NaN");
+        assertEquals(20_000, sequential.total().count(), "Total should cover every entry");
+    }
+
+    @Test
+    @DisplayName("should compute exact summary statistics")
+    void testStats(@TempDir Path tempDir) throws IOException {
+        HistoryStore store = new HistoryStore();
+        for (int i = 1; i <= 4; i++) {
+            store.add(new HistoryEntry("mul", i, 1, i, (long) i));
+        }
+        store.add(new HistoryEntry("sub", 0, 0, Double.NaN, 5L));
+        HistoryAggregator.Stats s = HistoryAggregator.aggregate(store).forOp(OpCode.MUL);
+        assertEquals(4, s.count());
+        assertEquals(10, s.sum());
+        assertEquals(2.5, s.mean(), 1e-12);
+        assertEquals(Math.sqrt(1.25), s.stddev(), 1e-12, "Population deviation of 1..4");
+        assertEquals(1, s.min());
+        assertEquals(4, s.max());
+        assertEquals(0, HistoryAggregator.aggregate(store).forOp(OpCode.SUB).count(), "NaN results should be skipped");
+
+        BinaryHistoryFile file = new BinaryHistoryFile(tempDir.resolve("h.bin").toString());
+        file.appendAll(store);
+        try (BinaryHistoryFile.Reader reader = file.open()) {
+            HistoryAggregator.Aggregate mapped = HistoryAggregator.aggregate(reader);
+            assertEquals(10, mapped.forOp(OpCode.MUL).sum(), "Mapped file should aggregate the same");
+            String table = mapped.toString();
+            assertTrue(table.contains("mul") && table.contains("all") && !table.contains("add "),
+                    "Table should list the operations present: " + table);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package calculator;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
+import java.time.Instant;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -28,8 +30,8 @@ public class HistoryEntryTest {
     void testTimestampGeneration() {
         HistoryEntry entry = new HistoryEntry("sub", 10, 2, 8.0);
         
-        assertNotNull(entry.when, "Timestamp should not be null");
-        assertFalse(entry.when.isEmpty(), "Timestamp should not be empty");
+        assertNotNull(entry.when(), "Timestamp should not be null");
+        assertFalse(entry.when().isEmpty(), "Timestamp should not be empty");
     }
 
     @Test
@@ -38,7 +40,7 @@ public class HistoryEntryTest {
         HistoryEntry entry = new HistoryEntry("mul", 4, 5, 20.0);
         
         // ISO-8601 format contains 'T' between date and time
-        assertTrue(entry.when.contains("T"), "Timestamp should be in ISO-8601 format");
+        assertTrue(entry.when().contains("T"), "Timestamp should be in ISO-8601 format");
     }
 
     @Test
@@ -72,4 +74,49 @@ public class HistoryEntryTest {
         assertEquals("mul", mul.op, "Operation should be 'mul'");
         assertEquals("div", div.op, "Operation should be 'div'");
     }
+
+    @Test
+    @DisplayName("should format the timestamp lazily from epoch nanos")
+    void testLazyTimestamp() {
+        HistoryEntry entry = new HistoryEntry("add", 1, 2, 3.0, 1_700_000_000_123_456_789L);
+
+        assertEquals("2023-11-14T22:13:20.123456789Z", entry.when(), "Epoch nanos should format as ISO-8601");
+        assertSame(entry.when(), entry.when(), "Formatted timestamp should be cached");
+    }
+
+    @Test
+    @DisplayName("should parse an ISO-8601 timestamp into epoch nanos")
+    void testParseTimestamp() {
+        HistoryEntry entry = new HistoryEntry("add", 1, 2, 3.0, "2025-12-01T15:45:49.815337300Z");
+        Instant when = Instant.parse("2025-12-01T15:45:49.815337300Z");
+
+        assertEquals(when.getEpochSecond() * 1_000_000_000L + when.getNano(), entry.epochNanos(),
+                "Epoch nanos should match the parsed timestamp");
+    }
+
+    @Test
+    @DisplayName("should count a malformed timestamp as epoch 0 and keep its text")
+    void testMalformedTimestamp() {
+        HistoryEntry entry = new HistoryEntry("add", 1, 2, 3.0, "yesterday");
+
+        assertEquals(0L, entry.epochNanos(), "Malformed time should count as epoch 0, like a missing one");
+        assertEquals("yesterday", entry.when(), "Malformed time text should be kept");
+    }
+
+    @Test
+    @DisplayName("should stamp entries from the configured clock")
+    void testCoarseClock() {
+        try {
+            HistoryEntry.setClock(EpochClock.coarse());
+            long before = EpochClock.SYSTEM.epochNanos();
+            HistoryEntry entry = new HistoryEntry("mul", 4, 5, 20.0);
+
+            assertTrue(Math.abs(entry.epochNanos() - before) < 1_000_000_000L,
+                    "Coarse clock should stay close to the system clock");
+            HistoryEntry.setClock(() -> 42L);
+            assertEquals(42L, new HistoryEntry("mul", 4, 5, 20.0).epochNanos(), "Custom clock should be used");
+        } finally {
+            HistoryEntry.setClock(EpochClock.SYSTEM);
+        }
+    }
 }
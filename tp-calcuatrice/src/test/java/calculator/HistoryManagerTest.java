@@ -5,10 +5,17 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.io.IOException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.gson.Gson;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -100,8 +107,8 @@ public class HistoryManagerTest {
     @DisplayName("should have timestamp for each entry")
     void testEntryHasTimestamp() {
         HistoryEntry entry = new HistoryEntry("add", 2, 3, 5.0);
-        assertNotNull(entry.when, "Entry should have a timestamp");
-        assertFalse(entry.when.isEmpty(), "Timestamp should not be empty");
+        assertNotNull(entry.when(), "Entry should have a timestamp");
+        assertFalse(entry.when().isEmpty(), "Timestamp should not be empty");
     }
 
     @Test
@@ -124,5 +131,222 @@ public class HistoryManagerTest {
         assertEquals(-5, loaded.get(0).a, "First operand should be -5");
         assertEquals(-3, loaded.get(0).b, "Second operand should be -3");
     }
-}
 
+    @Test
+    @DisplayName("should replay appended entries from the journal")
+    void testAppendJournal() throws IOException {
+        historyManager.append(new HistoryEntry("add", 1, 2, 3.0));
+        historyManager.append(new HistoryEntry("mul", 2, 5, 10.0));
+
+        List<HistoryEntry> loaded = historyManager.load();
+
+        assertEquals(2, loaded.size(), "Both appended entries should be loaded");
+        assertEquals("mul", loaded.get(1).op, "Journal order should be kept");
+    }
+
+    @Test
+    @DisplayName("should replay the journal on top of the snapshot")
+    void testSnapshotAndJournal() throws IOException {
+        testEntries.add(new HistoryEntry("add", 2, 3, 5.0));
+        historyManager.save(testEntries);
+        historyManager.append(new HistoryEntry("sub", 9, 4, 5.0));
+
+        List<HistoryEntry> loaded = historyManager.load();
+
+        assertEquals(2, loaded.size(), "Snapshot and journal entries should be combined");
+        assertEquals("add", loaded.get(0).op, "Snapshot entries come first");
+        assertEquals("sub", loaded.get(1).op, "Journal entries come last");
+    }
+
+    @Test
+    @DisplayName("should compact the journal into the snapshot")
+    void testCompaction(@TempDir Path tempDir) throws IOException {
+        String historyPath = tempDir.resolve("compact.json").toString();
+        HistoryManager manager = new HistoryManager(historyPath);
+        manager.setCompactionThreshold(3);
+
+        for (int i = 0; i < 4; i++) {
+            manager.append(new HistoryEntry("add", i, 1, i + 1.0));
+        }
+
+        assertEquals(4, manager.load().size(), "No entry should be lost by compaction");
+        assertEquals(1, java.nio.file.Files.readAllLines(Path.of(historyPath + ".journal")).size(),
+                "Journal should only hold entries appended after compaction");
+    }
+
+    @Test
+    @DisplayName("should compact across one-shot managers that never read the history")
+    void testCompactionAcrossProcesses(@TempDir Path tempDir) throws IOException {
+        String historyPath = tempDir.resolve("oneshot.json").toString();
+        for (int i = 0; i < 30; i++) {
+            HistoryManager oneShot = new HistoryManager(historyPath); // like a CLI run
+            oneShot.setCompactionThreshold(5);
+            oneShot.append(new HistoryEntry("add", i, 1, i + 1.0));
+            oneShot.close();
+        }
+
+        assertTrue(Files.exists(Path.of(historyPath)), "Compaction should have written a snapshot");
+        long journalLines = Files.readAllLines(Path.of(historyPath + ".journal")).size();
+        assertTrue(journalLines < 30, "Journal should have been folded, but holds " + journalLines + " lines");
+        List<HistoryEntry> loaded = new HistoryManager(historyPath).load();
+        assertEquals(30, loaded.size(), "No entry should be lost by compaction");
+        assertEquals(29.0, loaded.get(29).a, "Entries should stay in order");
+    }
+
+    @Test
+    @DisplayName("should read entries with a malformed time without failing")
+    void testMalformedTime(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("history.json");
+        Files.write(path, ("[{\"op\":\"add\",\"a\":1.0,\"b\":2.0,\"result\":3.0,\"when\":\"yesterday\"},"
+                + "{\"op\":\"sub\",\"a\":3.0,\"b\":1.0,\"result\":2.0,\"when\":\"2025-12-01T00:00:00Z\"}]")
+                .getBytes(StandardCharsets.UTF_8));
+        HistoryManager manager = new HistoryManager(path.toString());
+
+        assertEquals("yesterday", manager.load().get(0).when(), "A full load should keep the text as found");
+        long from = HistoryEntry.toEpochNanos("2025-01-01T00:00:00Z");
+        try (Stream<HistoryEntry> recent = manager.stream(from, Long.MAX_VALUE)) {
+            assertEquals(List.of("sub"), recent.map(e -> e.op).collect(Collectors.toList()),
+                    "A malformed time should fall outside recent ranges");
+        }
+        manager.compact();
+        assertEquals(2, manager.loadStore().size(), "Compaction should keep the entry");
+    }
+
+    @Test
+    @DisplayName("should stream snapshot and journal entries in order")
+    void testStream() throws IOException {
+        testEntries.add(new HistoryEntry("add", 2, 3, 5.0));
+        testEntries.add(new HistoryEntry("div", 8, 2, 4.0));
+        historyManager.save(testEntries);
+        historyManager.append(new HistoryEntry("div", 9, 3, 3.0));
+
+        try (Stream<HistoryEntry> entries = historyManager.stream()) {
+            List<Double> divResults = entries.filter(e -> "div".equals(e.op))
+                    .map(e -> e.result)
+                    .collect(Collectors.toList());
+            assertEquals(List.of(4.0, 3.0), divResults, "Filter should see snapshot then journal entries");
+        }
+    }
+
+    @Test
+    @DisplayName("should stream a missing history as empty")
+    void testStreamMissingFile() throws IOException {
+        try (Stream<HistoryEntry> entries = historyManager.stream()) {
+            assertEquals(0, entries.count(), "Missing history should stream no entries");
+        }
+    }
+
+    @Test
+    @DisplayName("should keep the ISO-8601 'when' field in JSON")
+    void testJsonTimestamp(@TempDir Path tempDir) throws IOException {
+        String historyPath = tempDir.resolve("format.json").toString();
+        HistoryManager manager = new HistoryManager(historyPath);
+        manager.append(new HistoryEntry("add", 2, 3, 5.0, "2025-12-01T15:45:49.815337300Z"));
+
+        String line = java.nio.file.Files.readAllLines(Path.of(historyPath + ".journal")).get(0);
+        assertTrue(line.matches("[0-9a-f]{8} .*"), "Record should start with its checksum: " + line);
+        assertEquals("{\"op\":\"add\",\"a\":2.0,\"b\":3.0,\"result\":5.0,\"when\":\"2025-12-01T15:45:49.815337300Z\"}",
+                line.substring(9), "JSON shape should be unchanged");
+        assertEquals("2025-12-01T15:45:49.815337300Z", manager.load().get(0).when(), "Timestamp should round-trip");
+    }
+
+    @Test
+    @DisplayName("should persist infinite and NaN results in the journal and the snapshot")
+    void testSpecialValues(@TempDir Path tempDir) throws IOException {
+        HistoryManager manager = new HistoryManager(tempDir.resolve("special.json").toString());
+        manager.append(new HistoryEntry("mul", 1e308, 10, Double.POSITIVE_INFINITY, 1L));
+        manager.append(new HistoryEntry("sub", Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN, 2L));
+        assertEquals(Double.POSITIVE_INFINITY, manager.load().get(0).result, "Journal should keep infinity");
+        manager.compact();
+        List<HistoryEntry> loaded = manager.load();
+        assertEquals(Double.POSITIVE_INFINITY, loaded.get(0).result, "Snapshot should keep infinity");
+        assertEquals(Double.NEGATIVE_INFINITY, loaded.get(1).a, "Snapshot should keep negative infinity");
+        assertTrue(Double.isNaN(loaded.get(1).result), "Snapshot should keep NaN");
+    }
+
+    @Test
+    @DisplayName("should map entries with the streaming adapter by default")
+    void testDefaultAdapter() {
+        Gson gson = new Gson();
+        HistoryEntry e = new HistoryEntry("div", 1, 4, 0.25, "2025-12-01T15:45:49Z");
+        String json = gson.toJson(e);
+        assertEquals("{\"op\":\"div\",\"a\":1.0,\"b\":4.0,\"result\":0.25,\"when\":\"2025-12-01T15:45:49Z\"}", json,
+                "A plain Gson should use the adapter, not reflection");
+        HistoryEntry back = gson.fromJson(json, HistoryEntry.class);
+        assertEquals(0.25, back.result, "Entry should round-trip");
+        assertEquals("2025-12-01T15:45:49Z", back.when(), "Timestamp should round-trip");
+    }
+
+    @Test
+    @DisplayName("should stop at a torn or damaged journal record and cut it off")
+    void testJournalRecovery(@TempDir Path tempDir) throws IOException {
+        Path journal = tempDir.resolve("crash.json.journal");
+        HistoryManager manager = new HistoryManager(tempDir.resolve("crash.json").toString());
+        manager.append(new HistoryEntry("add", 1, 1, 2));
+        manager.append(new HistoryEntry("add", 2, 2, 4));
+        long valid = Files.size(journal);
+        Files.write(journal, "0badc0de {\"op\":\"add\",\"a\":3.0,\"b\":3.0,\"result\":6.0,\"when\":\"2025-12-01T00:00:00Z\"}\n"
+                .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        manager.append(new HistoryEntry("add", 4, 4, 8)); // hidden behind the damaged record
+
+        assertEquals(2, new HistoryManager(tempDir.resolve("crash.json").toString()).load().size(),
+                "Replay should stop at the record failing its checksum");
+        assertEquals(valid, Files.size(journal), "Recovery should cut the journal after the last valid record");
+
+        Files.write(journal, "3f2a".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        manager.append(new HistoryEntry("sub", 9, 1, 8));
+        List<HistoryEntry> loaded = manager.load();
+        assertEquals(3, loaded.size(), "A torn last line should be dropped before appending");
+        assertEquals("sub", loaded.get(2).op, "The new record should be readable");
+    }
+
+    @Test
+    @DisplayName("should treat a journal record without checksum as damaged")
+    void testUncheckedRecord(@TempDir Path tempDir) throws IOException {
+        Path journal = tempDir.resolve("plain.json.journal");
+        HistoryManager manager = new HistoryManager(tempDir.resolve("plain.json").toString());
+        manager.append(new HistoryEntry("add", 1, 2, 3));
+        long valid = Files.size(journal);
+        Files.write(journal, "{\"op\":\"mul\",\"a\":2.0,\"b\":3.0,\"result\":6.0,\"when\":\"2025-12-01T00:00:00Z\"}\n"
+                .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<HistoryEntry> loaded = new HistoryManager(tempDir.resolve("plain.json").toString()).load();
+        assertEquals(1, loaded.size(), "Replay should stop at the record without checksum");
+        assertEquals(valid, Files.size(journal), "Recovery should cut the unchecked record");
+    }
+
+    @Test
+    @DisplayName("should replace the snapshot atomically")
+    void testAtomicSnapshot(@TempDir Path tempDir) throws IOException {
+        Path snapshot = tempDir.resolve("atomic.json");
+        HistoryManager manager = new HistoryManager(snapshot.toString());
+        manager.save(List.of(new HistoryEntry("add", 1, 2, 3)));
+        Files.write(tempDir.resolve("atomic.json.tmp"), "[{\"op\":".getBytes(StandardCharsets.UTF_8)); // crash leftover
+
+        assertEquals(1, manager.load().size(), "A leftover temporary file should be ignored");
+        manager.save(List.of(new HistoryEntry("add", 1, 2, 3), new HistoryEntry("mul", 2, 3, 6)));
+        assertEquals(2, manager.load().size(), "Snapshot should be replaced");
+        assertFalse(Files.exists(tempDir.resolve("atomic.json.tmp")), "Temporary file should be renamed away");
+    }
+
+    @Test
+    @DisplayName("should still save the index when stopping the writer fails")
+    void testCloseFailures(@TempDir Path tempDir) throws IOException {
+        Path journal = tempDir.resolve("close.json.journal");
+        HistoryManager manager = new HistoryManager(tempDir.resolve("close.json").toString());
+        manager.append(new HistoryEntry("add", 1, 2, 3));
+        HistoryStore store = manager.loadStore();
+        manager.query(store, HistoryQuery.parse("op=add", 0)); // builds an index to save
+        manager.startAsync(AsyncHistoryWriter.Durability.EACH_COMMIT);
+        Files.delete(journal);
+        Files.createDirectory(journal); // the writer cannot open the journal
+        Path index = Files.createDirectory(tempDir.resolve("close.json.idx")); // nor can the index be written
+        manager.append(new HistoryEntry("sub", 3, 1, 2));
+
+        IOException ex = assertThrows(IOException.class, manager::close, "Writer failure should be thrown");
+        assertEquals(1, ex.getSuppressed().length, "Index failure should be attached, not lost");
+        Files.delete(index);
+        manager.close();
+        assertTrue(Files.isRegularFile(index), "The unsaved index should be written by the next close");
+    }
+}
@@ -0,0 +1,196 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HistoryQuery and HistoryIndex.
+ * Tests query parsing, indexed results against a full scan, incremental updates
+ * and index persistence.
+ */
+@DisplayName("HistoryQuery Tests")
+public class HistoryQueryTest {
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+    private static HistoryStore randomStore(int n, long seed) {
+        Random random = new Random(seed);
+        HistoryStore store = new HistoryStore();
+        long t = 0;
+        for (int i = 0; i < n; i++) {
+            byte op = (byte) random.nextInt(4);
+            double a = random.nextInt(2000) - 1000;
+            double b = random.nextInt(2000) - 1000;
+            // mostly increasing timestamps, with some out of order
+            t += random.nextInt(10) == 0 ? -HOUR / 10 : HOUR / 100;
+            store.add(op, a, b, a * b, t);
+        }
+        return store;
+    }
+
+    private static int[] scan(HistoryStore store, HistoryQuery query) {
+        return java.util.stream.IntStream.range(0, store.size())
+                .filter(i -> query.matches(store, i))
+                .toArray();
+    }
+
+    @Test
+    @DisplayName("should match entries on op, time and result")
+    void testMatches() {
+        HistoryStore store = new HistoryStore();
+        store.add(OpCode.DIV, 4e6, 2, 2e6, 10 * HOUR);
+        store.add(OpCode.DIV, 4, 2, 2, 10 * HOUR);
+        store.add(OpCode.MUL, 2e6, 2, 4e6, 10 * HOUR);
+        store.add(OpCode.DIV, 4e6, 2, 2e6, 8 * HOUR);
+
+        HistoryQuery query = HistoryQuery.parse("op=div since=1h result>1e6", 10 * HOUR + 1);
+        int[] hits = query.execute(store, new HistoryIndex());
+
+        assertArrayEquals(new int[] {0}, hits, "Only the recent large div should match");
+    }
+
+    @Test
+    @DisplayName("should parse comparisons on operands and ISO instants")
+    void testParse() {
+        HistoryStore store = new HistoryStore();
+        long t = EpochClock.toEpochNanos(java.time.Instant.parse("2024-01-31T12:00:00Z"));
+        store.add(OpCode.ADD, 1, 2, 3, t);
+        store.add(OpCode.ADD, 5, 2, 7, t + HOUR);
+
+        assertTrue(HistoryQuery.parse("a<=1 b=2", 0).matches(store, 0), "a<=1 b=2 should match the first entry");
+        assertFalse(HistoryQuery.parse("a<1", 0).matches(store, 0), "a<1 should exclude a=1");
+        assertArrayEquals(new int[] {1},
+                HistoryQuery.parse("after=2024-01-31T12:30:00Z", 0).execute(store, new HistoryIndex()),
+                "after= should keep later entries");
+        assertArrayEquals(new int[] {0},
+                HistoryQuery.parse("before=2024-01-31T12:00:00Z result>=3", 0).execute(store, new HistoryIndex()),
+                "before= should be inclusive");
+    }
+
+    @Test
+    @DisplayName("should reject invalid query terms")
+    void testInvalidTerms() {
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.parse("op=pow", 0));
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.parse("colour=red", 0));
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.parse("since>1h", 0));
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.parse("since=1w", 0));
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.parse("after=yesterday", 0));
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.parse("result>", 0));
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.parse("result>abc", 0));
+    }
+
+    @Test
+    @DisplayName("indexed queries should return the same entries as a full scan")
+    void testIndexMatchesScan() {
+        HistoryStore store = randomStore(5000, 42);
+        HistoryIndex index = new HistoryIndex();
+        long now = store.epochNanos(store.size() - 1);
+        String[] queries = {
+                "op=div", "op=mul result<0", "since=5h", "since=2h op=add a>0",
+                "result>=100000", "result>-10 result<10", "result=0", "b<=-900 op=sub", "a=0",
+        };
+        for (String text : queries) {
+            HistoryQuery query = HistoryQuery.parse(text, now);
+            assertArrayEquals(scan(store, query), query.execute(store, index), "Indexed result differs for: " + text);
+        }
+    }
+
+    @Test
+    @DisplayName("should index entries added after the first query")
+    void testIncrementalUpdate() {
+        HistoryStore store = randomStore(3000, 7);
+        HistoryIndex index = new HistoryIndex();
+        HistoryQuery query = HistoryQuery.parse("result>0 op=mul", 0);
+        query.execute(store, index);
+
+        HistoryStore more = randomStore(4000, 7);
+        for (int i = store.size(); i < more.size(); i++) {
+            store.add(more.opCode(i), more.a(i), more.b(i), more.result(i), more.epochNanos(i));
+        }
+        int[] hits = query.execute(store, index);
+
+        assertEquals(4000, index.size(), "Index should cover new entries");
+        assertArrayEquals(scan(store, query), hits, "Incremental index should match a full scan");
+    }
+
+    @Test
+    @DisplayName("should persist the index and rebuild it when stale")
+    void testPersistence(@TempDir Path tempDir) throws IOException {
+        File file = tempDir.resolve("history.json.idx").toFile();
+        HistoryStore store = randomStore(2000, 3);
+        HistoryIndex index = new HistoryIndex();
+        index.update(store);
+        index.write(file);
+
+        HistoryQuery query = HistoryQuery.parse("op=sub result<0", 0);
+        assertArrayEquals(scan(store, query), query.execute(store, HistoryIndex.read(file, store)),
+                "Reloaded index should answer queries");
+
+        HistoryStore other = randomStore(1500, 99);
+        assertArrayEquals(scan(other, query), query.execute(other, HistoryIndex.read(file, other)),
+                "Index of another history should be rebuilt");
+
+        Files.write(file.toPath(), Arrays.copyOf(Files.readAllBytes(file.toPath()), 100));
+        assertArrayEquals(scan(store, query), query.execute(store, HistoryIndex.read(file, store)),
+                "Truncated index file should be rebuilt");
+    }
+
+    @Test
+    @DisplayName("should rebuild an index written for other op codes")
+    void testOpTable(@TempDir Path tempDir) throws IOException {
+        File file = tempDir.resolve("history.json.idx").toFile();
+        HistoryStore store = randomStore(2000, 3);
+        HistoryIndex index = new HistoryIndex();
+        index.update(store);
+        index.write(file);
+
+        // the same history under a registry where codes 1 and 2 mean mul and sub, as when
+        // plugins are reordered: the file names its codes, so it can tell it is stale
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        String header = new String(bytes, 0, 64, StandardCharsets.ISO_8859_1);
+        int sub = header.indexOf("sub");
+        int mul = header.indexOf("mul");
+        bytes[sub] = 'm';
+        bytes[sub + 1] = 'u';
+        bytes[sub + 2] = 'l';
+        bytes[mul] = 's';
+        bytes[mul + 1] = 'u';
+        bytes[mul + 2] = 'b';
+        Files.write(file.toPath(), bytes);
+        HistoryStore swapped = new HistoryStore();
+        for (int i = 0; i < store.size(); i++) {
+            byte op = store.opCode(i) == OpCode.SUB ? OpCode.MUL : store.opCode(i) == OpCode.MUL ? OpCode.SUB : store.opCode(i);
+            swapped.add(op, store.a(i), store.b(i), store.result(i), store.epochNanos(i));
+        }
+
+        HistoryQuery query = HistoryQuery.parse("op=sub", 0);
+        assertArrayEquals(scan(swapped, query), query.execute(swapped, HistoryIndex.read(file, swapped)),
+                "Index written for other op codes should be rebuilt");
+    }
+
+    @Test
+    @DisplayName("HistoryManager should save the query index on close")
+    void testManagerQuery(@TempDir Path tempDir) throws IOException {
+        String path = tempDir.resolve("history.json").toString();
+        HistoryManager hm = new HistoryManager(path);
+        HistoryStore store = randomStore(500, 11);
+        hm.save(store);
+
+        HistoryQuery query = HistoryQuery.parse("op=add", 0);
+        assertArrayEquals(scan(store, query), hm.query(store, query), "Manager query should match a full scan");
+        hm.close();
+
+        assertTrue(new File(path + ".idx").exists(), "Index file should be written next to the history");
+    }
+}
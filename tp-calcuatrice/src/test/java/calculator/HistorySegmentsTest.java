@@ -0,0 +1,199 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for segmented histories (HistorySegments and HistoryManager).
+ * Tests rotation, retention, time-range loads and the switch from a single snapshot.
+ */
+@DisplayName("HistorySegments Tests")
+public class HistorySegmentsTest {
+    private static final long HOUR = Duration.ofHours(1).toNanos();
+
+    private Path tempDir;
+    private File history;
+    private long now;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDir) {
+        this.tempDir = tempDir;
+        this.history = tempDir.resolve("history.json").toFile();
+        this.now = EpochClock.SYSTEM.epochNanos();
+    }
+
+    /** One entry per hour over {@code days} days, ending now. */
+    private List<HistoryEntry> hourly(int days) {
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (int h = days * 24 - 1; h >= 0; h--) {
+            entries.add(new HistoryEntry("add", h, 1, h + 1, now - h * HOUR));
+        }
+        return entries;
+    }
+
+    private HistorySegments manifest() throws IOException {
+        HistorySegments m = HistorySegments.read(history);
+        assertNotNull(m, "History should be segmented");
+        return m;
+    }
+
+    @Test
+    @DisplayName("should start a new segment for each time span")
+    void testRotateBySpan() throws IOException {
+        HistoryManager hm = new HistoryManager(history.getPath());
+        hm.setSegmentation(HistoryManager.DEFAULT_SEGMENT_BYTES, Duration.ofDays(1));
+        hm.appendAll(hourly(5));
+        hm.compact();
+
+        List<HistorySegments.Segment> segments = manifest().segments();
+        assertEquals(5, segments.size(), "Five days should make five segments");
+        for (HistorySegments.Segment s : segments) {
+            assertEquals(24, s.count, "Each segment should hold one day");
+            assertTrue(s.maxNanos - s.minNanos < Duration.ofDays(1).toNanos(), "Each segment should span less than a day");
+        }
+        assertFalse(new File(history.getPath() + ".journal").exists(), "Journal should be folded");
+        assertEquals(hourly(5).size(), hm.load().size(), "Every entry should be kept");
+        assertEquals(now - (5 * 24 - 1) * HOUR, hm.load().get(0).epochNanos(), "Entries should stay in order");
+    }
+
+    @Test
+    @DisplayName("should seal full segments and rewrite only the last one")
+    void testRotateBySize() throws IOException {
+        HistoryManager hm = new HistoryManager(history.getPath());
+        hm.setSegmentation(256 << 10, Duration.ofDays(365));
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            entries.add(new HistoryEntry("mul", i, 3, i * 3.0, now - 20_000 + i));
+        }
+        hm.appendAll(entries);
+        hm.compact();
+        List<HistorySegments.Segment> before = new ArrayList<>(manifest().segments());
+        assertTrue(before.size() > 2, "Entries should be split across several segments");
+        for (int i = 0; i < before.size() - 1; i++) {
+            assertTrue(before.get(i).bytes < (256 << 10) * 2, "Segments should stay close to the size limit");
+        }
+
+        hm.append(new HistoryEntry("sub", 1, 1, 0, now));
+        hm.compact();
+        List<HistorySegments.Segment> after = manifest().segments();
+        for (int i = 0; i < before.size() - 1; i++) {
+            assertEquals(before.get(i).name, after.get(i).name, "Sealed segments should not be rewritten");
+        }
+        assertEquals(20_001, hm.loadStore().size(), "Every entry should be kept");
+    }
+
+    @Test
+    @DisplayName("should drop and delete segments past the retention age")
+    void testRetainAge() throws IOException {
+        HistoryManager hm = new HistoryManager(history.getPath());
+        hm.setSegmentation(HistoryManager.DEFAULT_SEGMENT_BYTES, Duration.ofDays(1));
+        hm.appendAll(hourly(10));
+        hm.compact();
+        assertEquals(10, manifest().segments().size(), "Retention should not apply before it is set");
+
+        hm.setRetention(Duration.ofDays(3), 0);
+        hm.enforceRetention();
+        hm.close();
+
+        List<HistoryEntry> kept = hm.load();
+        assertTrue(kept.size() >= 3 * 24 && kept.size() <= 4 * 24, "About three days should be kept, not " + kept.size());
+        assertTrue(kept.get(0).epochNanos() >= now - Duration.ofDays(4).toNanos(), "Oldest entries should be gone");
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(manifest().segments().size(),
+                    files.filter(p -> p.getFileName().toString().startsWith("history.json.seg-")).count(),
+                    "Dropped segment files should be deleted");
+        }
+    }
+
+    @Test
+    @DisplayName("should keep the history under the retention size, never dropping the last segment")
+    void testRetainSize() throws IOException {
+        HistoryManager hm = new HistoryManager(history.getPath());
+        hm.setSegmentation(HistoryManager.DEFAULT_SEGMENT_BYTES, Duration.ofDays(1));
+        hm.setRetention(null, 1);
+        hm.appendAll(hourly(6));
+        hm.compact();
+        hm.close();
+
+        assertEquals(1, manifest().segments().size(), "Only the last segment should be kept");
+        assertEquals(24, hm.load().size(), "Entries of the last segment should remain");
+        assertEquals(manifest().bytes(), hm.sizeOnDisk(), "Size should count the segments");
+    }
+
+    @Test
+    @DisplayName("should only open the segments overlapping a time range")
+    void testRangeLoad() throws IOException {
+        HistoryManager hm = new HistoryManager(history.getPath());
+        hm.setSegmentation(HistoryManager.DEFAULT_SEGMENT_BYTES, Duration.ofDays(1));
+        hm.appendAll(hourly(4));
+        hm.compact();
+        hm.append(new HistoryEntry("div", 1, 2, 0.5, now + 1));
+        HistorySegments m = manifest();
+        Files.write(m.fileOf(m.segments().get(0)).toPath(), "[{broken".getBytes(StandardCharsets.UTF_8));
+
+        long from = now - 5 * HOUR;
+        HistoryStore recent = hm.loadStore(from, Long.MAX_VALUE);
+        assertEquals(7, recent.size(), "Range should hold the last six hours and the journal entry");
+        assertEquals("div", recent.op(6), "Journal entries in range should be included");
+        try (Stream<HistoryEntry> s = hm.stream(from, now - HOUR)) {
+            assertEquals(5, s.count(), "Streams should be bounded the same way");
+        }
+        assertThrows(RuntimeException.class, hm::load, "A full load should reach the damaged old segment");
+
+        SessionHistory session = new SessionHistory(hm);
+        HistoryStore hits = session.select(HistoryQuery.parse("since=3h op=div", now + 2));
+        assertEquals(1, hits.size(), "Time-bounded queries should not need old segments");
+        assertNull(session.ifLoaded(), "A ranged query should not load the whole history");
+    }
+
+    @Test
+    @DisplayName("should turn an existing snapshot into segments")
+    void testMigrate() throws IOException {
+        HistoryManager legacy = new HistoryManager(history.getPath());
+        legacy.save(hourly(2));
+        legacy.append(new HistoryEntry("sub", 3, 1, 2, now + 1));
+
+        HistoryManager hm = new HistoryManager(history.getPath());
+        hm.setCompressedSnapshots(true);
+        hm.setSegmentation(HistoryManager.DEFAULT_SEGMENT_BYTES, Duration.ofDays(1));
+        assertEquals(49, hm.load().size(), "The snapshot should be read before migration");
+        hm.compact();
+        hm.close();
+
+        assertFalse(history.exists(), "The old snapshot should be deleted");
+        assertEquals(2, manifest().segments().size(), "Entries should be split by day");
+        assertTrue(CompressedHistoryFile.isCompressed(manifest().fileOf(manifest().active())), "Segments should use the snapshot format");
+        assertEquals(49, new HistoryManager(history.getPath()).load().size(), "Every entry should survive, even without settings");
+    }
+
+    @Test
+    @DisplayName("should delete segment files the manifest does not name")
+    void testOrphans() throws IOException {
+        HistoryManager hm = new HistoryManager(history.getPath());
+        hm.setRetention(Duration.ofDays(30), 0);
+        hm.appendAll(hourly(1));
+        hm.compact();
+        File stray = tempDir.resolve("history.json.seg-999999").toFile();
+        Files.write(stray.toPath(), "[]".getBytes(StandardCharsets.UTF_8));
+
+        hm.enforceRetention();
+        hm.close();
+
+        assertFalse(stray.exists(), "A segment left by a crash should be deleted");
+        assertEquals(24, hm.load().size(), "Live segments should be kept");
+    }
+}
@@ -0,0 +1,121 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the HistoryStore class.
+ * Tests primitive storage, growth, flyweight access and persistence.
+ */
+@DisplayName("HistoryStore Tests")
+public class HistoryStoreTest {
+
+    @Test
+    @DisplayName("should store entries as primitive fields")
+    void testAddAndRead() {
+        HistoryStore store = new HistoryStore();
+        store.add(new HistoryEntry("div", 10, 4, 2.5, 123L));
+
+        assertEquals(1, store.size(), "Store should hold 1 entry");
+        assertEquals(OpCode.DIV, store.opCode(0), "Op should be stored as a code");
+        assertEquals("div", store.op(0), "Op name should be resolved from the code");
+        assertEquals(10, store.a(0), "First operand should be 10");
+        assertEquals(4, store.b(0), "Second operand should be 4");
+        assertEquals(2.5, store.result(0), "Result should be 2.5");
+        assertEquals(123L, store.epochNanos(0), "Timestamp should be kept");
+    }
+
+    @Test
+    @DisplayName("should grow beyond its initial capacity")
+    void testGrowth() {
+        HistoryStore store = new HistoryStore(2);
+        for (int i = 0; i < 1000; i++) {
+            store.add(OpCode.ADD, i, 1, i + 1.0, i);
+        }
+
+        assertEquals(1000, store.size(), "Store should hold every entry");
+        assertEquals(999.0, store.a(999), "Last entry should be intact");
+        assertThrows(IndexOutOfBoundsException.class, () -> store.a(1000), "Reading past the end should fail");
+    }
+
+    @Test
+    @DisplayName("should iterate with a reused flyweight entry")
+    void testFlyweightIteration() {
+        HistoryStore store = new HistoryStore();
+        store.add(OpCode.ADD, 1, 2, 3.0, 10L);
+        store.add(OpCode.MUL, 3, 4, 12.0, 20L);
+
+        HistoryEntry first = null;
+        double sum = 0;
+        for (HistoryEntry e : store) {
+            if (first == null) {
+                first = e;
+            }
+            assertSame(first, e, "Iterator should reuse one entry");
+            sum += e.result;
+        }
+        assertEquals(15.0, sum, "Every entry should be visited");
+        assertEquals("mul", first.op, "Flyweight should hold the last visited entry");
+        assertEquals(20L, first.epochNanos(), "Flyweight timestamp should be refreshed");
+    }
+
+    @Test
+    @DisplayName("should save and load through HistoryManager")
+    void testPersistence(@TempDir Path tempDir) throws IOException {
+        HistoryManager manager = new HistoryManager(tempDir.resolve("store.json").toString());
+        HistoryStore store = new HistoryStore();
+        store.add(new HistoryEntry("add", 2, 3, 5.0, "2025-12-01T15:45:49.815337300Z"));
+        store.add(new HistoryEntry("sub", 9, 4, 5.0));
+        manager.save(store);
+        manager.append(new HistoryEntry("mul", 2, 2, 4.0));
+
+        HistoryStore loaded = manager.loadStore();
+
+        assertEquals(3, loaded.size(), "Snapshot and journal should be loaded");
+        assertEquals("2025-12-01T15:45:49.815337300Z", loaded.get(0).when(), "Timestamp should round-trip");
+        assertEquals("mul", loaded.op(2), "Journal entry should come last");
+    }
+
+    @Test
+    @DisplayName("should keep entries of operations the registry does not know")
+    void testUnknownOperation(@TempDir Path tempDir) throws IOException {
+        HistoryManager manager = new HistoryManager(tempDir.resolve("store.json").toString());
+        manager.save(List.of(new HistoryEntry("add", 1, 2, 3.0, 1L),
+                new HistoryEntry("frobnicate", 3, 4, 5.0, 2L))); // from an uninstalled plugin
+        manager.append(new HistoryEntry("mul", 2, 2, 4.0, 3L));
+        manager.compact();
+
+        HistoryStore loaded = manager.loadStore();
+        assertEquals(3, loaded.size(), "Every entry should survive compaction");
+        assertEquals(OpCode.UNKNOWN, loaded.opCode(1), "Unknown op should get the UNKNOWN code");
+        assertEquals("frobnicate", loaded.op(1), "Unknown op name should be kept");
+        assertEquals("frobnicate", loaded.get(1).op, "Entries should carry the unknown op name");
+        assertEquals("mul", loaded.op(2), "Known ops should be unaffected");
+
+        assertEquals(1, HistoryAggregator.aggregate(loaded).forOp(OpCode.UNKNOWN).count(),
+                "Aggregates should count unknown ops as other");
+        assertArrayEquals(new int[] {2}, manager.query(loaded, HistoryQuery.parse("op=mul", 4L)),
+                "Queries should index around unknown ops");
+    }
+
+    @Test
+    @DisplayName("should export to the binary format")
+    void testBinaryExport(@TempDir Path tempDir) throws IOException {
+        HistoryStore store = new HistoryStore();
+        store.add(OpCode.SUB, 7, 2, 5.0, 99L);
+        BinaryHistoryFile file = new BinaryHistoryFile(tempDir.resolve("store.bin").toString());
+        file.appendAll(store);
+
+        try (BinaryHistoryFile.Reader reader = file.open()) {
+            assertEquals(1, reader.size(), "Binary file should hold 1 record");
+            assertEquals(99L, reader.epochNanos(0), "Timestamp should be exported");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package calculator;
+
+/**
+ * Operation registered in the test resources to check that {@link Operation}s are loaded.
+ */
+public class HypotOperation implements Operation {
+    @Override
+    public String name() {
+        return "hypot";
+    }
+
+    @Override
+    public double applyAsDouble(double a, double b) {
+        return Math.hypot(a, b);
+    }
+}
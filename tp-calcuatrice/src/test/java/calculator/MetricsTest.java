@@ -0,0 +1,145 @@
+package calculator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the Metrics and LatencyHistogram classes.
+ * Tests bucket accuracy, what instrumented code records, and the JMX view.
+ */
+@DisplayName("Metrics Tests")
+public class MetricsTest {
+
+    @AfterEach
+    void tearDown() {
+        Metrics.disable();
+    }
+
+    @Test
+    @DisplayName("should bucket every value within 1/16 of its size")
+    void testBuckets() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long v = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LatencyHistogram.bucket(v);
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(v <= upper, v + " should not exceed its bucket bound " + upper);
+            assertTrue(upper - v <= v / LatencyHistogram.HALF, "Bucket of " + v + " is too wide: " + upper);
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.upperBound(bucket - 1) < v, "Buckets should not overlap at " + v);
+            }
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.bucket(Long.MAX_VALUE)),
+                "Largest value should have a bucket");
+    }
+
+    @Test
+    @DisplayName("should report percentiles, mean and max")
+    void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentile(99), "Empty histogram should report 0");
+        for (int v = 1; v <= 10_000; v++) {
+            h.record(v);
+        }
+        assertEquals(10_000, h.count(), "Every value should be counted");
+        assertEquals(5000.5, h.mean(), 1e-9, "Mean should be exact");
+        assertEquals(10_000, h.max(), "Max should be exact");
+        assertEquals(5000, h.percentile(50), 5000 / 16.0, "Median should be within a bucket");
+        assertEquals(9900, h.percentile(99), 9900 / 16.0, "p99 should be within a bucket");
+        assertEquals(10_000, h.percentile(100), "p100 should be the max");
+
+        h.reset();
+        assertEquals(0, h.count(), "Reset should clear the histogram");
+        assertEquals(0, h.max(), "Reset should clear the max");
+    }
+
+    @Test
+    @DisplayName("should record nothing while disabled")
+    void testDisabled(@TempDir Path tempDir) throws IOException {
+        assertNull(Metrics.current(), "Metrics should be off by default");
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        Main.perform("add", 1, 2, new HistoryStore(), hm);
+        Metrics.error();
+
+        Metrics m = Metrics.enable();
+        assertEquals(0, m.operationCount(OpCode.ADD), "Nothing should have been counted before enabling");
+        assertEquals(0, m.getErrors(), "Errors should not have been counted before enabling");
+    }
+
+    @Test
+    @DisplayName("should time computations, persistence and history I/O")
+    void testInstrumentation(@TempDir Path tempDir) throws IOException {
+        Metrics m = Metrics.enable();
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        HistoryStore history = new HistoryStore();
+        Main.perform("add", 1, 2, history, hm);
+        Main.perform("div", 1, 4, history, hm);
+        Main.perform(NumericBackend.of("decimal"), "add", "0.1", "0.2", history, hm);
+        new BatchRunner(hm, 0).run(new StringReader("mul 2 3\ndiv 1 0\nadd x 1\n"), new StringWriter());
+        hm.compact();
+
+        assertEquals(2, m.operationCount(OpCode.ADD), "add should be counted once per calculation");
+        assertEquals(1, m.operationCount(OpCode.MUL), "Batch calculations should be counted");
+        assertEquals(2, m.getErrors(), "Failed batch lines should be counted");
+        assertEquals(4, m.compute.count(), "Every successful calculation should be timed");
+        assertEquals(4, m.persist.count(), "Three appends and one batch flush should be timed");
+        assertEquals(4, m.journal.count(), "Every journal write should be timed");
+        assertEquals(1, m.snapshot.count(), "Compaction should write one snapshot");
+        assertEquals(1, m.load.count(), "Compaction should read the history once");
+
+        m.gauge("history.bytes", hm::sizeOnDisk);
+        assertTrue(m.getGauges().get("history.bytes") > 0, "Gauge should read the current size");
+        String report = m.getReport();
+        assertTrue(report.contains("add=2") && report.contains("compute: n=4"), "Report should summarise: " + report);
+
+        m.reset();
+        assertEquals(0, m.compute.count(), "Reset should clear histograms");
+        assertEquals(0, m.operationCount(OpCode.ADD), "Reset should clear counters");
+    }
+
+    @Test
+    @DisplayName("should expose metrics over JMX")
+    void testJmx(@TempDir Path tempDir) throws IOException, JMException {
+        Metrics.enable();
+        Main.perform("sub", 5, 3, new HistoryStore(), new HistoryManager(tempDir.resolve("h.json").toString()));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        TabularData counts = (TabularData) server.getAttribute(name, "OperationCounts");
+        assertEquals(1L, counts.get(new Object[] {"sub"}).get("value"), "sub should be counted");
+        TabularData latencies = (TabularData) server.getAttribute(name, "Latencies");
+        assertEquals(1L, latencies.get(new Object[] {"compute.count"}).get("value"), "Latencies should be exposed");
+        server.invoke(name, "reset", null, null);
+        assertEquals(0, Metrics.current().operationCount(OpCode.SUB), "reset should be invocable");
+
+        Metrics.disable();
+        assertFalse(server.isRegistered(name), "Disabling should unregister the MBean");
+    }
+
+    @Test
+    @DisplayName("should format durations")
+    void testFormat() {
+        assertEquals("999ns", LatencyHistogram.format(999));
+        assertEquals("1.50us", LatencyHistogram.format(1_500));
+        assertEquals("12.0ms", LatencyHistogram.format(12_000_000));
+        assertEquals("2.00s", LatencyHistogram.format(2_000_000_000));
+        assertTrue(new LatencyHistogram().toString().contains("n=0"), "Empty histogram should say so");
+        assertEquals(Map.of(), new Metrics().getGauges(), "No gauges by default");
+    }
+}
@@ -0,0 +1,74 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the MpscRingBuffer class.
+ * Tests FIFO order, capacity limits and concurrent producers.
+ */
+@DisplayName("MpscRingBuffer Tests")
+public class MpscRingBufferTest {
+
+    @Test
+    @DisplayName("should return items in FIFO order and refuse offers when full")
+    void testFifoAndCapacity() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(3);
+        assertEquals(4, ring.capacity(), "Capacity should round up to a power of two");
+        assertTrue(ring.isEmpty(), "New ring should be empty");
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i), "Offer " + i + " should fit");
+        }
+        assertFalse(ring.offer(4), "Offer should fail when full");
+        assertEquals(0, ring.poll(), "Oldest item should come first");
+        assertTrue(ring.offer(4), "Polling should free a slot");
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ring.poll(), "Items should keep their order across the wrap");
+        }
+        assertNull(ring.poll(), "Empty ring should poll null");
+    }
+
+    @Test
+    @DisplayName("should deliver every item from concurrent producers, in per-producer order")
+    void testConcurrentProducers() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 20_000;
+        MpscRingBuffer<long[]> ring = new MpscRingBuffer<>(64);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long id = p;
+            Thread t = new Thread(() -> {
+                for (long i = 0; i < perProducer; i++) {
+                    long[] item = {id, i};
+                    while (!ring.offer(item)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            long[] item = ring.poll();
+            if (item == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next[(int) item[0]]++, item[1], "Producer " + item[0] + " items should stay in order");
+            received++;
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(ring.poll(), "No extra items should appear");
+    }
+}
@@ -0,0 +1,152 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the NumericBackend implementations.
+ * Tests exact decimal and fixed-point arithmetic and how exact entries are persisted.
+ */
+@DisplayName("NumericBackend Tests")
+public class NumericBackendTest {
+
+    @Test
+    @DisplayName("should parse mode names")
+    void testOf() {
+        assertSame(DoubleBackend.INSTANCE, NumericBackend.of("double"), "double is the shared instance");
+        assertEquals("decimal:34", NumericBackend.of("decimal").name(), "Default precision should be 34");
+        assertEquals("decimal:10", NumericBackend.of("decimal:10").name(), "Precision should be read");
+        assertEquals("fixed:2", NumericBackend.of("fixed").name(), "Default scale should be 2");
+        assertEquals("fixed:0", NumericBackend.of("fixed:0").name(), "Scale should be read");
+        for (String bad : new String[] {"float", "double:2", "decimal:0", "decimal:x", "fixed:19", "fixed:-1"}) {
+            assertThrows(IllegalArgumentException.class, () -> NumericBackend.of(bad), bad + " should be rejected");
+        }
+    }
+
+    @Test
+    @DisplayName("should add decimals exactly")
+    void testExactSum() {
+        assertEquals("0.30000000000000004", DoubleBackend.INSTANCE.apply(OpCode.ADD, "0.1", "0.2"),
+                "double keeps binary rounding");
+        assertEquals("0.3", NumericBackend.of("decimal").apply(OpCode.ADD, "0.1", "0.2"), "decimal should be exact");
+        assertEquals("0.30", NumericBackend.of("fixed:2").apply(OpCode.ADD, "0.1", "0.2"), "fixed should be exact");
+    }
+
+    @Test
+    @DisplayName("should round decimal results to the precision")
+    void testDecimalRounding() {
+        NumericBackend d = NumericBackend.of("decimal:5");
+        assertEquals("0.33333", d.apply(OpCode.DIV, "1", "3"), "Quotient should be rounded");
+        assertEquals("1.0000E+5", d.apply(OpCode.ADD, "99999", "1.5"), "Half to even should round 100000.5 down");
+        assertEquals("3", NumericBackend.of("decimal").apply(OpCode.DIV, "6", "2"), "Exact quotient");
+    }
+
+    @Test
+    @DisplayName("should round fixed-point values half to even")
+    void testFixedRounding() {
+        FixedPointBackend f = new FixedPointBackend(2);
+        assertEquals("0.12", f.normalize("0.125"), "Tie should go to even");
+        assertEquals("0.14", f.normalize("0.135"), "Tie should go to even");
+        assertEquals("0.13", f.normalize("0.1251"), "Above the tie should round up");
+        assertEquals("-0.12", f.normalize("-0.125"), "Negative tie should go to even");
+        assertEquals("5.00", f.normalize("+5"), "Missing digits should be added");
+        assertEquals("0.33", f.apply(OpCode.DIV, "1", "3"), "Quotient should be rounded");
+        assertEquals("0.67", f.apply(OpCode.DIV, "2", "3"), "Quotient should be rounded");
+        assertEquals("-0.67", f.apply(OpCode.DIV, "2", "-3"), "Negative quotient should be rounded");
+        assertEquals("0.02", f.apply(OpCode.MUL, "0.15", "0.15"), "0.0225 should round to even");
+        assertEquals("1.52", new FixedPointBackend(2).apply(OpCode.MUL, "1.01", "1.505"), "Operands rounded first");
+    }
+
+    @Test
+    @DisplayName("should report overflow, division by zero and invalid numbers")
+    void testFixedErrors() {
+        FixedPointBackend f = new FixedPointBackend(2);
+        ArithmeticException overflow = assertThrows(ArithmeticException.class,
+                () -> f.apply(OpCode.MUL, "10000000000", "10000000000"));
+        assertEquals("Fixed-point overflow", overflow.getMessage(), "Overflow should be reported");
+        assertThrows(ArithmeticException.class, () -> f.apply(OpCode.ADD, "92233720368547758.07", "0.01"),
+                "Sum overflow should be detected");
+        assertThrows(ArithmeticException.class, () -> f.normalize("99999999999999999999"),
+                "Operand overflow should be detected");
+        ArithmeticException byZero = assertThrows(ArithmeticException.class, () -> f.apply(OpCode.DIV, "1", "0.001"));
+        assertEquals("Division by zero", byZero.getMessage(), "Operand rounded to zero divides by zero");
+        assertThrows(ArithmeticException.class, () -> NumericBackend.of("decimal").apply(OpCode.DIV, "1", "0"),
+                "decimal should reject division by zero");
+        for (String bad : new String[] {"", "-", ".", "1e3", "NaN", "1.2.3", "0x10", "1 "}) {
+            assertThrows(NumberFormatException.class, () -> f.normalize(bad), "'" + bad + "' should be rejected");
+        }
+        assertThrows(NumberFormatException.class, () -> NumericBackend.of("decimal").normalize("Infinity"),
+                "decimal should reject Infinity");
+    }
+
+    @Test
+    @DisplayName("should multiply large fixed-point values through the slow path")
+    void testFixedWide() {
+        FixedPointBackend f = new FixedPointBackend(4);
+        assertEquals("10000000000.0000", f.apply(OpCode.MUL, "100000", "100000"),
+                "Product whose intermediate exceeds 64 bits should still fit");
+        assertEquals("900000000000000.0000", f.apply(OpCode.DIV, "90000000000", "0.0001"),
+                "Quotient whose intermediate exceeds 64 bits should still fit");
+    }
+
+    @Test
+    @DisplayName("should format negatives, zero and the long range")
+    void testFormat() {
+        FixedPointBackend f = new FixedPointBackend(2);
+        assertEquals("0.00", f.format(0), "Zero should keep the scale");
+        assertEquals("-0.05", f.format(-5), "Leading zero should be written");
+        assertEquals("-92233720368547758.08", f.format(Long.MIN_VALUE), "Long.MIN_VALUE should be formatted");
+        assertEquals("92233720368547758.07", f.format(Long.MAX_VALUE), "Long.MAX_VALUE should be formatted");
+        assertEquals("-0.000000000000000001", new FixedPointBackend(18).format(-1), "Widest scale");
+        assertEquals("-9223372036854775808", new FixedPointBackend(0).format(Long.MIN_VALUE), "No point at scale 0");
+        assertTrue(new FixedPointBackend(18).format(Long.MIN_VALUE).length() <= FixedPointBackend.MAX_CHARS,
+                "MAX_CHARS should bound the output");
+    }
+
+    @Test
+    @DisplayName("should keep exact entries through the journal and compaction")
+    void testPersistence(@TempDir Path tempDir) throws IOException {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        hm.append(new HistoryEntry("add", "0.1", "0.2", "0.3"));
+        hm.append(new HistoryEntry("add", 0.1, 0.2, 0.1 + 0.2));
+
+        List<HistoryEntry> loaded = hm.load();
+        assertEquals("0.3", loaded.get(0).resultText(), "Exact text should survive the journal");
+        assertTrue(loaded.get(0).isExact(), "Exact flag should be read back");
+        assertEquals(0.3, loaded.get(0).result, "Double value should be derived from the text");
+        assertFalse(loaded.get(1).isExact(), "Double entries should stay double");
+        assertEquals("0.30000000000000004", loaded.get(1).resultText(), "Double text should be Double.toString");
+
+        hm.compact();
+        HistoryStore store = new HistoryManager(tempDir.resolve("history.json").toString()).loadStore();
+        assertEquals("0.1", store.get(0).aText(), "Exact text should survive compaction");
+        assertEquals("0.3", store.get(0).resultText(), "Exact text should survive compaction");
+        assertEquals("0.30000000000000004", store.get(1).resultText(), "Double entry should be unchanged");
+    }
+
+    @Test
+    @DisplayName("should evaluate a batch in fixed point")
+    void testBatch(@TempDir Path tempDir) throws IOException {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        StringWriter out = new StringWriter();
+        long failed = new BatchRunner(hm, 0, null, NumericBackend.of("fixed:2"))
+                .run(new StringReader("add 0.1 0.2\r\ndiv 1 3\npow 1 2\ndiv 1 0\nadd x 1\nsub -1.005 0\n"), out);
+
+        assertEquals(3, failed, "Three lines should fail");
+        assertEquals("0.30\n0.33\nError: Unknown op: pow\nError: Division by zero\nError: Invalid number\n-1.00\n",
+                out.toString(), "Results should be printed with the scale");
+        List<HistoryEntry> loaded = hm.load();
+        assertEquals(3, loaded.size(), "Successful lines should be recorded");
+        assertEquals("0.30", loaded.get(0).resultText(), "Fixed text should be recorded");
+        assertEquals("-1.00", loaded.get(2).aText(), "Operands should be recorded as read");
+    }
+}
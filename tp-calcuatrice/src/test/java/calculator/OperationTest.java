@@ -0,0 +1,78 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the operation registry (OpCode and Operation).
+ * Tests built-in codes, ServiceLoader operations and their use across the calculator.
+ */
+@DisplayName("Operation Tests")
+public class OperationTest {
+
+    @Test
+    @DisplayName("should keep the built-in codes and append loaded operations")
+    void testRegistry() {
+        assertEquals(OpCode.ADD, OpCode.of("add"), "add should keep code 0");
+        assertEquals(OpCode.DIV, OpCode.of("div"), "div should keep code 3");
+        byte hypot = OpCode.of("hypot");
+        assertEquals(4, hypot, "Loaded operations should follow the built-in ones");
+        assertEquals(5, OpCode.COUNT, "Count should include loaded operations");
+        assertEquals("hypot", OpCode.name(hypot), "Name should round-trip");
+        assertEquals(-1, OpCode.find("pow"), "Unknown names should not resolve");
+        assertThrows(IllegalArgumentException.class, () -> OpCode.of("pow"), "Unknown op should be rejected");
+        assertThrows(IllegalArgumentException.class, () -> OpCode.operator((byte) OpCode.COUNT), "Unknown code should be rejected");
+        char[] line = "hypot 3 4".toCharArray();
+        assertEquals(hypot, OpCode.of(line, 0, 5), "Longer names should be recognised in place");
+        assertEquals(-1, OpCode.of(line, 0, 4), "Prefixes should not match");
+    }
+
+    @Test
+    @DisplayName("should compute loaded operations by name and by code")
+    void testApply() {
+        assertEquals(5.0, Calculator.apply("hypot", 3, 4), "By name");
+        assertEquals(5.0, Calculator.apply(OpCode.of("hypot"), 3, 4), "By code");
+        assertEquals(5.0, OpCode.operator(OpCode.of("hypot")).applyAsDouble(3, 4), "Through the cached operator");
+        assertEquals(2.0, OpCode.operator(OpCode.DIV).applyAsDouble(4, 2), "Built-ins should have operators too");
+        ResultCache cache = new ResultCache(4);
+        cache.apply("hypot", 6, 8);
+        assertEquals(10.0, cache.apply("hypot", 6, 8), "Cached results should be reused");
+        assertEquals(1, cache.hits(), "Second call should hit");
+    }
+
+    @Test
+    @DisplayName("should record loaded operations in the history")
+    void testHistory(@TempDir Path tempDir) throws IOException {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        assertEquals(5.0, Main.perform("hypot", 3, 4, null, hm), "Result should be computed");
+        Main.perform("add", 1, 1, null, hm);
+        hm.setCompressedSnapshots(true);
+        hm.compact();
+
+        HistoryStore store = hm.loadStore();
+        assertEquals("hypot", store.op(0), "Op should survive the compressed snapshot");
+        assertArrayEquals(new int[] {0}, hm.query(store, HistoryQuery.parse("op=hypot", 0)), "Queries should index it");
+        assertEquals(1, HistoryAggregator.aggregate(store).forOp(OpCode.of("hypot")).count(), "Aggregates should count it");
+    }
+
+    @Test
+    @DisplayName("should run loaded operations in batches, in double mode only")
+    void testBatch() throws IOException {
+        StringWriter out = new StringWriter();
+        long failed = new BatchRunner(null, 0).run(new StringReader("hypot 3 4\nhypo 3 4\n"), out);
+        assertEquals(1, failed, "Only the unknown op should fail");
+        assertEquals("5.0\nError: Unknown op: hypo\n", out.toString(), "Loaded ops should be usable in batches");
+
+        out = new StringWriter();
+        new BatchRunner(null, 0, null, NumericBackend.of("decimal")).run(new StringReader("hypot 3 4\n"), out);
+        assertEquals("Error: Not supported in exact mode: hypot\n", out.toString(), "Exact modes should reject them");
+    }
+}
@@ -0,0 +1,112 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ResultCache class.
+ * Tests hits and misses, LRU eviction, failures and agreement with a reference LRU map.
+ */
+@DisplayName("ResultCache Tests")
+public class ResultCacheTest {
+
+    @Test
+    @DisplayName("should count hits and misses")
+    void testHitsAndMisses() {
+        ResultCache cache = new ResultCache(16);
+
+        assertEquals(5.0, cache.apply("add", 2, 3), "First call should compute 2 + 3");
+        assertEquals(5.0, cache.apply("add", 2, 3), "Second call should return the cached result");
+        assertEquals(-1.0, cache.apply("sub", 2, 3), "Other op should be a different key");
+
+        assertEquals(1, cache.hits(), "One lookup should hit");
+        assertEquals(2, cache.misses(), "Two lookups should miss");
+        assertEquals(2, cache.size(), "Two results should be cached");
+        assertEquals(1.0 / 3, cache.hitRate(), 1e-12, "Hit rate should be 1/3");
+    }
+
+    @Test
+    @DisplayName("should evict the least recently used entry")
+    void testLruEviction() {
+        ResultCache cache = new ResultCache(2);
+        cache.apply("mul", 1, 1);
+        cache.apply("mul", 2, 2);
+        cache.apply("mul", 1, 1); // 1*1 is now the most recent
+        cache.apply("mul", 3, 3); // evicts 2*2
+
+        assertEquals(1, cache.evictions(), "One entry should be evicted");
+        long misses = cache.misses();
+        cache.apply("mul", 1, 1);
+        assertEquals(misses, cache.misses(), "Recently used entry should still be cached");
+        cache.apply("mul", 2, 2);
+        assertEquals(misses + 1, cache.misses(), "Least recently used entry should have been evicted");
+    }
+
+    @Test
+    @DisplayName("should not cache operations that throw")
+    void testFailuresNotCached() {
+        ResultCache cache = new ResultCache(4);
+
+        assertThrows(ArithmeticException.class, () -> cache.apply("div", 1, 0));
+        assertThrows(ArithmeticException.class, () -> cache.apply("div", 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> cache.apply("pow", 1, 2));
+        assertEquals(0, cache.size(), "Failed operations should not be cached");
+        assertEquals(0, cache.hits(), "Failed operations should never hit");
+    }
+
+    @Test
+    @DisplayName("should key operands on their exact bits")
+    void testSignedZero() {
+        ResultCache cache = new ResultCache(4);
+
+        assertEquals(0.0, cache.apply("mul", 0.0, 1), "0 * 1 should be 0");
+        assertEquals(-0.0, cache.apply("mul", -0.0, 1), "-0 * 1 should be -0, not a cached 0");
+        assertEquals(0, cache.hits(), "0.0 and -0.0 should be distinct keys");
+        assertTrue(Double.isNaN(cache.apply("add", Double.NaN, 1)), "NaN operands should be cached too");
+        assertTrue(Double.isNaN(cache.apply("add", Double.NaN, 1)), "NaN operands should hit");
+        assertEquals(1, cache.hits(), "Second NaN lookup should hit");
+    }
+
+    @Test
+    @DisplayName("should behave like a reference LRU map under random load")
+    void testAgainstReference() {
+        int capacity = 37;
+        ResultCache cache = new ResultCache(capacity);
+        Map<List<Double>, Double> reference = new LinkedHashMap<List<Double>, Double>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Double>, Double> eldest) {
+                return size() > capacity;
+            }
+        };
+        Random random = new Random(1);
+        long expectedHits = 0;
+        for (int i = 0; i < 100_000; i++) {
+            byte op = (byte) random.nextInt(4);
+            double a = random.nextInt(30);
+            double b = random.nextInt(10) + 1;
+            List<Double> key = List.of((double) op, a, b);
+            if (reference.containsKey(key)) {
+                expectedHits++;
+                reference.get(key);
+            } else {
+                reference.put(key, Calculator.apply(OpCode.name(op), a, b));
+            }
+            assertEquals(reference.get(key), cache.apply(op, a, b), "Result should match for " + key);
+        }
+        assertEquals(expectedHits, cache.hits(), "Hits should match the reference LRU");
+        assertEquals(capacity, cache.size(), "Cache should be full");
+    }
+
+    @Test
+    @DisplayName("should reject a non-positive capacity")
+    void testInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new ResultCache(0));
+    }
+}
@@ -0,0 +1,68 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SessionHistory class and the lazy history of Main.
+ * Tests deferred loading, one-shot appends and ephemeral sessions.
+ */
+@DisplayName("SessionHistory Tests")
+public class SessionHistoryTest {
+
+    @Test
+    @DisplayName("should load the history only when first needed")
+    void testLazyLoad(@TempDir Path tempDir) throws IOException {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        Main.perform("add", 1, 2, new HistoryStore(), hm);
+        hm.compact();
+
+        SessionHistory history = new SessionHistory(hm);
+        assertNull(history.ifLoaded(), "Nothing should be loaded up front");
+        assertEquals(0, history.loadedSize(), "Nothing should be in memory before loading");
+        hm.startAsync(AsyncHistoryWriter.Durability.NONE);
+        Main.perform("mul", 2, 3, history.ifLoaded(), hm); // journaled only
+
+        HistoryStore loaded = history.get();
+        assertEquals(2, loaded.size(), "Loading should see the snapshot and this session's entry once");
+        assertSame(loaded, history.ifLoaded(), "History should stay loaded");
+        Main.perform("sub", 5, 1, history.ifLoaded(), hm);
+        assertEquals(3, loaded.size(), "Later entries should be added in memory");
+        assertEquals(1, history.query(HistoryQuery.parse("op=sub", 0)).length, "Queries should see them");
+        hm.close();
+        assertEquals(3, hm.load().size(), "Every entry should be persisted once");
+    }
+
+    @Test
+    @DisplayName("should append one-shot calculations without a store")
+    void testOneShot(@TempDir Path tempDir) throws IOException {
+        HistoryManager hm = new HistoryManager(tempDir.resolve("history.json").toString());
+        assertEquals(5.0, Main.perform("add", 2, 3, null, hm), "Result should be computed");
+        assertEquals("0.3", Main.perform(NumericBackend.of("decimal"), "add", "0.1", "0.2", null, hm));
+        assertEquals(2, hm.load().size(), "Both entries should be journaled");
+    }
+
+    @Test
+    @DisplayName("should keep ephemeral sessions in memory only")
+    void testEphemeral(@TempDir Path tempDir) throws IOException {
+        SessionHistory history = new SessionHistory(null);
+        assertNotNull(history.ifLoaded(), "Ephemeral history should start in memory");
+        Main.perform("div", 1, 4, history.ifLoaded(), null);
+        Main.perform("add", 1, 4, history.ifLoaded(), null);
+        assertEquals(2, history.get().size(), "Session entries should be kept");
+        assertArrayEquals(new int[] {0}, history.query(HistoryQuery.parse("op=div", 0)), "Queries should use an in-memory index");
+        Main.perform("div", 1, 8, history.ifLoaded(), null);
+        assertEquals(2, history.query(HistoryQuery.parse("op=div", 0)).length, "Index should follow new entries");
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count(), "Nothing should be written");
+        }
+    }
+}